@@ -0,0 +1,110 @@
+package multithreadedstore.benchmarks;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.Report;
+import multithreadedstore.service.Analytics;
+import multithreadedstore.service.LiveAnalytics;
+import multithreadedstore.service.OrderLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a report over 10^3 to 10^7 committed orders: {@link Analytics#generateReport} rescans
+ * every retained order, either as {@link Order} objects or as the primitive columns of an
+ * {@link OrderLog}, while {@link LiveAnalytics} only reads counters it kept up to date.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+    private static final int PRODUCTS = 1_000;
+    private static final int DISTINCT_ORDERS = 1 << 12;
+
+    @Param({"1000", "100000", "10000000"})
+    public int orders;
+
+    private List<Order> processed;
+    private List<Order> reserved;
+    private List<Order> cancelled;
+    private LiveAnalytics exact;
+    private LiveAnalytics approximate;
+    private OrderLog log;
+
+    @Setup(Level.Trial)
+    public void record() {
+        List<Product> products = Catalog.products(PRODUCTS);
+        Order[] purchases = Catalog.orders(products, DISTINCT_ORDERS, 3, true, Catalog.OrderKind.PURCHASE, 5);
+        Order[] reservations = Catalog.orders(products, DISTINCT_ORDERS, 1, false, Catalog.OrderKind.RESERVATION, 6);
+        processed = repeat(purchases, orders);
+        reserved = repeat(reservations, orders / 10);
+        cancelled = repeat(reservations, orders / 20);
+
+        exact = new LiveAnalytics(products);
+        approximate = LiveAnalytics.approximate(3, 256);
+        log = new OrderLog();
+        for (Order order : processed) {
+            exact.onCommit(order, OrderOutcome.PURCHASED);
+            approximate.onCommit(order, OrderOutcome.PURCHASED);
+            log.onCommit(order, OrderOutcome.PURCHASED);
+        }
+        for (Order order : reserved) {
+            log.onCommit(order, OrderOutcome.RESERVED);
+        }
+        for (Order order : cancelled) {
+            log.onCommit(order, OrderOutcome.CANCELLED);
+        }
+    }
+
+    @Benchmark
+    public Report generateReport() {
+        return Analytics.generateReport(processed, reserved, cancelled, Map.of());
+    }
+
+    @Benchmark
+    public Report generateReportFromLog() {
+        return Analytics.generateReport(log, Map.of());
+    }
+
+    @Benchmark
+    public Report liveSnapshotExact() {
+        return exact.snapshot(Map.of());
+    }
+
+    @Benchmark
+    public Report liveSnapshotApproximate() {
+        return approximate.snapshot(Map.of());
+    }
+
+    /**
+     * Returns a fixed-size list of {@code size} orders cycling through a few thousand distinct ones,
+     * so ten million orders cost no more heap than the list itself.
+     */
+    private static List<Order> repeat(Order[] distinct, int size) {
+        Order[] orders = new Order[size];
+        for (int i = 0; i < size; i++) {
+            orders[i] = distinct[i % distinct.length];
+        }
+        return Arrays.asList(orders);
+    }
+}
@@ -0,0 +1,52 @@
+package multithreadedstore.benchmarks;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.ReservationCancellationOrder;
+import multithreadedstore.model.ReservationOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Builds product catalogs and pre-generated orders shared by the benchmarks, so order
+ * construction is not part of what is measured.
+ */
+final class Catalog {
+
+    private Catalog() {
+    }
+
+    static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product("Product-" + i, 1 + i % 100));
+        }
+        return products;
+    }
+
+    /**
+     * Creates orders whose products are either uniformly spread over the catalog or,
+     * when {@code hot}, concentrated on product 0 nine times out of ten.
+     */
+    static Order[] orders(List<Product> products, int count, int itemsPerOrder, boolean hot, OrderKind kind, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Order[] orders = new Order[count];
+        for (int i = 0; i < count; i++) {
+            Order order = switch (kind) {
+                case PURCHASE -> new Order();
+                case RESERVATION -> new ReservationOrder();
+                case CANCELLATION -> new ReservationCancellationOrder();
+            };
+            while (order.size() < Math.min(itemsPerOrder, products.size())) {
+                int index = hot && random.nextInt(10) != 0 ? order.size() : random.nextInt(products.size());
+                order.add(products.get(index), 1);
+            }
+            orders[i] = order;
+        }
+        return orders;
+    }
+
+    enum OrderKind { PURCHASE, RESERVATION, CANCELLATION }
+}
@@ -0,0 +1,72 @@
+package multithreadedstore.benchmarks;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.StockEngineType;
+import multithreadedstore.model.Warehouse;
+import multithreadedstore.service.OrderTransport;
+import multithreadedstore.service.ProcessorMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-order cost of recording {@link ProcessorMetrics}, which should stay well under 100ns.
+ * Run with {@code -t} above 1 to include contention on the shared histograms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private static final int ORDERS = 1 << 10;
+
+    private ProcessorMetrics metrics;
+    private Order[] orders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Product> products = Catalog.products(16);
+        metrics = new ProcessorMetrics(OrderTransport.of(new LinkedBlockingQueue<>()),
+                new Warehouse(products, StockEngineType.LOCKING));
+        orders = Catalog.orders(products, ORDERS, 1, false, Catalog.OrderKind.PURCHASE, 7);
+        long now = System.nanoTime();
+        for (int i = 0; i < ORDERS; i++) {
+            orders[i].setEnqueuedAt(now - 5_000 - i * 97L);
+            orders[i].setDequeuedAt(now - i * 13L);
+        }
+    }
+
+    /**
+     * Per-thread position in the pre-generated orders.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int advance() {
+            return next++ & ORDERS - 1;
+        }
+    }
+
+    @Benchmark
+    public void record(Cursor cursor) {
+        metrics.onCommit(orders[cursor.advance()], OrderOutcome.PURCHASED);
+    }
+}
@@ -0,0 +1,228 @@
+package multithreadedstore.benchmarks;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.StockEngineType;
+import multithreadedstore.model.Warehouse;
+import multithreadedstore.service.DispatchPolicy;
+import multithreadedstore.service.ExecutionMode;
+import multithreadedstore.service.LaneTransport;
+import multithreadedstore.service.OrderProcessor;
+import multithreadedstore.service.OrderSink;
+import multithreadedstore.service.OrderTransport;
+import multithreadedstore.service.PartitionedOrderProcessor;
+import multithreadedstore.service.ProcessingMode;
+import multithreadedstore.service.RingBufferTransport;
+import multithreadedstore.service.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue/dequeue throughput of the order transports, on their own and feeding an {@link OrderProcessor},
+ * and of the shared against the partitioned way of processing orders.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final int CAPACITY = 1024;
+    private static final int PRODUCTS = 100;
+    private static final int ORDERS = 1 << 12;
+
+    /**
+     * Transports compared; the blocking queues are wrapped with {@link OrderTransport#of}. The
+     * orders are all purchases, so {@code LANES} measures the cost of dispatching across lanes.
+     */
+    public enum Kind {
+        RING_BUFFER, LANES, LINKED_BLOCKING_QUEUE, ARRAY_BLOCKING_QUEUE;
+
+        OrderTransport create() {
+            return switch (this) {
+                case RING_BUFFER -> new RingBufferTransport(CAPACITY, WaitStrategy.PARK);
+                case LANES -> new LaneTransport(CAPACITY, DispatchPolicy.WEIGHTED_FAIR, WaitStrategy.PARK);
+                case LINKED_BLOCKING_QUEUE -> OrderTransport.of(new LinkedBlockingQueue<>(CAPACITY));
+                case ARRAY_BLOCKING_QUEUE -> OrderTransport.of(new ArrayBlockingQueue<>(CAPACITY));
+            };
+        }
+    }
+
+    /**
+     * A bare transport shared by producer and consumer threads. Producers back off instead of
+     * blocking when it is nearly full and consumers drain without waiting, so no thread is left
+     * parked when an iteration ends.
+     */
+    @State(Scope.Group)
+    public static class Pipe {
+
+        @Param
+        public Kind transport;
+
+        OrderTransport queue;
+        Order[] orders;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            queue = transport.create();
+            orders = Catalog.orders(Catalog.products(PRODUCTS), ORDERS, 1, false, Catalog.OrderKind.PURCHASE, 3);
+        }
+    }
+
+    /**
+     * Per-thread position in the pre-generated orders.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        List<Order> drained = new ArrayList<>(1);
+
+        int advance() {
+            return next++ & ORDERS - 1;
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(2)
+    public boolean produce(Pipe pipe, Cursor cursor) throws InterruptedException {
+        if (pipe.queue.size() >= CAPACITY - 16) {
+            Thread.onSpinWait();
+            return false;
+        }
+        pipe.queue.put(pipe.orders[cursor.advance()]);
+        return true;
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(2)
+    public int consume(Pipe pipe, Cursor cursor) {
+        int drained = pipe.queue.drainTo(cursor.drained, 1);
+        cursor.drained.clear();
+        return drained;
+    }
+
+    /**
+     * A transport feeding a running {@link OrderProcessor}, so every enqueued order is also
+     * taken by a worker and applied to a warehouse.
+     */
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+
+        @Param
+        public Kind transport;
+
+        @Param({"1", "16"})
+        public int batchSize;
+
+        @Param({"2"})
+        public int workers;
+
+        OrderTransport queue;
+        OrderProcessor processor;
+        Order[] orders;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            List<Product> products = Catalog.products(PRODUCTS);
+            orders = Catalog.orders(products, ORDERS, 1, false, Catalog.OrderKind.PURCHASE, 4);
+            queue = transport.create();
+            Warehouse warehouse = new Warehouse(products, StockEngineType.LOCKING, 1_000_000_000);
+            processor = new OrderProcessor(warehouse, queue, null, null, null, workers, batchSize,
+                    ExecutionMode.PLATFORM);
+            processor.startWorkers(workers);
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() throws InterruptedException {
+            processor.awaitProcessing();
+        }
+    }
+
+    /**
+     * Enqueues orders as fast as the workers apply them.
+     */
+    @Benchmark
+    public void submitToProcessor(Pipeline pipeline, Cursor cursor) throws InterruptedException {
+        pipeline.queue.put(pipeline.orders[cursor.advance()]);
+    }
+
+    /**
+     * Orders of two items fed to a running processor of either {@link ProcessingMode}: a shared
+     * warehouse behind a ring buffer, or partitions fed through their intake, where orders whose
+     * items live in different partitions are voted on.
+     */
+    @State(Scope.Benchmark)
+    public static class Processing {
+
+        @Param
+        public ProcessingMode mode;
+
+        @Param({"2"})
+        public int workers;
+
+        OrderSink sink;
+        OrderProcessor shared;
+        PartitionedOrderProcessor partitioned;
+        Order[] orders;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            List<Product> products = Catalog.products(PRODUCTS);
+            orders = Catalog.orders(products, ORDERS, 2, false, Catalog.OrderKind.PURCHASE, 5);
+            switch (mode) {
+                case SHARED -> {
+                    RingBufferTransport queue = new RingBufferTransport(CAPACITY, WaitStrategy.PARK);
+                    Warehouse warehouse = new Warehouse(products, StockEngineType.LOCKING, 1_000_000_000);
+                    shared = new OrderProcessor(warehouse, queue, null, null, null, workers, 1, ExecutionMode.PLATFORM);
+                    shared.startWorkers(workers);
+                    sink = queue;
+                }
+                case PARTITIONED -> {
+                    partitioned = new PartitionedOrderProcessor(products, 1_000_000_000, workers,
+                            CAPACITY / workers, ExecutionMode.PLATFORM);
+                    partitioned.start();
+                    sink = partitioned.intake();
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() throws InterruptedException {
+            if (shared != null) {
+                shared.awaitProcessing();
+            } else {
+                partitioned.awaitProcessing();
+            }
+        }
+    }
+
+    /**
+     * Submits orders as fast as the processor applies them.
+     */
+    @Benchmark
+    public void submitByMode(Processing processing, Cursor cursor) throws InterruptedException {
+        processing.sink.put(processing.orders[cursor.advance()]);
+    }
+}
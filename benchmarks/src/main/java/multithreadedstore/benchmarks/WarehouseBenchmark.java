@@ -0,0 +1,117 @@
+package multithreadedstore.benchmarks;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.ReservationCancellationOrder;
+import multithreadedstore.model.StockEngineType;
+import multithreadedstore.model.Warehouse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Warehouse#process(Order)} and {@link Warehouse#reserveProduct(Order)} per stock
+ * engine, for hot-SKU vs uniform contention and single vs multi-item orders. With {@code subBuckets},
+ * the optimistic engine splits the stock of the products hot-SKU orders concentrate on.
+ * Run with {@code -t 1,2,4,8} to scale the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WarehouseBenchmark {
+
+    private static final int PRODUCTS = 1_000;
+    private static final int ORDERS = 1 << 14;
+    private static final int STOCK = 1_000_000_000;
+
+    @Param({"LOCKING", "OPTIMISTIC"})
+    public StockEngineType engine;
+
+    @Param({"true", "false"})
+    public boolean hotSku;
+
+    @Param({"1", "3"})
+    public int itemsPerOrder;
+
+    @Param({"false", "true"})
+    public boolean subBuckets;
+
+    private List<Product> products;
+    private Warehouse warehouse;
+    private Order[] purchases;
+    private Order[] reservations;
+    private Order[] cancellations;
+
+    @Setup(Level.Trial)
+    public void createOrders() {
+        products = Catalog.products(PRODUCTS);
+        purchases = Catalog.orders(products, ORDERS, itemsPerOrder, hotSku, Catalog.OrderKind.PURCHASE, 1);
+        reservations = Catalog.orders(products, ORDERS, itemsPerOrder, hotSku, Catalog.OrderKind.RESERVATION, 2);
+        cancellations = new Order[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            Order cancellation = new ReservationCancellationOrder();
+            for (int item = 0; item < reservations[i].size(); item++) {
+                cancellation.add(reservations[i].product(item), reservations[i].quantity(item));
+            }
+            cancellations[i] = cancellation;
+        }
+    }
+
+    /**
+     * Restocks before every iteration so purchases never run dry.
+     */
+    @Setup(Level.Iteration)
+    public void restock() {
+        Set<Product> hotProducts = subBuckets && engine == StockEngineType.OPTIMISTIC
+                ? Set.copyOf(products.subList(0, itemsPerOrder)) : Set.of();
+        warehouse = new Warehouse(products, engine, STOCK, hotProducts);
+    }
+
+    /**
+     * Per-thread position in the pre-generated orders.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int advance() {
+            return next++ & ORDERS - 1;
+        }
+    }
+
+    @Benchmark
+    public boolean process(Cursor cursor) {
+        return warehouse.process(purchases[cursor.advance()]);
+    }
+
+    /**
+     * Reserves and cancels the same items, which leaves stock unchanged.
+     */
+    @Benchmark
+    public boolean reserveAndCancel(Cursor cursor) {
+        int index = cursor.advance();
+        return warehouse.reserveProduct(reservations[index]) && warehouse.cancelReservation(cancellations[index]);
+    }
+
+    @Benchmark
+    public OrderOutcome apply(Cursor cursor) {
+        return warehouse.apply(purchases[cursor.advance()]);
+    }
+}
@@ -1,23 +1,53 @@
 package multithreadedstore;
 
-import multithreadedstore.model.Order;
 import multithreadedstore.model.Product;
 import multithreadedstore.model.Report;
+import multithreadedstore.model.StockEngineType;
 import multithreadedstore.model.Warehouse;
-import multithreadedstore.service.Analytics;
+import multithreadedstore.model.WarehouseRouter;
+import multithreadedstore.model.WindowStats;
+import multithreadedstore.service.AdmissionPolicy;
+import multithreadedstore.service.DispatchPolicy;
+import multithreadedstore.service.ExecutionMode;
+import multithreadedstore.service.LaneTransport;
+import multithreadedstore.service.LiveAnalytics;
 import multithreadedstore.service.OrderGenerator;
+import multithreadedstore.service.OrderIntake;
 import multithreadedstore.service.OrderProcessor;
+import multithreadedstore.service.OrderSink;
+import multithreadedstore.service.PartitionedOrderProcessor;
+import multithreadedstore.service.ProcessingMode;
+import multithreadedstore.service.ProcessorMetrics;
+import multithreadedstore.service.WaitStrategy;
+import multithreadedstore.service.WindowedAnalytics;
+import multithreadedstore.service.WorkloadProfile;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class Main {
 
-    private static final int ORDER_PROCESSOR_THREADS = 2;
+    private static final int MIN_ORDER_PROCESSOR_THREADS = 1;
+    private static final int MAX_ORDER_PROCESSOR_THREADS = 4;
+    private static final Duration TARGET_LATENCY = Duration.ofMillis(5);
     private static final int CUSTOMER_THREADS = 3;
     private static final int TOTAL_ORDERS = 50;
+    private static final int WAREHOUSES = 3;
+    private static final int STOCK_PER_WAREHOUSE = 4;
+    private static final int ORDER_BATCH_SIZE = 16;
+    private static final int LANE_CAPACITY = 256;
+    private static final DispatchPolicy DISPATCH_POLICY = DispatchPolicy.WEIGHTED_FAIR;
+    private static final ProcessingMode PROCESSING_MODE = ProcessingMode.SHARED;
+    private static final int PARTITIONS = 3;
+    private static final StockEngineType STOCK_ENGINE = StockEngineType.LOCKING;
+    private static final ExecutionMode CUSTOMER_EXECUTION = ExecutionMode.VIRTUAL;
+    private static final ExecutionMode WORKER_EXECUTION = ExecutionMode.PLATFORM;
+    private static final AdmissionPolicy ADMISSION_POLICY = AdmissionPolicy.SHED_BY_TYPE;
+    private static final Duration ADMISSION_TIMEOUT = Duration.ofMillis(50);
+    private static final WorkloadProfile WORKLOAD = WorkloadProfile.uniform().withSkew(1.0).withItems(1.3, 3);
+    private static final double ORDERS_PER_SECOND = 1000;
 
     /**
      * Entry point for the multithreaded store simulation.
@@ -31,28 +61,71 @@ public class Main {
                 new Product("Headphones", 100)
         );
 
-        var warehouse = new Warehouse(products);
-        var queue = new LinkedBlockingQueue<Order>();
-        var processedOrders = Collections.synchronizedList(new ArrayList<Order>());
-        var reservedOrders = Collections.synchronizedList(new ArrayList<Order>());
-        var cancelledOrders = Collections.synchronizedList(new ArrayList<Order>());
+        var analytics = new LiveAnalytics(products);
+        var recent = WindowedAnalytics.lastMinute(3);
+        ProcessorMetrics metrics;
+        Map<Product, Integer> maxReserved;
 
-        var orderProcessor = new OrderProcessor(warehouse, queue, processedOrders, reservedOrders, cancelledOrders, ORDER_PROCESSOR_THREADS);
-        var orderGenerator = new OrderGenerator(products, queue, CUSTOMER_THREADS);
+        if (PROCESSING_MODE == ProcessingMode.PARTITIONED) {
+            var processor = new PartitionedOrderProcessor(products, STOCK_PER_WAREHOUSE * WAREHOUSES, PARTITIONS,
+                    LANE_CAPACITY, WORKER_EXECUTION);
+            metrics = new ProcessorMetrics(processor.intake());
+            processor.addListener(analytics);
+            processor.addListener(recent);
+            processor.addListener(metrics);
 
-        orderProcessor.startWorkers(ORDER_PROCESSOR_THREADS);
-        orderGenerator.startCustomers(TOTAL_ORDERS);
+            processor.start();
+            generateOrders(products, processor.intake(), processor.capacity(), analytics, recent, metrics);
+            processor.awaitProcessing();
+            maxReserved = processor.getMaxReservedByProduct();
+        } else {
+            var warehouses = Stream.generate(() -> new Warehouse(products, STOCK_ENGINE, STOCK_PER_WAREHOUSE))
+                    .limit(WAREHOUSES)
+                    .toList();
+            var inventory = new WarehouseRouter(warehouses);
+            var queue = new LaneTransport(LANE_CAPACITY, DISPATCH_POLICY, WaitStrategy.PARK);
+            var orderProcessor = new OrderProcessor(inventory, queue, MIN_ORDER_PROCESSOR_THREADS,
+                    MAX_ORDER_PROCESSOR_THREADS, ORDER_BATCH_SIZE, WORKER_EXECUTION, TARGET_LATENCY);
+            metrics = new ProcessorMetrics(queue, inventory);
+            orderProcessor.addListener(analytics);
+            orderProcessor.addListener(recent);
+            orderProcessor.addListener(metrics);
 
-        orderGenerator.awaitCompletion(ORDER_PROCESSOR_THREADS);
-        orderProcessor.awaitProcessing();
+            orderProcessor.startWorkers(MIN_ORDER_PROCESSOR_THREADS);
+            generateOrders(products, queue, queue.capacity(), analytics, recent, metrics);
+            orderProcessor.awaitProcessing();
+            maxReserved = inventory.getMaxReservedByProduct();
+        }
 
-        Report report = Analytics.generateReport(processedOrders, reservedOrders,cancelledOrders, warehouse.getMaxReservedByProduct());
+        Report report = analytics.snapshot(maxReserved);
 
         System.out.println("Total orders: " + report.totalOrders());
         System.out.println("Total reservations: " + report.totalReservations());
         System.out.println("Total cancellations: " + report.totalCancellations());
         System.out.println("Total profit: " + report.totalProfit());
+        System.out.println("Rejected orders: " + report.rejectedOrders());
         System.out.println("Top 3 selling products: " + report.top3Products());
         System.out.println("Top 3 selling products: " + report.maxReservedByProduct());
+        WindowStats lastSecond = recent.window(Duration.ofSeconds(1));
+        System.out.printf("Last second: %.1f orders/s, %.1f revenue/s, top %s%n",
+                lastSecond.ordersPerSecond(), lastSecond.revenuePerSecond(), lastSecond.topProducts());
+        System.out.print(metrics.dump());
+        metrics.close();
+    }
+
+    /**
+     * Sends the simulated customers' orders through admission control into a processor's sink
+     * and waits until every customer is done.
+     */
+    private static void generateOrders(List<Product> products, OrderSink sink, int capacity, LiveAnalytics analytics,
+                                       WindowedAnalytics recent, ProcessorMetrics metrics) throws InterruptedException {
+        metrics.register("main");
+        var intake = new OrderIntake(sink, capacity, ADMISSION_POLICY, ADMISSION_TIMEOUT);
+        intake.addListener(analytics);
+        intake.addListener(recent);
+        intake.addListener(metrics);
+        var orderGenerator = new OrderGenerator(products, intake, CUSTOMER_THREADS, CUSTOMER_EXECUTION, WORKLOAD);
+        orderGenerator.startCustomers(TOTAL_ORDERS, ORDERS_PER_SECOND);
+        orderGenerator.awaitCompletion();
     }
 }
@@ -0,0 +1,20 @@
+package multithreadedstore.model;
+
+/**
+ * Stock of one product as seen by an availability read.
+ *
+ * @param product  product read
+ * @param stock    units available for purchase, 0 if the product is not stocked
+ * @param reserved units held by reservations
+ */
+public record Availability(Product product, int stock, int reserved) {
+
+    /**
+     * Returns true if a purchase of {@code quantity} units would find enough stock.
+     *
+     * @param quantity units wanted
+     */
+    public boolean canSupply(int quantity) {
+        return stock >= quantity;
+    }
+}
@@ -0,0 +1,87 @@
+package multithreadedstore.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link StockTable} in atomic arrays on the heap, indexed through a dense map from registry id to slot.
+ */
+final class HeapStockTable implements StockTable {
+
+    private final Product[] products;
+    private final int[] slotById;
+    private final AtomicLongArray counters;
+    private final AtomicIntegerArray maxReserved;
+
+    /**
+     * Creates the table with every product in stock and nothing reserved.
+     *
+     * @param products     products to stock; duplicates get one slot
+     * @param initialStock starting quantity of every product
+     */
+    HeapStockTable(List<Product> products, int initialStock) {
+        this.products = products.stream().distinct().toArray(Product[]::new);
+        this.slotById = new int[Arrays.stream(this.products).mapToInt(ProductRegistry::idOf).max().orElse(-1) + 1];
+        Arrays.fill(slotById, -1);
+        for (int slot = 0; slot < this.products.length; slot++) {
+            slotById[ProductRegistry.idOf(this.products[slot])] = slot;
+        }
+        this.counters = new AtomicLongArray(this.products.length);
+        this.maxReserved = new AtomicIntegerArray(this.products.length);
+        for (int slot = 0; slot < counters.length(); slot++) {
+            counters.set(slot, (long) initialStock << 32);
+        }
+    }
+
+    @Override
+    public int slots() {
+        return products.length;
+    }
+
+    @Override
+    public Product product(int slot) {
+        return products[slot];
+    }
+
+    @Override
+    public int slotOf(int productId) {
+        return productId < slotById.length ? slotById[productId] : -1;
+    }
+
+    @Override
+    public long counter(int slot) {
+        return counters.get(slot);
+    }
+
+    @Override
+    public boolean compareAndSetCounter(int slot, long expected, long next) {
+        return counters.compareAndSet(slot, expected, next);
+    }
+
+    @Override
+    public long addAndGetCounter(int slot, long delta) {
+        return counters.addAndGet(slot, delta);
+    }
+
+    @Override
+    public void setCounter(int slot, long counter) {
+        counters.set(slot, counter);
+    }
+
+    @Override
+    public int maxReserved(int slot) {
+        return maxReserved.get(slot);
+    }
+
+    @Override
+    public void raiseMaxReserved(int slot, int reserved) {
+        maxReserved.accumulateAndGet(slot, reserved, Math::max);
+    }
+
+    @Override
+    public void setMaxReserved(int slot, int maxReserved) {
+        this.maxReserved.set(slot, maxReserved);
+    }
+}
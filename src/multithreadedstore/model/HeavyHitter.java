@@ -0,0 +1,11 @@
+package multithreadedstore.model;
+
+/**
+ * A best-selling product with its (possibly estimated) number of units sold.
+ *
+ * @param product  product name
+ * @param units    units sold; an upper bound when estimated
+ * @param maxError how much {@code units} may overestimate; 0 when exact.
+ *                 At least {@code units - maxError} units were sold.
+ */
+public record HeavyHitter(String product, long units, long maxError) {}
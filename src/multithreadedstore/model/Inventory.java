@@ -0,0 +1,65 @@
+package multithreadedstore.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stock that orders are applied to: a single {@link Warehouse} or a {@link WarehouseRouter}
+ * spreading orders over several of them. Every operation is atomic on its own.
+ */
+public interface Inventory {
+
+    /**
+     * Applies an order according to its type: reservations are reserved, cancellations cancelled and
+     * checkouts bought from reserved stock. If that is not possible the order is processed as a
+     * regular purchase.
+     *
+     * @param order the order to apply
+     * @return what happened to the order; {@link OrderOutcome#INVALID} if it is null or empty
+     */
+    OrderOutcome apply(Order order);
+
+    /**
+     * Applies a batch of orders in arrival order, with the same per-order outcome as
+     * applying them one by one with {@link #apply(Order)}.
+     *
+     * @param orders   orders to apply, none of them null
+     * @param outcomes receives the outcome of {@code orders.get(i)} at index {@code i}
+     */
+    default void applyBatch(List<Order> orders, OrderOutcome[] outcomes) {
+        for (int i = 0; i < orders.size(); i++) {
+            outcomes[i] = apply(orders.get(i));
+        }
+    }
+
+    /**
+     * Returns Map of maximum reserved product quantities per Product.
+     */
+    Map<Product, Integer> getMaxReservedByProduct();
+
+    /**
+     * Returns the units of a product available for purchase, 0 if it is not stocked.
+     *
+     * @param product product to look up
+     */
+    int getStock(Product product);
+
+    /**
+     * Returns the units of a product held by reservations.
+     *
+     * @param product product to look up
+     */
+    int getReserved(Product product);
+
+    /**
+     * Returns how many times an operation had to wait for, or retry after, a concurrent operation
+     * on the same products.
+     */
+    long getContentions();
+
+    /**
+     * Returns the total time operations spent waiting for product locks held by other threads,
+     * in nanoseconds.
+     */
+    long getLockWaitNanos();
+}
@@ -0,0 +1,514 @@
+package multithreadedstore.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stock engine keeping stock in {@link ConcurrentHashMap}s.
+ * Every operation locks only the products contained in the order, always in the same global
+ * order (the order products were stocked in), so concurrent multi-product orders cannot deadlock
+ * and orders on different products run in parallel.
+ *
+ * <p>A lock is first tried without waiting; only when that fails is the wait timed and counted
+ * as contention, so uncontended operations pay nothing for the instrumentation.
+ *
+ * <p>While its locks are held, an operation is marked in {@link WriteActivity}, so
+ * {@link #snapshot(Product[], int[], int[])} can read the stock and reserved maps without locking.
+ * A journaled operation is appended under its locks too, once its check passed and before it
+ * changes anything.
+ */
+class LockingStockEngine implements StockEngine {
+
+    /**
+     * Lock indexes of the single order each thread is applying, reused by all its operations.
+     * Single-order operations never nest, so one array per thread is enough.
+     */
+    private static final ThreadLocal<int[]> LOCKED = ThreadLocal.withInitial(() -> new int[8]);
+
+    private final ConcurrentHashMap<Product, Integer> stock = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Product, Integer> reservedStock = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Product, Integer> maxReservedByProduct = new ConcurrentHashMap<>();
+    private final int[] lockIndexById;
+    private final ReentrantLock[] locks;
+    private final LongAdder contentions = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final WriteActivity activity = new WriteActivity();
+    private WarehouseJournal journal;
+
+    /**
+     * Creates the engine.
+     *
+     * @param products     products to stock
+     * @param initialStock starting quantity of every product
+     */
+    LockingStockEngine(List<Product> products, int initialStock) {
+        products.forEach(product -> stock.put(product, initialStock));
+        this.lockIndexById = new int[products.stream().mapToInt(ProductRegistry::idOf).max().orElse(-1) + 1];
+        Arrays.fill(lockIndexById, -1);
+        int lockCount = 0;
+        for (Product product : products) {
+            int id = ProductRegistry.idOf(product);
+            if (lockIndexById[id] < 0) {
+                lockIndexById[id] = lockCount++;
+            }
+        }
+        this.locks = new ReentrantLock[lockCount];
+        Arrays.setAll(locks, i -> new ReentrantLock());
+    }
+
+    @Override
+    public Map<Product, Integer> maxReservedByProduct() {
+        return maxReservedByProduct;
+    }
+
+    @Override
+    public int stock(Product product) {
+        return stock.getOrDefault(product, 0);
+    }
+
+    @Override
+    public int reserved(Product product) {
+        return reservedStock.getOrDefault(product, 0);
+    }
+
+    @Override
+    public int maxReserved(Product product) {
+        return maxReservedByProduct.getOrDefault(product, 0);
+    }
+
+    /**
+     * Reads the maps, waits for the operations holding locks meanwhile to finish and reads them
+     * again, keeping the result only if both reads agree.
+     */
+    @Override
+    public void snapshot(Product[] products, int[] stock, int[] reserved) {
+        for (int attempt = 0; ; attempt++) {
+            for (int i = 0; i < products.length; i++) {
+                stock[i] = this.stock.getOrDefault(products[i], 0);
+                reserved[i] = reservedStock.getOrDefault(products[i], 0);
+            }
+            activity.awaitWritesInProgress();
+            if (unchanged(products, stock, reserved)) {
+                return;
+            }
+            WriteActivity.backOff(attempt);
+        }
+    }
+
+    /**
+     * Returns true if every product still has the stock and reserved stock read before.
+     */
+    private boolean unchanged(Product[] products, int[] stock, int[] reserved) {
+        for (int i = 0; i < products.length; i++) {
+            if (this.stock.getOrDefault(products[i], 0) != stock[i]
+                    || reservedStock.getOrDefault(products[i], 0) != reserved[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long contentions() {
+        return contentions.sum();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    @Override
+    public void journalTo(WarehouseJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void restore(Product product, int stock, int reserved, int maxReserved) {
+        if (!this.stock.containsKey(product)) {
+            return;
+        }
+        this.stock.put(product, stock);
+        if (reserved > 0) {
+            reservedStock.put(product, reserved);
+        } else {
+            reservedStock.remove(product);
+        }
+        if (maxReserved > 0) {
+            maxReservedByProduct.put(product, maxReserved);
+        } else {
+            maxReservedByProduct.remove(product);
+        }
+    }
+
+    @Override
+    public boolean process(Order order) {
+        int locked = lockProducts(order);
+        try {
+            if (!hasEnoughStock(order)) {
+                return false;
+            }
+            journal(WarehouseJournal.PROCESS, order);
+
+            for (int i = 0; i < order.size(); i++) {
+                int quantity = order.quantity(i);
+                stock.computeIfPresent(order.product(i), (key, currentStock) -> currentStock - quantity);
+            }
+
+            return true;
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    @Override
+    public boolean reserve(Order reservation) {
+        int locked = lockProducts(reservation);
+        try {
+            if (!hasEnoughStock(reservation)) {
+                return false;
+            }
+            journal(WarehouseJournal.RESERVE, reservation);
+
+            for (int i = 0; i < reservation.size(); i++) {
+                Product product = reservation.product(i);
+                int quantity = reservation.quantity(i);
+                stock.computeIfPresent(product, (key, currentStock) -> currentStock - quantity);
+                int reservedQty = reservedStock.merge(product, quantity, Integer::sum);
+                maxReservedByProduct.merge(product, reservedQty, Math::max);
+            }
+
+            return true;
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    @Override
+    public boolean cancel(Order reservation) {
+        int locked = lockProducts(reservation);
+        try {
+            if (!hasEnoughReserved(reservation)) {
+                return false;
+            }
+            journal(WarehouseJournal.CANCEL, reservation);
+
+            for (int i = 0; i < reservation.size(); i++) {
+                Product product = reservation.product(i);
+                int quantity = reservation.quantity(i);
+
+                int reservedQtyAfterCancel = reservedStock.computeIfPresent(product, (key, reservedQty) -> reservedQty - quantity);
+                maxReservedByProduct.merge(product, reservedQtyAfterCancel, Math::max);
+
+                stock.merge(product, quantity, Integer::sum);
+            }
+
+            return true;
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    @Override
+    public boolean checkout(Order reservation) {
+        int locked = lockProducts(reservation);
+        try {
+            if (!hasEnoughReserved(reservation)) {
+                return false;
+            }
+            journal(WarehouseJournal.CHECKOUT, reservation);
+
+            for (int i = 0; i < reservation.size(); i++) {
+                Product product = reservation.product(i);
+                int quantity = reservation.quantity(i);
+
+                reservedStock.computeIfPresent(product, (key, reservedQty) -> reservedQty - quantity);
+            }
+
+            return true;
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    @Override
+    public boolean take(Order order, boolean fromReserved) {
+        int locked = lockProducts(order);
+        try {
+            if (fromReserved ? !hasEnoughReserved(order) : !hasEnoughStock(order)) {
+                return false;
+            }
+            add(order, -1, fromReserved);
+            return true;
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    @Override
+    public void settle(Order order, OrderType type) {
+        boolean fromReserved = type == OrderType.CANCELLATION || type == OrderType.CHECKOUT;
+        int locked = lockProducts(order);
+        try {
+            try {
+                journal(switch (type) {
+                    case PURCHASE -> WarehouseJournal.PROCESS;
+                    case RESERVATION -> WarehouseJournal.RESERVE;
+                    case CANCELLATION -> WarehouseJournal.CANCEL;
+                    case CHECKOUT -> WarehouseJournal.CHECKOUT;
+                }, order);
+            } catch (RuntimeException e) {
+                add(order, 1, fromReserved);
+                throw e;
+            }
+            if (type == OrderType.RESERVATION || type == OrderType.CANCELLATION) {
+                add(order, 1, type == OrderType.RESERVATION);
+            }
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    @Override
+    public void undoTake(Order order, boolean fromReserved) {
+        int locked = lockProducts(order);
+        try {
+            add(order, 1, fromReserved);
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    /**
+     * Adds or removes the ordered quantities of stocked products to or from stock or reserved
+     * stock, raising the maximum reserved quantity as reserved stock grows. Must be called with the
+     * locks of the order's products held.
+     *
+     * @param sign       1 to add, -1 to remove
+     * @param toReserved true to change reserved stock, false to change stock
+     */
+    private void add(Order order, int sign, boolean toReserved) {
+        for (int i = 0; i < order.size(); i++) {
+            Product product = order.product(i);
+            if (!stock.containsKey(product)) {
+                continue;
+            }
+            int quantity = sign * order.quantity(i);
+            if (toReserved) {
+                int reservedQty = reservedStock.merge(product, quantity, Integer::sum);
+                maxReservedByProduct.merge(product, reservedQty, Math::max);
+            } else {
+                stock.merge(product, quantity, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Locks the products of the whole batch once, then applies its orders in arrival order.
+     * The per-order operations re-enter locks already held by this thread, which is uncontended.
+     * If the batch holds only regular purchases and their combined demand fits in stock, the demand
+     * is aggregated per product and written once per product instead of once per order.
+     */
+    @Override
+    public void applyBatch(List<Order> orders, OrderOutcome[] outcomes) {
+        int[] locked = lockProducts(orders);
+        try {
+            if (!applyAggregated(orders, outcomes)) {
+                for (int i = 0; i < orders.size(); i++) {
+                    outcomes[i] = apply(orders.get(i));
+                }
+            }
+        } finally {
+            unlockProducts(locked);
+        }
+    }
+
+    /**
+     * Applies a batch of regular purchases as one aggregated demand per product.
+     * Must be called with the locks of every product in the batch held.
+     *
+     * @return false, without changing anything, if the batch holds other order types or
+     *         the combined demand does not fit in stock
+     */
+    private boolean applyAggregated(List<Order> orders, OrderOutcome[] outcomes) {
+        Map<Product, Integer> demand = new HashMap<>();
+        for (Order order : orders) {
+            if (order.isEmpty() || order.isReservationOrder() || order.isReservationCancellationOrder()
+                    || order.isReservationCheckoutOrder()) {
+                return false;
+            }
+            for (int i = 0; i < order.size(); i++) {
+                demand.merge(order.product(i), order.quantity(i), Integer::sum);
+            }
+        }
+
+        for (var entry : demand.entrySet()) {
+            Integer currentStock = stock.get(entry.getKey());
+            if (currentStock == null || currentStock < entry.getValue()) {
+                return false;
+            }
+        }
+
+        for (Order order : orders) {
+            journal(WarehouseJournal.PROCESS, order);
+        }
+        demand.forEach((product, quantity) ->
+                stock.computeIfPresent(product, (key, currentStock) -> currentStock - quantity)
+        );
+        Arrays.fill(outcomes, 0, orders.size(), OrderOutcome.PURCHASED);
+        return true;
+    }
+
+    /**
+     * Appends an operation to the journal, if there is one, before it changes anything.
+     * Must be called with the locks of its products held.
+     */
+    private void journal(byte operation, Order order) {
+        if (journal != null) {
+            journal.append(operation, order);
+        }
+    }
+
+    /**
+     * Checks if all Products in an Order is available in the warehouse stock.
+     *
+     * @param order order to check in the stock.
+     * @return true if all products in order are available.
+     */
+    private boolean hasEnoughStock(Order order) {
+        for (int i = 0; i < order.size(); i++) {
+            Integer currentStock = stock.get(order.product(i));
+            int quantity = order.quantity(i);
+            if (currentStock == null || currentStock < quantity) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if all Products in an Order is available in the warehouse reserved stock.
+     *
+     * @param reservation order to check in the reserve stock.
+     * @return true if all products in order are available.
+     */
+    private boolean hasEnoughReserved(Order reservation) {
+        for (int i = 0; i < reservation.size(); i++) {
+            if (reservedStock.getOrDefault(reservation.product(i), 0) < reservation.quantity(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Locks every stocked product of an order in ascending lock index order, sorting their indexes
+     * in the calling thread's scratch array so that no operation allocates.
+     * Products that are not stocked have no lock; the stock checks reject them anyway.
+     *
+     * @param order order whose products to lock.
+     * @return number of locks acquired, to be passed to {@link #unlockProducts(int)}.
+     */
+    private int lockProducts(Order order) {
+        int[] indexes = LOCKED.get();
+        if (indexes.length < order.size()) {
+            indexes = new int[Math.max(order.size(), indexes.length * 2)];
+            LOCKED.set(indexes);
+        }
+        int count = collectLockIndexes(order, indexes, 0);
+        Arrays.sort(indexes, 0, count);
+        return acquire(indexes, count);
+    }
+
+    /**
+     * Locks every stocked product of a batch of orders once, in ascending lock index order.
+     *
+     * @param orders orders whose products to lock.
+     * @return distinct lock indexes that were acquired, to be passed to {@link #unlockProducts(int[])}.
+     */
+    private int[] lockProducts(List<Order> orders) {
+        int itemCount = 0;
+        for (Order order : orders) {
+            itemCount += order.size();
+        }
+        int[] indexes = new int[itemCount];
+        int count = 0;
+        for (Order order : orders) {
+            count = collectLockIndexes(order, indexes, count);
+        }
+        Arrays.sort(indexes, 0, count);
+        int distinct = acquire(indexes, count);
+        return distinct == indexes.length ? indexes : Arrays.copyOf(indexes, distinct);
+    }
+
+    /**
+     * Appends the lock indexes of an order's stocked products to an array.
+     *
+     * @return number of indexes in the array afterwards.
+     */
+    private int collectLockIndexes(Order order, int[] indexes, int count) {
+        for (int i = 0; i < order.size(); i++) {
+            int id = order.productId(i);
+            if (id < lockIndexById.length && lockIndexById[id] >= 0) {
+                indexes[count++] = lockIndexById[id];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops duplicates from the sorted lock indexes at the start of an array and acquires their locks
+     * in that order.
+     *
+     * @return number of distinct indexes, now at the start of the array.
+     */
+    private int acquire(int[] indexes, int count) {
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        for (int i = 0; i < distinct; i++) {
+            ReentrantLock lock = locks[indexes[i]];
+            if (!lock.tryLock()) {
+                long waitStart = System.nanoTime();
+                lock.lock();
+                lockWaitNanos.add(System.nanoTime() - waitStart);
+                contentions.increment();
+            }
+        }
+        activity.begin();
+        return distinct;
+    }
+
+    /**
+     * Releases locks acquired by {@link #lockProducts(Order)} in reverse order.
+     *
+     * @param count number of locks acquired.
+     */
+    private void unlockProducts(int count) {
+        release(LOCKED.get(), count);
+    }
+
+    /**
+     * Releases locks acquired by {@link #lockProducts(List)} in reverse order.
+     *
+     * @param indexes lock indexes to release.
+     */
+    private void unlockProducts(int[] indexes) {
+        release(indexes, indexes.length);
+    }
+
+    private void release(int[] indexes, int count) {
+        activity.end();
+        for (int i = count - 1; i >= 0; i--) {
+            locks[indexes[i]].unlock();
+        }
+    }
+}
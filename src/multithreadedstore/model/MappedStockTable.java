@@ -0,0 +1,284 @@
+package multithreadedstore.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link StockTable} kept in memory-mapped files, so a catalog of millions of products costs no
+ * heap for its counters and a restart only maps the files again instead of rebuilding anything.
+ *
+ * <p>A table directory holds two files:
+ * <ul>
+ *     <li>{@code stock.bin}: a header and one 16-byte record per slot, holding the packed stock and
+ *     reserved counter and the highest reserved quantity. Records are updated in place with atomic
+ *     {@link VarHandle} operations on the mapping, so every committed change is in the page cache
+ *     and survives the process dying; {@link #close()} forces it to disk.</li>
+ *     <li>{@code products.idx}: the catalog, written once when the table is created. It holds an
+ *     open-addressing hash table from product to slot and every product's name and price. A product
+ *     is looked up there the first time an order names it and its slot is cached by registry id,
+ *     so products are only interned on the heap as orders use them.</li>
+ * </ul>
+ *
+ * <p>Both files are written to temporary names and moved into place only when complete, index
+ * last, so a crash while creating a table leaves a directory that creates it again. Each file must
+ * fit in one mapping of at most 2 GB, which is over a hundred million slots.
+ */
+final class MappedStockTable implements StockTable, Closeable {
+
+    private static final String STOCK_FILE = "stock.bin";
+    private static final String INDEX_FILE = "products.idx";
+    private static final long STOCK_MAGIC = 0x5354434B54424C31L;
+    private static final long INDEX_MAGIC = 0x50524F4449445831L;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 16;
+    private static final int MAX_RESERVED_OFFSET = 8;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MappedByteBuffer stock;
+    private final MappedByteBuffer index;
+    private final int slots;
+    private final int bucketMask;
+    private final int offsetsStart;
+    private final ReentrantLock cacheLock = new ReentrantLock();
+
+    /** Per registry id: slot + 1, -1 if not stocked here, 0 if not looked up yet. */
+    private volatile int[] slotCache = new int[0];
+
+    private MappedStockTable(MappedByteBuffer stock, MappedByteBuffer index) throws IOException {
+        this.stock = stock;
+        this.index = index;
+        if (stock.getLong(0) != STOCK_MAGIC || stock.getInt(8) != VERSION
+                || index.getLong(0) != INDEX_MAGIC || index.getInt(8) != VERSION) {
+            throw new IOException("Not a stock table of version " + VERSION);
+        }
+        this.slots = index.getInt(12);
+        int buckets = index.getInt(16);
+        if (stock.getInt(12) != slots || stock.capacity() < HEADER_BYTES + (long) slots * RECORD_BYTES) {
+            throw new IOException("Stock file does not match the product index");
+        }
+        this.bucketMask = buckets - 1;
+        this.offsetsStart = HEADER_BYTES + 4 * buckets;
+    }
+
+    /**
+     * Maps the table in a directory, creating it first if the directory holds none.
+     *
+     * @param directory    directory holding the table
+     * @param products     products to stock if the table is created; ignored otherwise
+     * @param initialStock starting quantity of every product if the table is created; ignored otherwise
+     * @return the mapped table
+     * @throws IOException              if the files cannot be created, read or belong to something else
+     * @throws IllegalArgumentException if the catalog does not fit in one mapping
+     */
+    static MappedStockTable open(Path directory, List<Product> products, int initialStock) throws IOException {
+        Files.createDirectories(directory);
+        if (!Files.exists(directory.resolve(INDEX_FILE))) {
+            create(directory, products.stream().distinct().toArray(Product[]::new), initialStock);
+        }
+        return open(directory);
+    }
+
+    /**
+     * Maps an existing table.
+     *
+     * @param directory directory holding the table
+     * @return the mapped table
+     * @throws IOException if the directory holds no table or the files belong to something else
+     */
+    static MappedStockTable open(Path directory) throws IOException {
+        return new MappedStockTable(map(directory.resolve(STOCK_FILE), FileChannel.MapMode.READ_WRITE),
+                map(directory.resolve(INDEX_FILE), FileChannel.MapMode.READ_ONLY));
+    }
+
+    /**
+     * Forces every counter update to disk. The mapping is released once the table is unreachable.
+     */
+    @Override
+    public void close() {
+        stock.force();
+    }
+
+    @Override
+    public int slots() {
+        return slots;
+    }
+
+    @Override
+    public Product product(int slot) {
+        int offset = (int) index.getLong(offsetsStart + 8 * slot);
+        byte[] name = new byte[index.getInt(offset + 8)];
+        index.get(offset + 12, name);
+        return new Product(new String(name, StandardCharsets.UTF_8), index.getDouble(offset));
+    }
+
+    @Override
+    public int slotOf(int productId) {
+        int[] cache = slotCache;
+        int cached = productId < cache.length ? cache[productId] : 0;
+        if (cached != 0) {
+            return cached > 0 ? cached - 1 : -1;
+        }
+        int slot = find(ProductRegistry.product(productId));
+        cacheLock.lock();
+        try {
+            cache = slotCache;
+            if (productId >= cache.length) {
+                cache = Arrays.copyOf(cache, Math.max(productId + 1, cache.length * 2));
+            }
+            cache[productId] = slot < 0 ? -1 : slot + 1;
+            slotCache = cache;
+        } finally {
+            cacheLock.unlock();
+        }
+        return slot;
+    }
+
+    @Override
+    public long counter(int slot) {
+        return (long) LONGS.getVolatile(stock, record(slot));
+    }
+
+    @Override
+    public boolean compareAndSetCounter(int slot, long expected, long next) {
+        return LONGS.compareAndSet(stock, record(slot), expected, next);
+    }
+
+    @Override
+    public long addAndGetCounter(int slot, long delta) {
+        return (long) LONGS.getAndAdd(stock, record(slot), delta) + delta;
+    }
+
+    @Override
+    public void setCounter(int slot, long counter) {
+        LONGS.setVolatile(stock, record(slot), counter);
+    }
+
+    @Override
+    public int maxReserved(int slot) {
+        return (int) INTS.getVolatile(stock, record(slot) + MAX_RESERVED_OFFSET);
+    }
+
+    @Override
+    public void raiseMaxReserved(int slot, int reserved) {
+        int offset = record(slot) + MAX_RESERVED_OFFSET;
+        int current;
+        do {
+            current = (int) INTS.getVolatile(stock, offset);
+        } while (current < reserved && !INTS.compareAndSet(stock, offset, current, reserved));
+    }
+
+    @Override
+    public void setMaxReserved(int slot, int maxReserved) {
+        INTS.setVolatile(stock, record(slot) + MAX_RESERVED_OFFSET, maxReserved);
+    }
+
+    private static int record(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    /**
+     * Returns the slot of a product in the index, or -1 if it is not stocked here.
+     */
+    private int find(Product product) {
+        byte[] name = product.name().getBytes(StandardCharsets.UTF_8);
+        for (int bucket = hash(product) & bucketMask; ; bucket = bucket + 1 & bucketMask) {
+            int slot = index.getInt(HEADER_BYTES + 4 * bucket) - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            int offset = (int) index.getLong(offsetsStart + 8 * slot);
+            if (index.getDouble(offset) == product.price() && index.getInt(offset + 8) == name.length
+                    && index.slice(offset + 12, name.length).equals(ByteBuffer.wrap(name))) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Returns a hash of a product that is the same in every JVM, unlike {@link Product#hashCode()}.
+     */
+    private static int hash(Product product) {
+        long h = product.name().hashCode() * 31L + Double.hashCode(product.price());
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * Writes a new table with every product in stock and nothing reserved.
+     */
+    private static void create(Path directory, Product[] products, int initialStock) throws IOException {
+        int buckets = Integer.highestOneBit(Math.max(2, products.length) * 2 - 1) * 2;
+        byte[][] names = new byte[products.length][];
+        long indexBytes = HEADER_BYTES + 4L * buckets + 8L * products.length;
+        for (int slot = 0; slot < products.length; slot++) {
+            names[slot] = products[slot].name().getBytes(StandardCharsets.UTF_8);
+            indexBytes += 12 + names[slot].length;
+        }
+        long stockBytes = HEADER_BYTES + (long) RECORD_BYTES * products.length;
+        if (indexBytes > Integer.MAX_VALUE || stockBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Catalog of " + products.length + " products does not fit in one mapping");
+        }
+
+        Path stockTemporary = directory.resolve(STOCK_FILE + ".tmp");
+        MappedByteBuffer stock = create(stockTemporary, stockBytes);
+        stock.putLong(0, STOCK_MAGIC).putInt(8, VERSION).putInt(12, products.length);
+        for (int slot = 0; slot < products.length; slot++) {
+            stock.putLong(record(slot), (long) initialStock << 32);
+        }
+        stock.force();
+
+        Path indexTemporary = directory.resolve(INDEX_FILE + ".tmp");
+        MappedByteBuffer index = create(indexTemporary, indexBytes);
+        index.putLong(0, INDEX_MAGIC).putInt(8, VERSION).putInt(12, products.length).putInt(16, buckets);
+        int offsetsStart = HEADER_BYTES + 4 * buckets;
+        int offset = offsetsStart + 8 * products.length;
+        for (int slot = 0; slot < products.length; slot++) {
+            int bucket = hash(products[slot]) & buckets - 1;
+            while (index.getInt(HEADER_BYTES + 4 * bucket) != 0) {
+                bucket = bucket + 1 & buckets - 1;
+            }
+            index.putInt(HEADER_BYTES + 4 * bucket, slot + 1);
+            index.putLong(offsetsStart + 8 * slot, offset);
+            index.putDouble(offset, products[slot].price()).putInt(offset + 8, names[slot].length);
+            index.put(offset + 12, names[slot]);
+            offset += 12 + names[slot].length;
+        }
+        index.force();
+
+        Files.move(stockTemporary, directory.resolve(STOCK_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemporary, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MappedByteBuffer create(Path file, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return (MappedByteBuffer) channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            return (MappedByteBuffer) channel.map(mode, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
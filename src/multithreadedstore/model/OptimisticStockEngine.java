@@ -0,0 +1,646 @@
+package multithreadedstore.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free stock engine keeping counters in the dense per-product slots of a {@link StockTable},
+ * on the heap or in a memory-mapped file. Stock and reserved stock of a product are packed into one {@code long} (stock in the high
+ * 32 bits, reserved in the low 32 bits), so a single-product order commits with one CAS,
+ * including reservations and cancellations that move units between the two counters.
+ *
+ * <p>Multi-product orders commit all-or-nothing with an optimistic protocol: validate every
+ * item against the current counters, then claim the decrements item by item with CAS. If a
+ * claim fails because a concurrent order got there first, the claims already made are given
+ * back, the order backs off and it is validated again, as often as it takes: an order is only
+ * refused when validation finds a product short, never for losing races. Increments (reserved units of a reservation, stock
+ * units of a cancellation) are only published once every claim succeeded, so no other order
+ * can consume units that might still be rolled back. Stock can never be oversold. Validation
+ * reads the counters as they are, though, including claims of orders still in progress: an order
+ * may be refused as short of units that a concurrent order claimed and then gives back because
+ * it lost a race for another product.
+ *
+ * <p>The stock of designated hot products is split over one sub-bucket per core, each on its own
+ * cache line, so a flash sale on one product does not funnel every worker through one counter.
+ * A worker takes units from the bucket its thread maps to with a CAS that never lets a bucket go
+ * negative. When that bucket runs dry, the worker takes the product's rebalance lock, steals every
+ * bucket's units, takes what it needs if the total allows and spreads the rest evenly again, so an
+ * order is only refused when the product as a whole is short. Reads of a hot product's stock retry
+ * around a rebalance with a seqlock, so units in transit between buckets are never missed. Reserved
+ * units of hot products stay in the packed counter; a reservation or cancellation of a hot product
+ * moves units between the buckets and that counter in two steps.
+ *
+ * <p>Operations that change several counters, multi-product orders, the halves of parts of split
+ * orders and those two-step moves, are marked in {@link WriteActivity} while they run. A
+ * {@link #snapshot(Product[], int[], int[]) snapshot} reads its products' counters, waits for the
+ * operations in progress to finish and reads them again, keeping the result only if both reads
+ * agree, so it never sees an order half applied. Single-product orders commit with one CAS as
+ * before and are caught by the second read.
+ *
+ * <p>A journaled engine appends an operation once its claims succeeded and before it publishes
+ * its increments, and gives the claims back if the journal refuses it. Single-product orders then
+ * take the same claim-and-publish path, since a CAS moving units between stock and reserved stock
+ * would make them visible before they were journaled.
+ */
+class OptimisticStockEngine implements StockEngine {
+
+    private static final int PROCESS = 0;
+    private static final int RESERVE = 1;
+    private static final int CANCEL = 2;
+    private static final int CHECKOUT = 3;
+
+    /** Longs between two sub-buckets, so each sits on its own pair of cache lines. */
+    private static final int PADDING = 16;
+
+    private final StockTable table;
+    private final LongAdder contentions = new LongAdder();
+    private final WriteActivity activity = new WriteActivity();
+    private WarehouseJournal journal;
+
+    private final int[] hotBySlot;
+    private final int buckets;
+    private final AtomicLongArray hotStock;
+    private final AtomicLongArray hotVersions;
+    private final ReentrantLock[] rebalanceLocks;
+
+    /**
+     * Creates the engine.
+     *
+     * @param products     products to stock
+     * @param initialStock starting quantity of every product
+     */
+    OptimisticStockEngine(List<Product> products, int initialStock) {
+        this(products, initialStock, Set.of());
+    }
+
+    /**
+     * Creates the engine with the stock of some products split over per-core sub-buckets.
+     *
+     * @param products     products to stock
+     * @param initialStock starting quantity of every product
+     * @param hotProducts  products expected to take most of the traffic; others are ignored
+     */
+    OptimisticStockEngine(List<Product> products, int initialStock, Set<Product> hotProducts) {
+        this(new HeapStockTable(products, initialStock), hotProducts);
+    }
+
+    /**
+     * Creates the engine over existing counters, such as a {@link MappedStockTable} reopened after a
+     * restart. The stock of hot products moves into sub-buckets on the heap, so only tables that do
+     * not outlive the engine should have hot products.
+     *
+     * @param table       counters to update
+     * @param hotProducts products expected to take most of the traffic; others are ignored
+     */
+    OptimisticStockEngine(StockTable table, Set<Product> hotProducts) {
+        this.table = table;
+        this.hotBySlot = new int[hotProducts.isEmpty() ? 0 : table.slots()];
+        Arrays.fill(hotBySlot, -1);
+        int hotCount = 0;
+        for (Product product : hotProducts) {
+            int slot = table.slotOf(ProductRegistry.idOf(product));
+            if (slot >= 0 && hotBySlot[slot] < 0) {
+                hotBySlot[slot] = hotCount++;
+            }
+        }
+        this.buckets = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.hotStock = new AtomicLongArray(hotCount * buckets * PADDING);
+        this.hotVersions = new AtomicLongArray(hotCount);
+        this.rebalanceLocks = new ReentrantLock[hotCount];
+        Arrays.setAll(rebalanceLocks, i -> new ReentrantLock());
+        for (int slot = 0; slot < hotBySlot.length; slot++) {
+            if (hotBySlot[slot] >= 0) {
+                long counter = table.counter(slot);
+                table.setCounter(slot, pack(0, reserved(counter)));
+                spread(hotBySlot[slot], stock(counter), 0);
+            }
+        }
+    }
+
+    @Override
+    public boolean process(Order order) {
+        return apply(order, PROCESS);
+    }
+
+    @Override
+    public boolean reserve(Order reservation) {
+        return apply(reservation, RESERVE);
+    }
+
+    @Override
+    public boolean cancel(Order reservation) {
+        return apply(reservation, CANCEL);
+    }
+
+    @Override
+    public boolean checkout(Order reservation) {
+        return apply(reservation, CHECKOUT);
+    }
+
+    @Override
+    public Map<Product, Integer> maxReservedByProduct() {
+        Map<Product, Integer> snapshot = new HashMap<>();
+        for (int slot = 0; slot < table.slots(); slot++) {
+            int max = table.maxReserved(slot);
+            if (max > 0) {
+                snapshot.put(table.product(slot), max);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public int stock(Product product) {
+        int slot = slotOf(ProductRegistry.idOf(product));
+        return slot < 0 ? 0 : available(slot, true);
+    }
+
+    @Override
+    public int reserved(Product product) {
+        int slot = slotOf(ProductRegistry.idOf(product));
+        return slot < 0 ? 0 : reserved(table.counter(slot));
+    }
+
+    @Override
+    public int maxReserved(Product product) {
+        int slot = slotOf(ProductRegistry.idOf(product));
+        return slot < 0 ? 0 : table.maxReserved(slot);
+    }
+
+    @Override
+    public void journalTo(WarehouseJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public boolean take(Order order, boolean fromReserved) {
+        if (!stocked(order)) {
+            return false;
+        }
+        activity.begin();
+        try {
+            return claimItems(order, !fromReserved);
+        } finally {
+            activity.end();
+        }
+    }
+
+    @Override
+    public void settle(Order order, OrderType type) {
+        int op = switch (type) {
+            case PURCHASE -> PROCESS;
+            case RESERVATION -> RESERVE;
+            case CANCELLATION -> CANCEL;
+            case CHECKOUT -> CHECKOUT;
+        };
+        activity.begin();
+        try {
+            journal(order, op, op == PROCESS || op == RESERVE);
+            for (int i = 0; i < order.size(); i++) {
+                publish(slotOf(order.productId(i)), order.quantity(i), op);
+            }
+        } finally {
+            activity.end();
+        }
+    }
+
+    @Override
+    public void undoTake(Order order, boolean fromReserved) {
+        activity.begin();
+        try {
+            giveBack(order, order.size(), !fromReserved);
+        } finally {
+            activity.end();
+        }
+    }
+
+    @Override
+    public void snapshot(Product[] products, int[] stock, int[] reserved) {
+        int[] slots = new int[products.length];
+        for (int i = 0; i < products.length; i++) {
+            slots[i] = slotOf(ProductRegistry.idOf(products[i]));
+        }
+        snapshot(slots, stock, reserved);
+    }
+
+    /**
+     * Reads the stock and reserved stock of table slots as one consistent view, like
+     * {@link #snapshot(Product[], int[], int[])}, without looking their products up.
+     *
+     * @param slots    slots to read; negative slots read as 0
+     * @param stock    receives the stock of {@code slots[i]} at index {@code i}
+     * @param reserved receives the reserved stock of {@code slots[i]} at index {@code i}
+     */
+    void snapshot(int[] slots, int[] stock, int[] reserved) {
+        for (int attempt = 0; ; attempt++) {
+            for (int i = 0; i < slots.length; i++) {
+                stock[i] = slots[i] < 0 ? 0 : available(slots[i], true);
+                reserved[i] = slots[i] < 0 ? 0 : reserved(table.counter(slots[i]));
+            }
+            activity.awaitWritesInProgress();
+            if (unchanged(slots, stock, reserved)) {
+                return;
+            }
+            WriteActivity.backOff(attempt);
+        }
+    }
+
+    /**
+     * Returns true if every slot still holds the stock and reserved stock read before.
+     */
+    private boolean unchanged(int[] slots, int[] stock, int[] reserved) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0 && (available(slots[i], true) != stock[i]
+                    || reserved(table.counter(slots[i])) != reserved[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many CAS attempts failed, how many multi-product orders were rolled back and how
+     * many times hot product buckets were rebalanced.
+     */
+    @Override
+    public long contentions() {
+        return contentions.sum();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return 0;
+    }
+
+    @Override
+    public void restore(Product product, int stock, int reserved, int maxReserved) {
+        int slot = slotOf(ProductRegistry.idOf(product));
+        if (slot >= 0) {
+            int hot = isHot(slot) ? hotBySlot[slot] : -1;
+            if (hot >= 0) {
+                for (int bucket = 0; bucket < buckets; bucket++) {
+                    hotStock.set(bucketIndex(hot, bucket), 0);
+                }
+                spread(hot, stock, 0);
+            }
+            table.setCounter(slot, pack(hot >= 0 ? 0 : stock, reserved));
+            table.setMaxReserved(slot, maxReserved);
+        }
+    }
+
+    /**
+     * Applies an order with the given operation, all-or-nothing.
+     *
+     * @param order order to apply
+     * @param op    one of {@link #PROCESS}, {@link #RESERVE}, {@link #CANCEL}, {@link #CHECKOUT}
+     * @return true if the order was applied
+     */
+    private boolean apply(Order order, int op) {
+        if (!stocked(order)) {
+            return false;
+        }
+
+        if (order.size() == 1 && journal == null) {
+            int slot = slotOf(order.productId(0));
+            return isHot(slot) ? applySingleHot(slot, order.quantity(0), op)
+                    : applySingle(slot, order.quantity(0), op);
+        }
+        return applyMulti(order, op);
+    }
+
+    /**
+     * Applies one item with a single CAS loop, moving units between stock and reserved atomically.
+     */
+    private boolean applySingle(int slot, int quantity, int op) {
+        while (true) {
+            long current = table.counter(slot);
+            int stock = stock(current);
+            int reserved = reserved(current);
+            long next;
+            switch (op) {
+                case PROCESS -> {
+                    if (stock < quantity) return false;
+                    next = pack(stock - quantity, reserved);
+                }
+                case RESERVE -> {
+                    if (stock < quantity) return false;
+                    next = pack(stock - quantity, reserved + quantity);
+                }
+                case CANCEL -> {
+                    if (reserved < quantity) return false;
+                    next = pack(stock + quantity, reserved - quantity);
+                }
+                default -> {
+                    if (reserved < quantity) return false;
+                    next = pack(stock, reserved - quantity);
+                }
+            }
+            if (table.compareAndSetCounter(slot, current, next)) {
+                if (op == RESERVE) {
+                    updateMaxReserved(slot, reserved(next));
+                }
+                return true;
+            }
+            contentions.increment();
+        }
+    }
+
+    /**
+     * Applies one item of a hot product: units taken from stock come out of the sub-buckets.
+     */
+    private boolean applySingleHot(int slot, int quantity, int op) {
+        switch (op) {
+            case PROCESS -> {
+                return claim(slot, quantity, true);
+            }
+            case RESERVE, CANCEL -> {
+                activity.begin();
+                try {
+                    if (!claim(slot, quantity, op == RESERVE)) {
+                        return false;
+                    }
+                    publish(slot, quantity, op);
+                    return true;
+                } finally {
+                    activity.end();
+                }
+            }
+            default -> {
+                return claim(slot, quantity, false);
+            }
+        }
+    }
+
+    /**
+     * Applies several items all-or-nothing, marking their products as being written meanwhile.
+     */
+    private boolean applyMulti(Order order, int op) {
+        activity.begin();
+        try {
+            return claimAll(order, op);
+        } finally {
+            activity.end();
+        }
+    }
+
+    /**
+     * Returns true if every product of an order is stocked.
+     */
+    private boolean stocked(Order order) {
+        for (int i = 0; i < order.size(); i++) {
+            if (slotOf(order.productId(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Claims every item of a multi-product order, journals it and publishes the increments once
+     * all claims succeeded.
+     */
+    private boolean claimAll(Order order, int op) {
+        boolean fromStock = op == PROCESS || op == RESERVE;
+        if (!claimItems(order, fromStock)) {
+            return false;
+        }
+        journal(order, op, fromStock);
+        for (int i = 0; i < order.size(); i++) {
+            publish(slotOf(order.productId(i)), order.quantity(i), op);
+        }
+        return true;
+    }
+
+    /**
+     * Validates and claims every item of an order from stock or reserved stock. On a lost race the
+     * claims are rolled back and the order is retried after backing off, until every claim
+     * succeeds or validation finds a product short, possibly only for the claims of an order that
+     * is rolled back later.
+     */
+    private boolean claimItems(Order order, boolean fromStock) {
+        int size = order.size();
+        for (int attempt = 0; ; attempt++) {
+            for (int i = 0; i < size; i++) {
+                if (available(slotOf(order.productId(i)), fromStock) < order.quantity(i)) {
+                    return false;
+                }
+            }
+
+            int claimed = 0;
+            while (claimed < size && claim(slotOf(order.productId(claimed)), order.quantity(claimed), fromStock)) {
+                claimed++;
+            }
+
+            if (claimed == size) {
+                return true;
+            }
+
+            giveBack(order, claimed, fromStock);
+            contentions.increment();
+            WriteActivity.backOff(attempt);
+        }
+    }
+
+    /**
+     * Appends an order whose items are all claimed to the journal, if there is one, giving the
+     * claims back if the journal refuses it.
+     */
+    private void journal(Order order, int op, boolean fromStock) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(switch (op) {
+                case PROCESS -> WarehouseJournal.PROCESS;
+                case RESERVE -> WarehouseJournal.RESERVE;
+                case CANCEL -> WarehouseJournal.CANCEL;
+                default -> WarehouseJournal.CHECKOUT;
+            }, order);
+        } catch (RuntimeException e) {
+            giveBack(order, order.size(), fromStock);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back the first {@code claimed} items of an order, last first.
+     */
+    private void giveBack(Order order, int claimed, boolean toStock) {
+        for (int i = claimed - 1; i >= 0; i--) {
+            giveBack(slotOf(order.productId(i)), order.quantity(i), toStock);
+        }
+    }
+
+    /**
+     * Removes units from stock or reserved stock of one slot if enough are available.
+     */
+    private boolean claim(int slot, int quantity, boolean fromStock) {
+        if (fromStock && isHot(slot)) {
+            return takeHot(hotBySlot[slot], quantity);
+        }
+        while (true) {
+            long current = table.counter(slot);
+            if (available(current, fromStock) < quantity) {
+                return false;
+            }
+            if (table.compareAndSetCounter(slot, current, current - delta(quantity, fromStock))) {
+                return true;
+            }
+            contentions.increment();
+        }
+    }
+
+    /**
+     * Publishes the increment half of an operation once all of its claims succeeded.
+     */
+    private void publish(int slot, int quantity, int op) {
+        if (op == RESERVE) {
+            long next = table.addAndGetCounter(slot, delta(quantity, false));
+            updateMaxReserved(slot, reserved(next));
+        } else if (op == CANCEL) {
+            giveBack(slot, quantity, true);
+        }
+    }
+
+    /**
+     * Adds units back to stock or reserved stock of one slot.
+     */
+    private void giveBack(int slot, int quantity, boolean toStock) {
+        if (toStock && isHot(slot)) {
+            hotStock.getAndAdd(bucketIndex(hotBySlot[slot], homeBucket()), quantity);
+        } else {
+            table.addAndGetCounter(slot, delta(quantity, toStock));
+        }
+    }
+
+    /**
+     * Returns the stock or reserved stock of one slot.
+     */
+    private int available(int slot, boolean fromStock) {
+        return fromStock && isHot(slot) ? hotStockOf(hotBySlot[slot]) : available(table.counter(slot), fromStock);
+    }
+
+    /**
+     * Takes units of a hot product from the calling thread's sub-bucket, rebalancing if it runs dry.
+     */
+    private boolean takeHot(int hot, int quantity) {
+        int home = homeBucket();
+        int index = bucketIndex(hot, home);
+        while (true) {
+            long current = hotStock.get(index);
+            if (current < quantity) {
+                return rebalance(hot, home, quantity);
+            }
+            if (hotStock.compareAndSet(index, current, current - quantity)) {
+                return true;
+            }
+            contentions.increment();
+        }
+    }
+
+    /**
+     * Steals the units of every sub-bucket of a hot product, takes {@code quantity} of them if
+     * there are enough and spreads the rest evenly again. Bucket versions are odd meanwhile, so
+     * readers retry instead of missing the stolen units.
+     */
+    private boolean rebalance(int hot, int home, int quantity) {
+        ReentrantLock lock = rebalanceLocks[hot];
+        lock.lock();
+        try {
+            hotVersions.incrementAndGet(hot);
+            long total = 0;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                total += hotStock.getAndSet(bucketIndex(hot, bucket), 0);
+            }
+            boolean taken = total >= quantity;
+            spread(hot, taken ? total - quantity : total, home);
+            hotVersions.incrementAndGet(hot);
+            contentions.increment();
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds units evenly to the sub-buckets of a hot product, the remainder to one bucket.
+     */
+    private void spread(int hot, long units, int remainderBucket) {
+        long share = units / buckets;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long add = share + (bucket == remainderBucket ? units % buckets : 0);
+            if (add != 0) {
+                hotStock.getAndAdd(bucketIndex(hot, bucket), add);
+            }
+        }
+    }
+
+    /**
+     * Returns the stock of a hot product: the sum of its sub-buckets, read again if a rebalance
+     * moved units between them meanwhile.
+     */
+    private int hotStockOf(int hot) {
+        while (true) {
+            long version = hotVersions.get(hot);
+            if ((version & 1) == 0) {
+                long total = 0;
+                for (int bucket = 0; bucket < buckets; bucket++) {
+                    total += hotStock.get(bucketIndex(hot, bucket));
+                }
+                if (hotVersions.get(hot) == version) {
+                    return (int) total;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int bucketIndex(int hot, int bucket) {
+        return (hot * buckets + bucket) * PADDING;
+    }
+
+    /**
+     * Returns the sub-bucket the calling thread takes from first.
+     */
+    private int homeBucket() {
+        return (int) (Thread.currentThread().threadId() % buckets);
+    }
+
+    private boolean isHot(int slot) {
+        return slot < hotBySlot.length && hotBySlot[slot] >= 0;
+    }
+
+    private int slotOf(int productId) {
+        return table.slotOf(productId);
+    }
+
+    private void updateMaxReserved(int slot, int reserved) {
+        table.raiseMaxReserved(slot, reserved);
+    }
+
+    private static int available(long counter, boolean fromStock) {
+        return fromStock ? stock(counter) : reserved(counter);
+    }
+
+    private static long delta(int quantity, boolean stock) {
+        return stock ? (long) quantity << 32 : quantity;
+    }
+
+    private static long pack(int stock, int reserved) {
+        return (long) stock << 32 | reserved & 0xFFFFFFFFL;
+    }
+
+    private static int stock(long counter) {
+        return (int) (counter >>> 32);
+    }
+
+    private static int reserved(long counter) {
+        return (int) counter;
+    }
+}
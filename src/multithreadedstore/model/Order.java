@@ -1,20 +1,36 @@
 package multithreadedstore.model;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents an order containing products and their quantities.
  * Can also act as a poison pill to signal termination in multithreaded queues.
  * Includes different methods to distinguish between different types of orders.
+ *
+ * <p>Items are stored as parallel primitive arrays of {@link ProductRegistry} ids and quantities,
+ * read through {@link #size()}, {@link #productId(int)}, {@link #product(int)} and
+ * {@link #quantity(int)} without allocating or boxing. Orders can be reused with {@link #clear()}.
+ *
+ * <p>A submitter that wants to learn what became of an order asks for {@link #outcome()} before
+ * handing it over; whoever decides the outcome, a worker or the intake, then completes it.
  */
 public class Order {
 
     /** Special order used to signal termination in queues. */
     public static final Order POISON = new Order(true);
 
-    private final Map<Product, Integer> items;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] productIds;
+    private int[] quantities;
+    private int size;
+    private long intendedAt;
+    private long enqueuedAt;
+    private long dequeuedAt;
+    private CompletableFuture<OrderOutcome> outcome;
     final boolean poison;
 
     /**
@@ -30,12 +46,14 @@ public class Order {
      * @param poison true if this order is a poison pill, false otherwise
      */
     private Order(boolean poison) {
-        this.items = new HashMap<>();
+        this.productIds = new int[INITIAL_CAPACITY];
+        this.quantities = new int[INITIAL_CAPACITY];
         this.poison = poison;
     }
 
     /**
      * Adds a product and its quantity to the order.
+     * Adding a product that is already in the order replaces its quantity.
      *
      * @param product the product to add
      * @param quantity the quantity of the product
@@ -45,14 +63,189 @@ public class Order {
         if (quantity < 0) {
             throw new IllegalArgumentException("Quantity cannot be negative");
         }
-        items.put(product, quantity);
+        int productId = ProductRegistry.idOf(product);
+        for (int i = 0; i < size; i++) {
+            if (productIds[i] == productId) {
+                quantities[i] = quantity;
+                return;
+            }
+        }
+        if (size == productIds.length) {
+            productIds = Arrays.copyOf(productIds, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        productIds[size] = productId;
+        quantities[size] = quantity;
+        size++;
     }
 
     /**
-     * Returns an unmodifiable view of the items in this order.
+     * Returns the number of distinct products in this order.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether this order has no items.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the {@link ProductRegistry} id of the item at an index.
+     *
+     * @param index item index, from 0 to {@link #size()} exclusive
+     */
+    public int productId(int index) {
+        return productIds[index];
+    }
+
+    /**
+     * Returns the product of the item at an index.
+     *
+     * @param index item index, from 0 to {@link #size()} exclusive
+     */
+    public Product product(int index) {
+        return ProductRegistry.product(productIds[index]);
+    }
+
+    /**
+     * Returns the quantity of the item at an index.
+     *
+     * @param index item index, from 0 to {@link #size()} exclusive
+     */
+    public int quantity(int index) {
+        return quantities[index];
+    }
+
+    /**
+     * Removes all items so the order can be reused.
+     */
+    public void clear() {
+        size = 0;
+        intendedAt = 0;
+        enqueuedAt = 0;
+        dequeuedAt = 0;
+        outcome = null;
+    }
+
+    /**
+     * Returns a copy of the items in this order as a map.
+     * Allocates on every call; hot paths should use the indexed accessors instead.
      */
     public Map<Product, Integer> getItems() {
-        return Collections.unmodifiableMap(items);
+        Map<Product, Integer> items = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            items.put(product(i), quantities[i]);
+        }
+        return items;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which this order was meant to be sent, or 0 if it
+     * was not sent on a schedule.
+     */
+    public long getIntendedAt() {
+        return intendedAt;
+    }
+
+    /**
+     * Records when a load generator sending at a fixed rate meant to send this order, whether or
+     * not it managed to send it on time.
+     *
+     * @param nanoTime value of {@link System#nanoTime()}
+     */
+    public void setIntendedAt(long nanoTime) {
+        this.intendedAt = nanoTime;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which this order was handed to the workers, or 0 if not recorded.
+     */
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    /**
+     * Records when this order was handed to the workers.
+     *
+     * @param nanoTime value of {@link System#nanoTime()}
+     */
+    public void setEnqueuedAt(long nanoTime) {
+        this.enqueuedAt = nanoTime;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which a worker took this order, or 0 if not recorded.
+     */
+    public long getDequeuedAt() {
+        return dequeuedAt;
+    }
+
+    /**
+     * Records when a worker took this order.
+     *
+     * @param nanoTime value of {@link System#nanoTime()}
+     */
+    public void setDequeuedAt(long nanoTime) {
+        this.dequeuedAt = nanoTime;
+    }
+
+    /**
+     * Returns a future completed with what becomes of this order, creating it on the first call.
+     * Must be called before the order is handed to another thread. The future is completed on the
+     * thread that decides the outcome, usually a worker, so dependent stages added with the non-async
+     * methods of {@link CompletableFuture} run there and should be short.
+     *
+     * @throws IllegalStateException if this order is {@link #POISON}
+     */
+    public CompletableFuture<OrderOutcome> outcome() {
+        if (poison) {
+            throw new IllegalStateException("Poison pills have no outcome");
+        }
+        if (outcome == null) {
+            outcome = new CompletableFuture<>();
+        }
+        return outcome;
+    }
+
+    /**
+     * Completes the future returned by {@link #outcome()}, if anyone asked for it.
+     *
+     * @param result what became of this order
+     */
+    public void complete(OrderOutcome result) {
+        if (outcome != null) {
+            outcome.complete(result);
+        }
+    }
+
+    /**
+     * Completes the future returned by {@link #outcome()} exceptionally, if anyone asked for it and
+     * it is not complete yet, when applying this order failed.
+     *
+     * @param cause why the order could not be applied
+     */
+    public void fail(Throwable cause) {
+        if (outcome != null) {
+            outcome.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Returns the kind of this order.
+     */
+    public OrderType type() {
+        if (isReservationOrder()) {
+            return OrderType.RESERVATION;
+        } else if (isReservationCancellationOrder()) {
+            return OrderType.CANCELLATION;
+        } else if (isReservationCheckoutOrder()) {
+            return OrderType.CHECKOUT;
+        }
+        return OrderType.PURCHASE;
     }
 
     /**
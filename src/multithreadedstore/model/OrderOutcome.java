@@ -0,0 +1,54 @@
+package multithreadedstore.model;
+
+/**
+ * Result of applying an order to a {@link Warehouse}.
+ */
+public enum OrderOutcome {
+
+    /** Regular order bought from stock. */
+    PURCHASED,
+
+    /** Reservation moved from stock to reserved stock. */
+    RESERVED,
+
+    /** Reservation cancelled and returned to stock. */
+    CANCELLED,
+
+    /** Reservation bought from reserved stock. */
+    CHECKED_OUT,
+
+    /**
+     * Purchase or reservation that found too little stock, and whose fallback purchase found too
+     * little as well; the warehouse is unchanged.
+     */
+    INSUFFICIENT_STOCK,
+
+    /**
+     * Checkout or cancellation that found too little reserved stock, and whose fallback purchase
+     * found too little stock as well; the warehouse is unchanged.
+     */
+    INSUFFICIENT_RESERVED,
+
+    /** Order was null or had no items and left the warehouse unchanged. */
+    INVALID,
+
+    /** Order was refused at intake because the store was overloaded; the warehouse never saw it. */
+    REJECTED_OVERLOAD;
+
+    /**
+     * Returns true if the order changed the warehouse: it was purchased, reserved, cancelled or checked out.
+     */
+    public boolean isApplied() {
+        return ordinal() <= CHECKED_OUT.ordinal();
+    }
+
+    /**
+     * Returns the outcome of an order of a type that could not be applied for lack of stock.
+     *
+     * @param type type of the order
+     * @return {@link #INSUFFICIENT_RESERVED} for checkouts and cancellations, {@link #INSUFFICIENT_STOCK} otherwise
+     */
+    public static OrderOutcome shortage(OrderType type) {
+        return type == OrderType.CHECKOUT || type == OrderType.CANCELLATION ? INSUFFICIENT_RESERVED : INSUFFICIENT_STOCK;
+    }
+}
@@ -0,0 +1,48 @@
+package multithreadedstore.model;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of reusable orders of one type.
+ * Released orders are cleared and handed out again by {@link #acquire()}, so a steady-state
+ * producer/consumer loop does not allocate orders. An order must only be released once nothing
+ * holds on to it anymore.
+ *
+ * @param <T> type of order pooled
+ */
+public class OrderPool<T extends Order> {
+
+    private final BlockingQueue<T> free;
+    private final Supplier<T> factory;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param factory  creates a new order when the pool is empty
+     * @param capacity maximum number of idle orders kept
+     */
+    public OrderPool(Supplier<T> factory, int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * Returns an empty order, reusing an idle one if available.
+     */
+    public T acquire() {
+        T order = free.poll();
+        return order != null ? order : factory.get();
+    }
+
+    /**
+     * Clears an order and returns it to the pool. Dropped if the pool is full.
+     *
+     * @param order order that is no longer referenced anywhere else
+     */
+    public void release(T order) {
+        order.clear();
+        free.offer(order);
+    }
+}
@@ -0,0 +1,19 @@
+package multithreadedstore.model;
+
+/**
+ * Kind of an {@link Order}, as told by its class.
+ */
+public enum OrderType {
+
+    /** Regular order bought from stock. */
+    PURCHASE,
+
+    /** {@link ReservationOrder} moving stock to reserved stock. */
+    RESERVATION,
+
+    /** {@link ReservationCancellationOrder} returning reserved stock to stock. */
+    CANCELLATION,
+
+    /** {@link ReservationCheckoutOrder} buying from reserved stock. */
+    CHECKOUT
+}
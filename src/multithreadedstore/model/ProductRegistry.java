@@ -0,0 +1,70 @@
+package multithreadedstore.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Interns {@link Product} records to dense int ids, starting at 0.
+ * Ids are stable for the lifetime of the JVM, so they can index primitive arrays
+ * instead of hashing product records on every access.
+ */
+public final class ProductRegistry {
+
+    private static final ConcurrentHashMap<Product, Integer> ids = new ConcurrentHashMap<>();
+    private static final ReentrantLock registerLock = new ReentrantLock();
+    private static volatile Product[] products = new Product[64];
+    private static int count;
+
+    private ProductRegistry() {
+    }
+
+    /**
+     * Returns the id of a product, registering it on first use.
+     *
+     * @param product product to look up
+     * @return dense id of the product
+     */
+    public static int idOf(Product product) {
+        Integer id = ids.get(product);
+        return id != null ? id : register(product);
+    }
+
+    /**
+     * Returns the product registered under an id.
+     *
+     * @param id id returned by {@link #idOf(Product)}
+     */
+    public static Product product(int id) {
+        return products[id];
+    }
+
+    /**
+     * Returns the number of registered products; every id is below this value.
+     */
+    public static int size() {
+        return ids.size();
+    }
+
+    private static int register(Product product) {
+        registerLock.lock();
+        try {
+            Integer existing = ids.get(product);
+            if (existing != null) {
+                return existing;
+            }
+            int id = count;
+            Product[] current = products;
+            if (id == current.length) {
+                current = Arrays.copyOf(current, id * 2);
+            }
+            current[id] = product;
+            products = current;
+            count++;
+            ids.put(product, id);
+            return id;
+        } finally {
+            registerLock.unlock();
+        }
+    }
+}
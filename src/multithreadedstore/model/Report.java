@@ -13,6 +13,8 @@ import java.util.Map;
  * @param totalCancellations number of reservation cancellations
  * @param top3Products names of top 3 most ordered products
  * @param maxReservedByProduct maximum reserved quantity per product
+ * @param topProducts most sold products with units sold and error bounds, best first
+ * @param rejectedOrders number of orders refused at intake because the store was overloaded
  */
 public record Report(
         long totalOrders,
@@ -20,11 +22,14 @@ public record Report(
         long totalReservations,
         long totalCancellations,
         List<String> top3Products,
-        Map<Product, Integer> maxReservedByProduct
+        Map<Product, Integer> maxReservedByProduct,
+        List<HeavyHitter> topProducts,
+        long rejectedOrders
 ) {
     public Report {
         top3Products = Collections.unmodifiableList(top3Products);
         maxReservedByProduct = Collections.unmodifiableMap(maxReservedByProduct);
+        topProducts = Collections.unmodifiableList(topProducts);
     }
 }
 
@@ -0,0 +1,317 @@
+package multithreadedstore.model;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Returns reserved units to stock once their reservation's time to live has passed.
+ *
+ * <p>Every item of a reservation becomes a hold of its product and quantity. Workers register
+ * holds in a per-product FIFO before the reservation is applied, so a cancellation or checkout of
+ * its units that commits right after it always finds them, then confirm them once it was applied or
+ * withdraw them if it was not. Confirmed holds go to one background thread through a lock-free
+ * inbox; only that thread touches the {@link TimingWheel}, so registering is O(1) and nothing ever
+ * scans the outstanding holds. On every tick the thread files new holds into the wheel, collects the
+ * holds that fell due, sums what is left of them per product and releases each product's total from
+ * reserved stock in one batch.
+ *
+ * <p>Reserved stock is a pool per product: cancellations and checkouts do not name the reservation
+ * they settle. They are counted against the oldest holds of the product first, which keeps the
+ * units left on holds at or below the reserved stock, so expiry never releases more than is reserved.
+ * A release whose units are partly gone in the meantime, because a cancellation or checkout was
+ * applied but not yet counted, releases what is still reserved of them.
+ *
+ * <p>Holds are not journaled: after a durable warehouse restarts, previously held units stay
+ * reserved until they are cancelled or checked out.
+ */
+final class ReservationExpiry {
+
+    private final Warehouse warehouse;
+    private final long defaultTtlNanos;
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final IntUnaryOperator slotById;
+    private final IntFunction<Product> productAt;
+    private final AtomicReferenceArray<HoldQueue> queues;
+    private final ConcurrentLinkedQueue<Hold> inbox = new ConcurrentLinkedQueue<>();
+    private final TimingWheel wheel = new TimingWheel(0);
+    private final Thread ticker;
+    private volatile boolean closed;
+
+    /**
+     * A reserved quantity of one product that expires at a deadline tick.
+     */
+    static final class Hold extends TimingWheel.Timeout {
+        final int slot;
+        int remaining;
+
+        Hold(int slot, int quantity, long deadline) {
+            super(deadline);
+            this.slot = slot;
+            this.remaining = quantity;
+        }
+    }
+
+    /**
+     * Outstanding holds of one product, oldest first.
+     */
+    private static final class HoldQueue {
+        final ReentrantLock lock = new ReentrantLock();
+        final ArrayDeque<Hold> holds = new ArrayDeque<>();
+        /** Units of due holds about to be released; only touched by the background thread. */
+        int expired;
+    }
+
+    /**
+     * Starts expiring reservations of a warehouse's catalog.
+     *
+     * @param warehouse  warehouse to release expired units to
+     * @param catalog    products that can be reserved
+     * @param defaultTtl time to live of reservations that do not carry their own, or null to keep those forever
+     * @param tick       resolution of expiry; reservations expire up to one tick late
+     */
+    ReservationExpiry(Warehouse warehouse, Product[] catalog, Duration defaultTtl, Duration tick) {
+        this(warehouse, catalog.length, slotsById(catalog), List.of(catalog)::get, defaultTtl, tick);
+    }
+
+    /**
+     * Starts expiring reservations of products numbered by slot, such as those of a memory-mapped
+     * table. A product's holds are only allocated once it is first reserved.
+     *
+     * @param warehouse  warehouse to release expired units to
+     * @param slots      number of products that can be reserved
+     * @param slotOf     slot of a registry id, or -1 if the product cannot be reserved
+     * @param productAt  product in a slot
+     * @param defaultTtl time to live of reservations that do not carry their own, or null to keep those forever
+     * @param tick       resolution of expiry; reservations expire up to one tick late
+     */
+    ReservationExpiry(Warehouse warehouse, int slots, IntUnaryOperator slotOf, IntFunction<Product> productAt,
+                      Duration defaultTtl, Duration tick) {
+        if (tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        if (defaultTtl != null && defaultTtl.isNegative()) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.warehouse = warehouse;
+        this.defaultTtlNanos = defaultTtl == null ? -1 : defaultTtl.toNanos();
+        this.tickNanos = tick.toNanos();
+        this.slotById = slotOf;
+        this.productAt = productAt;
+        this.queues = new AtomicReferenceArray<>(slots);
+        this.ticker = Thread.ofPlatform().name("reservation-expiry").daemon().start(this::run);
+    }
+
+    /**
+     * Registers the items of a reservation about to be applied as holds, if it has a time to live.
+     * The holds count cancellations and checkouts right away but only start to expire once
+     * {@link #confirm(Hold[]) confirmed}.
+     *
+     * @param reservation reservation about to be applied
+     * @return the holds to confirm or withdraw, or null if the reservation does not expire
+     */
+    Hold[] hold(Order reservation) {
+        long ttlNanos = reservation instanceof ReservationOrder order && order.getTtl() != null
+                ? order.getTtl().toNanos()
+                : defaultTtlNanos;
+        if (ttlNanos < 0) {
+            return null;
+        }
+        long deadline = (System.nanoTime() - startNanos + ttlNanos + tickNanos - 1) / tickNanos;
+        Hold[] holds = new Hold[reservation.size()];
+        for (int i = 0; i < reservation.size(); i++) {
+            int slot = slotOf(reservation.productId(i));
+            if (slot < 0 || reservation.quantity(i) == 0) {
+                continue;
+            }
+            Hold hold = new Hold(slot, reservation.quantity(i), deadline);
+            HoldQueue queue = queueOf(slot);
+            queue.lock.lock();
+            try {
+                queue.holds.addLast(hold);
+            } finally {
+                queue.lock.unlock();
+            }
+            holds[i] = hold;
+        }
+        return holds;
+    }
+
+    /**
+     * Starts expiring the holds of a reservation that was applied.
+     *
+     * @param holds holds returned by {@link #hold(Order)}
+     */
+    void confirm(Hold[] holds) {
+        for (Hold hold : holds) {
+            if (hold != null) {
+                inbox.add(hold);
+            }
+        }
+    }
+
+    /**
+     * Drops the holds of a reservation that was not applied by emptying them; empty holds leave
+     * their queue once they reach its head. Units a cancellation or checkout already counted
+     * against them are not counted again.
+     *
+     * @param holds holds returned by {@link #hold(Order)}
+     */
+    void withdraw(Hold[] holds) {
+        for (Hold hold : holds) {
+            if (hold == null) {
+                continue;
+            }
+            HoldQueue queue = queues.get(hold.slot);
+            queue.lock.lock();
+            try {
+                hold.remaining = 0;
+                dropEmptyHead(queue);
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Counts units taken out of reserved stock by a cancellation or checkout against the oldest holds.
+     *
+     * @param order cancellation or checkout that was applied
+     */
+    void consume(Order order) {
+        for (int i = 0; i < order.size(); i++) {
+            int slot = slotOf(order.productId(i));
+            HoldQueue queue = slot < 0 ? null : queues.get(slot);
+            if (queue == null) {
+                continue;
+            }
+            int quantity = order.quantity(i);
+            queue.lock.lock();
+            try {
+                while (quantity > 0 && !queue.holds.isEmpty()) {
+                    Hold hold = queue.holds.peekFirst();
+                    int taken = Math.min(hold.remaining, quantity);
+                    hold.remaining -= taken;
+                    quantity -= taken;
+                    if (hold.remaining == 0) {
+                        queue.holds.pollFirst();
+                    }
+                }
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread. Holds that have not expired yet never will.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+        try {
+            ticker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Background loop: once per tick, files new holds, collects due ones and releases them.
+     */
+    private void run() {
+        List<Hold> due = new ArrayList<>();
+        while (!closed) {
+            long now = System.nanoTime() - startNanos;
+            Hold hold;
+            while ((hold = inbox.poll()) != null) {
+                if (!wheel.add(hold)) {
+                    due.add(hold);
+                }
+            }
+            wheel.advance(now / tickNanos, timeout -> due.add((Hold) timeout));
+            if (!due.isEmpty()) {
+                release(due);
+                due.clear();
+            }
+            LockSupport.parkNanos(this, wheel.currentTick() * tickNanos - now);
+        }
+    }
+
+    /**
+     * Zeroes due holds and returns their remaining units to stock with one cancellation per product.
+     */
+    private void release(List<Hold> due) {
+        List<Integer> touched = new ArrayList<>();
+        for (Hold hold : due) {
+            HoldQueue queue = queues.get(hold.slot);
+            queue.lock.lock();
+            try {
+                if (hold.remaining > 0 && queue.expired == 0) {
+                    touched.add(hold.slot);
+                }
+                queue.expired += hold.remaining;
+                hold.remaining = 0;
+                dropEmptyHead(queue);
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+
+        List<Order> cancellations = new ArrayList<>(touched.size());
+        for (int slot : touched) {
+            HoldQueue queue = queues.get(slot);
+            Order cancellation = new ReservationCancellationOrder();
+            cancellation.add(productAt.apply(slot), queue.expired);
+            queue.expired = 0;
+            cancellations.add(cancellation);
+        }
+        warehouse.releaseExpired(cancellations);
+    }
+
+    /**
+     * Removes the empty holds at the head of a queue, with its lock held.
+     */
+    private static void dropEmptyHead(HoldQueue queue) {
+        while (!queue.holds.isEmpty() && queue.holds.peekFirst().remaining == 0) {
+            queue.holds.pollFirst();
+        }
+    }
+
+    /**
+     * Returns the hold queue of a slot, creating it the first time the product is reserved.
+     */
+    private HoldQueue queueOf(int slot) {
+        HoldQueue queue = queues.get(slot);
+        if (queue == null) {
+            queues.compareAndSet(slot, null, new HoldQueue());
+            queue = queues.get(slot);
+        }
+        return queue;
+    }
+
+    private int slotOf(int productId) {
+        return slotById.applyAsInt(productId);
+    }
+
+    /**
+     * Maps registry ids to the slots of a catalog.
+     */
+    private static IntUnaryOperator slotsById(Product[] catalog) {
+        int[] slotById = new int[Arrays.stream(catalog).mapToInt(ProductRegistry::idOf).max().orElse(-1) + 1];
+        Arrays.fill(slotById, -1);
+        for (int slot = 0; slot < catalog.length; slot++) {
+            slotById[ProductRegistry.idOf(catalog[slot])] = slot;
+        }
+        return productId -> productId < slotById.length ? slotById[productId] : -1;
+    }
+}
@@ -1,10 +1,43 @@
 package multithreadedstore.model;
 
+import java.time.Duration;
+
 /**
  * Represents a reservation order.
+ * A reservation may carry a time to live, after which a {@link Warehouse} that expires
+ * reservations returns whatever was not yet checked out or cancelled to stock.
  */
 public class ReservationOrder extends Order {
 
+    private final Duration ttl;
+
+    /**
+     * Creates a reservation held for the warehouse's default time to live, if it has one.
+     */
+    public ReservationOrder() {
+        this(null);
+    }
+
+    /**
+     * Creates a reservation held for a given time.
+     *
+     * @param ttl how long the reserved units are held, or null for the warehouse default
+     * @throws IllegalArgumentException if {@code ttl} is negative
+     */
+    public ReservationOrder(Duration ttl) {
+        if (ttl != null && ttl.isNegative()) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns how long the reserved units are held, or null for the warehouse default.
+     */
+    public Duration getTtl() {
+        return ttl;
+    }
+
     /**
      * Indicates that this object represents a reservation.
      */
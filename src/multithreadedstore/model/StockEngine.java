@@ -0,0 +1,176 @@
+package multithreadedstore.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage and concurrency strategy behind a {@link Warehouse}.
+ * Every operation must be atomic on its own: either all items of the order are applied or none are.
+ * Callers have already rejected null and empty orders.
+ */
+interface StockEngine {
+
+    /**
+     * Removes the ordered quantities from stock.
+     *
+     * @param order order to apply
+     * @return true if every product had enough stock
+     */
+    boolean process(Order order);
+
+    /**
+     * Moves the ordered quantities from stock to reserved stock.
+     *
+     * @param reservation order to apply
+     * @return true if every product had enough stock
+     */
+    boolean reserve(Order reservation);
+
+    /**
+     * Moves the ordered quantities from reserved stock back to stock.
+     *
+     * @param reservation order to apply
+     * @return true if every product had enough reserved stock
+     */
+    boolean cancel(Order reservation);
+
+    /**
+     * Removes the ordered quantities from reserved stock.
+     *
+     * @param reservation order to apply
+     * @return true if every product had enough reserved stock
+     */
+    boolean checkout(Order reservation);
+
+    /**
+     * Removes the ordered quantities from stock or from reserved stock, all-or-nothing, without
+     * journaling anything: the taking half of an operation applied in two steps, such as one part
+     * of an order split across warehouses. It must be followed by {@link #settle} to commit the
+     * operation or by {@link #undoTake} to give the units back; a restart in between forgets it.
+     *
+     * @param order        quantities to take
+     * @param fromReserved true to take from reserved stock, false to take from stock
+     * @return true if every product had enough units
+     */
+    boolean take(Order order, boolean fromReserved);
+
+    /**
+     * Commits an operation whose taking half {@link #take} applied: journals the whole operation as
+     * one record and publishes its receiving half, the reserved stock of a reservation or the stock
+     * of a cancellation. If the journal refuses it, the taken units are given back and the
+     * exception propagates.
+     *
+     * @param order quantities taken
+     * @param type  operation to commit; {@link OrderType#PURCHASE} for a regular purchase
+     */
+    void settle(Order order, OrderType type);
+
+    /**
+     * Gives back units {@link #take} took for an operation that will not be settled, without
+     * journaling anything.
+     *
+     * @param order        quantities taken
+     * @param fromReserved true if they were taken from reserved stock
+     */
+    void undoTake(Order order, boolean fromReserved);
+
+    /**
+     * Applies an order according to its type. A reservation, cancellation or checkout that cannot
+     * be applied from reserved stock falls back to a regular purchase.
+     *
+     * @param order order to apply
+     * @return what happened to the order
+     */
+    default OrderOutcome apply(Order order) {
+        if (order.isEmpty()) {
+            return OrderOutcome.INVALID;
+        } else if (order.isReservationOrder() && reserve(order)) {
+            return OrderOutcome.RESERVED;
+        } else if (order.isReservationCancellationOrder() && cancel(order)) {
+            return OrderOutcome.CANCELLED;
+        } else if (order.isReservationCheckoutOrder() && checkout(order)) {
+            return OrderOutcome.CHECKED_OUT;
+        } else if (process(order)) {
+            return OrderOutcome.PURCHASED;
+        }
+        return OrderOutcome.shortage(order.type());
+    }
+
+    /**
+     * Applies a batch of orders in arrival order, with the same per-order outcome as
+     * applying them one by one with {@link #apply(Order)}.
+     *
+     * @param orders   orders to apply
+     * @param outcomes receives the outcome of {@code orders.get(i)} at index {@code i}
+     */
+    default void applyBatch(List<Order> orders, OrderOutcome[] outcomes) {
+        for (int i = 0; i < orders.size(); i++) {
+            outcomes[i] = apply(orders.get(i));
+        }
+    }
+
+    /**
+     * Returns the maximum reserved quantity seen per product.
+     */
+    Map<Product, Integer> maxReservedByProduct();
+
+    /**
+     * Returns the current stock of a product, 0 if it is not stocked.
+     */
+    int stock(Product product);
+
+    /**
+     * Returns the current reserved stock of a product.
+     */
+    int reserved(Product product);
+
+    /**
+     * Returns the maximum reserved quantity seen for a product.
+     */
+    int maxReserved(Product product);
+
+    /**
+     * Reads the stock and reserved stock of several products as one consistent view, without
+     * taking any lock writers take and without making writers wait. The view never shows an order
+     * half applied, nor units on their way between stock and reserved stock; a reader retries
+     * while writes to the products it reads keep interfering.
+     *
+     * @param products products to read; products that are not stocked read as 0
+     * @param stock    receives the stock of {@code products[i]} at index {@code i}
+     * @param reserved receives the reserved stock of {@code products[i]} at index {@code i}
+     */
+    void snapshot(Product[] products, int[] stock, int[] reserved);
+
+    /**
+     * Returns how many times an operation had to wait for, or retry after, a concurrent operation
+     * on the same products.
+     */
+    long contentions();
+
+    /**
+     * Returns the total time operations spent waiting for product locks held by other threads,
+     * in nanoseconds; 0 for an engine without locks.
+     */
+    long lockWaitNanos();
+
+    /**
+     * Appends every operation applied from now on to a journal, while the units it adds are not yet
+     * visible to other operations, so an operation is always journaled after those whose units it
+     * takes. An operation the journal refuses is not applied and its exception propagates. Only for
+     * setting up the engine before it is shared with other threads.
+     *
+     * @param journal journal to append to
+     */
+    void journalTo(WarehouseJournal journal);
+
+    /**
+     * Overwrites the counters of a stocked product. Only for rebuilding state before the engine
+     * is shared with other threads.
+     *
+     * @param product     product to restore
+     * @param stock       stock to set
+     * @param reserved    reserved stock to set
+     * @param maxReserved maximum reserved quantity to set
+     */
+    void restore(Product product, int stock, int reserved, int maxReserved);
+}
@@ -0,0 +1,50 @@
+package multithreadedstore.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects the {@link StockEngine} a {@link Warehouse} is built on.
+ */
+public enum StockEngineType {
+
+    /** Boxed per-product maps guarded by per-product locks taken in a fixed global order. */
+    LOCKING,
+
+    /**
+     * Primitive per-product slots updated with CAS; never blocks. Can split the stock of hot
+     * products over per-core sub-buckets.
+     */
+    OPTIMISTIC;
+
+    /**
+     * Creates an engine of this type.
+     *
+     * @param products     products to stock
+     * @param initialStock starting quantity of every product
+     */
+    StockEngine create(List<Product> products, int initialStock) {
+        return switch (this) {
+            case LOCKING -> new LockingStockEngine(products, initialStock);
+            case OPTIMISTIC -> new OptimisticStockEngine(products, initialStock);
+        };
+    }
+
+    /**
+     * Creates an engine of this type whose hot products' stock is split over per-core sub-buckets.
+     *
+     * @param products     products to stock
+     * @param initialStock starting quantity of every product
+     * @param hotProducts  products expected to take most of the traffic
+     * @throws IllegalArgumentException if hot products are given for an engine that cannot split them
+     */
+    StockEngine create(List<Product> products, int initialStock, Set<Product> hotProducts) {
+        if (hotProducts.isEmpty()) {
+            return create(products, initialStock);
+        }
+        if (this != OPTIMISTIC) {
+            throw new IllegalArgumentException("Only the " + OPTIMISTIC + " engine splits hot products");
+        }
+        return new OptimisticStockEngine(products, initialStock, hotProducts);
+    }
+}
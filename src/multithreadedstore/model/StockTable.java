@@ -0,0 +1,67 @@
+package multithreadedstore.model;
+
+/**
+ * Storage behind an {@link OptimisticStockEngine}: one slot per stocked product, holding a packed
+ * stock and reserved counter and the highest reserved quantity seen. Every method is atomic on its
+ * own slot; the engine builds whole orders on top.
+ */
+interface StockTable {
+
+    /**
+     * Returns the number of slots.
+     */
+    int slots();
+
+    /**
+     * Returns the product stocked in a slot.
+     *
+     * @param slot slot below {@link #slots()}
+     */
+    Product product(int slot);
+
+    /**
+     * Returns the slot of a registry id, or -1 if the product is not stocked here.
+     *
+     * @param productId id from {@link ProductRegistry#idOf(Product)}
+     */
+    int slotOf(int productId);
+
+    /**
+     * Returns the packed counter of a slot.
+     */
+    long counter(int slot);
+
+    /**
+     * Replaces the packed counter of a slot if it still holds an expected value.
+     *
+     * @return true if the counter was replaced
+     */
+    boolean compareAndSetCounter(int slot, long expected, long next);
+
+    /**
+     * Adds to the packed counter of a slot.
+     *
+     * @return the counter after the addition
+     */
+    long addAndGetCounter(int slot, long delta);
+
+    /**
+     * Overwrites the packed counter of a slot.
+     */
+    void setCounter(int slot, long counter);
+
+    /**
+     * Returns the highest reserved quantity recorded for a slot.
+     */
+    int maxReserved(int slot);
+
+    /**
+     * Raises the highest reserved quantity of a slot to {@code reserved} if it is lower.
+     */
+    void raiseMaxReserved(int slot, int reserved);
+
+    /**
+     * Overwrites the highest reserved quantity of a slot.
+     */
+    void setMaxReserved(int slot, int maxReserved);
+}
@@ -0,0 +1,115 @@
+package multithreadedstore.model;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@value #LEVELS} levels of {@value #SLOTS} slots, each level covering
+ * {@value #SLOTS} times the span of the one below. A timeout is linked into the slot of the lowest
+ * level whose span reaches its deadline, so adding is O(1) whatever the number of pending timeouts.
+ * When a lower level wraps around, the matching slot of the level above is cascaded down, and a
+ * timeout is handed out when the wheel reaches the level-0 slot of its deadline tick.
+ * Deadlines beyond the top level's span are parked in its last reachable slot and re-filed when
+ * it cascades.
+ *
+ * <p>Ticks are abstract; the caller decides what a tick is worth. Not thread-safe.
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << SLOT_BITS * LEVELS;
+
+    /**
+     * Entry of a timing wheel, linked into one slot at a time.
+     */
+    abstract static class Timeout {
+        final long deadline;
+        private Timeout next;
+
+        /**
+         * @param deadline tick at which the timeout is due
+         */
+        Timeout(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    private final Timeout[] slots = new Timeout[LEVELS * SLOTS];
+    private long current;
+
+    /**
+     * Creates an empty wheel whose next tick to process is {@code startTick}.
+     */
+    TimingWheel(long startTick) {
+        this.current = startTick;
+    }
+
+    /**
+     * Returns the next tick {@link #advance(long, Consumer)} will process.
+     */
+    long currentTick() {
+        return current;
+    }
+
+    /**
+     * Schedules a timeout.
+     *
+     * @param timeout timeout to add; must not already be scheduled
+     * @return false if its deadline has already been processed, in which case it was not added
+     */
+    boolean add(Timeout timeout) {
+        long delta = timeout.deadline - current;
+        if (delta < 0) {
+            return false;
+        }
+        long placed = delta < SPAN ? timeout.deadline : current + SPAN - 1;
+        int level = delta < SPAN ? (63 - Long.numberOfLeadingZeros(delta | 1)) / SLOT_BITS : LEVELS - 1;
+        int index = level * SLOTS + (int) (placed >>> level * SLOT_BITS & SLOTS - 1);
+        timeout.next = slots[index];
+        slots[index] = timeout;
+        return true;
+    }
+
+    /**
+     * Processes every tick up to and including {@code tick}, handing out the timeouts that fall due.
+     *
+     * @param tick    last tick to process
+     * @param expired receives every timeout whose deadline was reached
+     */
+    void advance(long tick, Consumer<? super Timeout> expired) {
+        for (; current <= tick; current++) {
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((current & (1L << level * SLOT_BITS) - 1) == 0) {
+                    cascade(level);
+                }
+            }
+            Timeout timeout = unlink((int) (current & SLOTS - 1));
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                expired.accept(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Re-files the timeouts of the slot of {@code level} that starts at the current tick into lower levels.
+     */
+    private void cascade(int level) {
+        Timeout timeout = unlink(level * SLOTS + (int) (current >>> level * SLOT_BITS & SLOTS - 1));
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            add(timeout);
+            timeout = next;
+        }
+    }
+
+    private Timeout unlink(int index) {
+        Timeout head = slots[index];
+        slots[index] = null;
+        return head;
+    }
+}
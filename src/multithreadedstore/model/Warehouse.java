@@ -1,17 +1,52 @@
 package multithreadedstore.model;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 /**
  * Represents a warehouse holding product stock and processing orders.
+ * Every operation is atomic on its own; how that is achieved depends on the
+ * {@link StockEngineType} chosen at construction.
+ *
+ * <p>A warehouse created with {@link #open(List, StockEngineType, Path)} is durable: every committed
+ * operation is written to a {@link WarehouseJournal} and forced to disk before the call returns, and
+ * the state is rebuilt from the last checkpoint and journal when the warehouse is opened again. The
+ * engine appends an operation to the journal while its products are still held, so operations on
+ * the same products are journaled in the order they were applied. If the journal cannot be written,
+ * the operations that were waiting for it fail with an {@link java.io.UncheckedIOException}
+ * although they were applied in memory, and every later operation fails without being applied;
+ * reopening the warehouse recovers what is durable.
+ *
+ * <p>A warehouse created with {@link #mapped(List, int, Path)} keeps its counters off the heap in a
+ * {@link MappedStockTable}: memory does not grow with the catalog, and reopening the directory after
+ * a restart maps the files again without replaying or rebuilding anything. Every committed change is
+ * written straight into the mapping, so it survives the process dying. Unlike the journal, it is not
+ * forced to disk per order, and a multi-product order in flight when the process dies may be left
+ * partly applied.
+ *
+ * <p>{@link #availability(List)} and its overloads read stock and reserved stock as one consistent
+ * view, never showing an order half applied, without taking any lock the operations take.
+ *
+ * <p>After {@link #expireReservations(Duration)}, reserved units that are neither checked out nor
+ * cancelled within their reservation's time to live are returned to stock by a background thread.
  */
-public class Warehouse {
+public class Warehouse implements Inventory, Closeable {
 
-    private final ConcurrentHashMap<Product, Integer> stock = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Product, Integer> reservedStock = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Product, Integer> maxReservedByProduct = new ConcurrentHashMap<>();
+    private static final int INITIAL_STOCK = 10;
+    private static final Duration DEFAULT_EXPIRY_TICK = Duration.ofMillis(100);
+
+    private final StockEngine engine;
+    private final Product[] catalog;
+    private final WarehouseJournal journal;
+    private final MappedStockTable mappedTable;
+    private ReservationExpiry expiry;
 
     /**
      * Initializes the warehouse with a list of products, each starting with default quantity.
@@ -19,16 +54,346 @@ public class Warehouse {
      * @param products the list of products to stock
      */
     public Warehouse(List<Product> products) {
-        if (products != null) {
-            products.forEach(product -> stock.put(product, 10));
+        this(products, StockEngineType.LOCKING);
+    }
+
+    /**
+     * Initializes the warehouse with a list of products, each starting with default quantity.
+     *
+     * @param products   the list of products to stock
+     * @param engineType how stock is stored and updated concurrently
+     */
+    public Warehouse(List<Product> products, StockEngineType engineType) {
+        this(products, engineType, INITIAL_STOCK);
+    }
+
+    /**
+     * Initializes the warehouse with a list of products, each starting with the same quantity.
+     *
+     * @param products     the list of products to stock
+     * @param engineType   how stock is stored and updated concurrently
+     * @param initialStock starting quantity of every product
+     */
+    public Warehouse(List<Product> products, StockEngineType engineType, int initialStock) {
+        this(products, engineType, initialStock, Set.of());
+    }
+
+    /**
+     * Initializes the warehouse with a list of products, each starting with the same quantity, and
+     * splits the stock of hot products over per-core sub-buckets so that concurrent orders for one
+     * of them do not all update the same counter.
+     *
+     * @param products     the list of products to stock
+     * @param engineType   how stock is stored and updated concurrently; must be
+     *                     {@link StockEngineType#OPTIMISTIC} if there are hot products
+     * @param initialStock starting quantity of every product
+     * @param hotProducts  products expected to take most of the traffic, such as flash-sale items
+     * @throws IllegalArgumentException if hot products are given for another engine type
+     */
+    public Warehouse(List<Product> products, StockEngineType engineType, int initialStock, Set<Product> hotProducts) {
+        this.catalog = products == null ? new Product[0] : products.stream().distinct().toArray(Product[]::new);
+        this.engine = engineType.create(List.of(catalog), initialStock, hotProducts);
+        this.journal = null;
+        this.mappedTable = null;
+    }
+
+    /**
+     * Initializes the warehouse with a list of products over a given engine.
+     *
+     * @param products the list of products the engine stocks
+     * @param engine   engine holding the stock
+     */
+    Warehouse(List<Product> products, StockEngine engine) {
+        this.catalog = products.stream().distinct().toArray(Product[]::new);
+        this.engine = engine;
+        this.journal = null;
+        this.mappedTable = null;
+    }
+
+    /**
+     * Opens a durable warehouse whose state survives restarts.
+     *
+     * @param products   the list of products to stock; must be the same, in the same order, on every restart
+     * @param engineType how stock is stored and updated concurrently
+     * @param directory  directory holding the checkpoint and journal
+     * @throws IOException if the journal cannot be read or was written for a different product list
+     */
+    private Warehouse(List<Product> products, StockEngineType engineType, Path directory) throws IOException {
+        this.catalog = products == null ? new Product[0] : products.stream().distinct().toArray(Product[]::new);
+        this.engine = engineType.create(List.of(catalog), INITIAL_STOCK);
+        this.journal = WarehouseJournal.recover(directory, catalog, engine);
+        this.mappedTable = null;
+        engine.journalTo(journal);
+    }
+
+    /**
+     * Creates a warehouse over a memory-mapped stock table.
+     *
+     * @param mappedTable counters of every product
+     */
+    private Warehouse(MappedStockTable mappedTable) {
+        this.catalog = null;
+        this.engine = new OptimisticStockEngine(mappedTable, Set.of());
+        this.journal = null;
+        this.mappedTable = mappedTable;
+    }
+
+    /**
+     * Opens a durable warehouse. Stock starts from the last checkpoint in {@code directory} with every
+     * journaled operation after it replayed, or at the default quantity if the directory is empty.
+     *
+     * @param products   the list of products to stock; must be the same, in the same order, on every restart
+     * @param engineType how stock is stored and updated concurrently
+     * @param directory  directory holding the checkpoint and journal
+     * @return the recovered warehouse
+     * @throws IOException if the journal cannot be read or was written for a different product list
+     */
+    public static Warehouse open(List<Product> products, StockEngineType engineType, Path directory) throws IOException {
+        return new Warehouse(products, engineType, directory);
+    }
+
+    /**
+     * Opens a warehouse whose counters live in memory-mapped files in {@code directory}, creating
+     * them if the directory holds none. Stock is updated lock-free as with
+     * {@link StockEngineType#OPTIMISTIC}.
+     *
+     * @param products     the list of products to stock if the table is created; ignored if it exists
+     * @param initialStock starting quantity of every product if the table is created; ignored if it exists
+     * @param directory    directory holding the stock table and its product index
+     * @return the warehouse
+     * @throws IOException              if the files cannot be created or read, or belong to something else
+     * @throws IllegalArgumentException if the catalog is too large for one mapping
+     */
+    public static Warehouse mapped(List<Product> products, int initialStock, Path directory) throws IOException {
+        return new Warehouse(MappedStockTable.open(directory, products == null ? List.of() : products, initialStock));
+    }
+
+    /**
+     * Reopens a warehouse whose counters live in memory-mapped files, without needing its catalog.
+     *
+     * @param directory directory holding the stock table and its product index
+     * @return the warehouse
+     * @throws IOException if the directory holds no stock table or the files belong to something else
+     */
+    public static Warehouse mapped(Path directory) throws IOException {
+        return new Warehouse(MappedStockTable.open(directory));
+    }
+
+    /**
+     * Writes the current state as a new checkpoint and starts an empty journal, so the next restart
+     * does not replay what came before. Must only be called while no orders are being applied.
+     * Forces the counters of a memory-mapped warehouse to disk; does nothing for a warehouse that is
+     * not durable.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void checkpoint() throws IOException {
+        if (journal != null) {
+            journal.checkpoint(engine);
+        }
+        if (mappedTable != null) {
+            mappedTable.close();
+        }
+    }
+
+    /**
+     * Starts returning expired reservations to stock, checking every 100 milliseconds.
+     * Must be called before the warehouse is shared with other threads.
+     *
+     * @param defaultTtl time to live of reservations that do not carry their own, or null to only
+     *                   expire {@link ReservationOrder}s created with a time to live
+     * @throws IllegalStateException if reservations already expire
+     */
+    public void expireReservations(Duration defaultTtl) {
+        expireReservations(defaultTtl, DEFAULT_EXPIRY_TICK);
+    }
+
+    /**
+     * Starts returning expired reservations to stock. Units still reserved when their reservation's
+     * time to live has passed are released within one more tick, in one batch per tick.
+     * Must be called before the warehouse is shared with other threads.
+     *
+     * @param defaultTtl time to live of reservations that do not carry their own, or null to only
+     *                   expire {@link ReservationOrder}s created with a time to live
+     * @param tick       how often expired reservations are released
+     * @throws IllegalStateException if reservations already expire
+     */
+    public void expireReservations(Duration defaultTtl, Duration tick) {
+        if (expiry != null) {
+            throw new IllegalStateException("Reservations already expire");
+        }
+        expiry = mappedTable == null
+                ? new ReservationExpiry(this, catalog, defaultTtl, tick)
+                : new ReservationExpiry(this, mappedTable.slots(), mappedTable::slotOf, mappedTable::product, defaultTtl, tick);
+    }
+
+    /**
+     * Stops expiring reservations, then flushes and closes the journal of a durable warehouse or
+     * forces the counters of a memory-mapped one to disk.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (expiry != null) {
+            expiry.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (mappedTable != null) {
+            mappedTable.close();
         }
     }
 
     /**
      * Returns Map of maximum reserved product quantities per Product.
      */
-    public ConcurrentHashMap<Product, Integer> getMaxReservedByProduct() {
-        return maxReservedByProduct;
+    @Override
+    public Map<Product, Integer> getMaxReservedByProduct() {
+        return engine.maxReservedByProduct();
+    }
+
+    @Override
+    public int getStock(Product product) {
+        return engine.stock(product);
+    }
+
+    @Override
+    public int getReserved(Product product) {
+        return engine.reserved(product);
+    }
+
+    /**
+     * Returns the stock and reserved stock of a product, read together.
+     *
+     * @param product product to look up
+     */
+    public Availability availability(Product product) {
+        return availability(List.of(product)).get(0);
+    }
+
+    /**
+     * Returns the stock and reserved stock of several products as of one consistent view: no order
+     * is seen half applied, whichever of the products it touches. Never blocks the operations;
+     * retries while they keep changing the products read.
+     *
+     * @param products products to look up; products that are not stocked read as 0
+     * @return availability of {@code products.get(i)} at index {@code i}
+     */
+    public List<Availability> availability(List<Product> products) {
+        Product[] read = products.toArray(Product[]::new);
+        int[] stock = new int[read.length];
+        int[] reserved = new int[read.length];
+        engine.snapshot(read, stock, reserved);
+        List<Availability> availability = new ArrayList<>(read.length);
+        for (int i = 0; i < read.length; i++) {
+            availability.add(new Availability(read[i], stock[i], reserved[i]));
+        }
+        return availability;
+    }
+
+    /**
+     * Returns the stock and reserved stock of every stocked product as of one consistent view.
+     * A memory-mapped warehouse reads its table slot by slot, without registering its products.
+     *
+     * @return availability of every product, in the order the catalog was stocked in
+     */
+    public List<Availability> availability() {
+        if (mappedTable == null) {
+            return availability(List.of(catalog));
+        }
+        int[] slots = new int[mappedTable.slots()];
+        Arrays.setAll(slots, slot -> slot);
+        int[] stock = new int[slots.length];
+        int[] reserved = new int[slots.length];
+        ((OptimisticStockEngine) engine).snapshot(slots, stock, reserved);
+        List<Availability> availability = new ArrayList<>(slots.length);
+        for (int slot = 0; slot < slots.length; slot++) {
+            availability.add(new Availability(mappedTable.product(slot), stock[slot], reserved[slot]));
+        }
+        return availability;
+    }
+
+    @Override
+    public long getContentions() {
+        return engine.contentions();
+    }
+
+    /**
+     * Returns the total time operations spent waiting for product locks held by other threads,
+     * in nanoseconds; always 0 for {@link StockEngineType#OPTIMISTIC}.
+     */
+    @Override
+    public long getLockWaitNanos() {
+        return engine.lockWaitNanos();
+    }
+
+    /**
+     * Applies an order according to its type: reservations are reserved, cancellations cancelled and
+     * checkouts bought from reserved stock. If that is not possible the order is processed as a
+     * regular purchase.
+     *
+     * @param order the order to apply
+     * @return what happened to the order; {@link OrderOutcome#INVALID} if it is null or empty
+     */
+    @Override
+    public OrderOutcome apply(Order order) {
+        if (order == null) {
+            return OrderOutcome.INVALID;
+        }
+        ReservationExpiry.Hold[] holds = hold(order);
+        OrderOutcome outcome = null;
+        try {
+            outcome = engine.apply(order);
+        } finally {
+            settleHolds(holds, outcome == OrderOutcome.RESERVED);
+        }
+        if (outcome.isApplied()) {
+            if (journal != null) {
+                journal.awaitDurable();
+            }
+            consumeHolds(journalOperation(outcome), order);
+        }
+        return outcome;
+    }
+
+    /**
+     * Applies a batch of orders in arrival order in one pass. Each order gets the same outcome
+     * it would get from {@link #apply(Order)}, but the synchronization cost is shared by the batch.
+     *
+     * @param orders   orders to apply, none of them null
+     * @param outcomes receives the outcome of {@code orders.get(i)} at index {@code i}
+     */
+    @Override
+    public void applyBatch(List<Order> orders, OrderOutcome[] outcomes) {
+        if (expiry == null) {
+            engine.applyBatch(orders, outcomes);
+            if (journal != null) {
+                journal.awaitDurable();
+            }
+            return;
+        }
+        ReservationExpiry.Hold[][] holds = new ReservationExpiry.Hold[orders.size()][];
+        for (int i = 0; i < orders.size(); i++) {
+            holds[i] = hold(orders.get(i));
+        }
+        Arrays.fill(outcomes, 0, orders.size(), null);
+        try {
+            engine.applyBatch(orders, outcomes);
+        } finally {
+            for (int i = 0; i < orders.size(); i++) {
+                settleHolds(holds[i], outcomes[i] == OrderOutcome.RESERVED);
+            }
+        }
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+        for (int i = 0; i < orders.size(); i++) {
+            if (outcomes[i].isApplied()) {
+                consumeHolds(journalOperation(outcomes[i]), orders.get(i));
+            }
+        }
     }
 
     /**
@@ -39,19 +404,10 @@ public class Warehouse {
      * @param order the order to process
      */
     public boolean process(Order order) {
-        if (order == null || order.getItems().isEmpty()) {
-            return false;
-        }
-
-        if(!hasEnoughStock(order)) {
+        if (order == null || order.isEmpty()) {
             return false;
         }
-
-        order.getItems().forEach((product, quantity) ->
-                stock.computeIfPresent(product, (key, currentStock) -> currentStock - quantity)
-        );
-
-        return true;
+        return journaled(engine.process(order), WarehouseJournal.PROCESS, order);
     }
 
     /**
@@ -64,21 +420,17 @@ public class Warehouse {
      * @param reservation the order to process
      */
     public boolean reserveProduct(Order reservation) {
-        if (reservation == null || reservation.getItems().isEmpty()) {
+        if (reservation == null || reservation.isEmpty()) {
             return false;
         }
-
-        if(!hasEnoughStock(reservation)) {
-            return false;
+        ReservationExpiry.Hold[] holds = hold(reservation);
+        boolean reserved = false;
+        try {
+            reserved = engine.reserve(reservation);
+        } finally {
+            settleHolds(holds, reserved);
         }
-
-        reservation.getItems().forEach((product, quantity) -> {
-            stock.computeIfPresent(product, (key, currentStock) -> currentStock - quantity);
-            int reservedQty = reservedStock.merge(product, quantity, Integer::sum);
-            maxReservedByProduct.merge(product, reservedQty, Math::max);
-        });
-
-        return true;
+        return journaled(reserved, WarehouseJournal.RESERVE, reservation);
     }
 
     /**
@@ -89,21 +441,10 @@ public class Warehouse {
      * @return true if cancellation succeeded, false if not enough reserved
      */
     public boolean cancelReservation(Order reservation) {
-        if (reservation == null || reservation.getItems().isEmpty() || !hasEnoughReserved(reservation)) {
+        if (reservation == null || reservation.isEmpty()) {
             return false;
         }
-
-        for (var entry : reservation.getItems().entrySet()) {
-            Product product = entry.getKey();
-            int quantity = entry.getValue();
-
-            int reservedQtyAfterCancel = reservedStock.computeIfPresent(product, (key, reservedQty) -> reservedQty - quantity);
-            maxReservedByProduct.merge(product, reservedQtyAfterCancel, Math::max);
-
-            stock.merge(product, quantity, Integer::sum);
-        }
-
-        return true;
+        return journaled(engine.cancel(reservation), WarehouseJournal.CANCEL, reservation);
     }
 
     /**
@@ -114,52 +455,142 @@ public class Warehouse {
      * @return true if checkout succeeded, false if not enough reserved.
      */
     public boolean checkoutReservation(Order reservation) {
-        if (reservation == null || reservation.getItems().isEmpty() || !hasEnoughReserved(reservation)) {
+        if (reservation == null || reservation.isEmpty()) {
             return false;
         }
+        return journaled(engine.checkout(reservation), WarehouseJournal.CHECKOUT, reservation);
+    }
 
-        for (var entry : reservation.getItems().entrySet()) {
-            Product product = entry.getKey();
-            int quantity = entry.getValue();
+    /**
+     * Makes a successful operation durable before reporting it, if this warehouse is durable.
+     *
+     * @return {@code applied}
+     */
+    private boolean journaled(boolean applied, byte operation, Order order) {
+        if (applied) {
+            if (journal != null) {
+                journal.awaitDurable();
+            }
+            consumeHolds(operation, order);
+        }
+        return applied;
+    }
+
+    /**
+     * Takes units from stock or reserved stock for one part of an order split across warehouses,
+     * without making anything durable yet. Used by {@link WarehouseRouter}, which then either
+     * {@link #settle(Order, OrderType) settles} the part or {@link #undoTake(Order, boolean) undoes}
+     * the take.
+     *
+     * @param part         quantities to take
+     * @param fromReserved true to take from reserved stock, false to take from stock
+     * @return true if every product had enough units
+     */
+    boolean take(Order part, boolean fromReserved) {
+        return part != null && !part.isEmpty() && engine.take(part, fromReserved);
+    }
 
-            reservedStock.computeIfPresent(product, (key, reservedQty) -> reservedQty - quantity);
+    /**
+     * Commits a part taken with {@link #take(Order, boolean)} as one operation of the given type,
+     * journaled as a single record and made durable before returning.
+     *
+     * @param part quantities taken
+     * @param type operation the part commits as
+     * @throws java.io.UncheckedIOException if the journal could not be written; the part is then
+     *                                      given back if it was not applied
+     */
+    void settle(Order part, OrderType type) {
+        ReservationExpiry.Hold[] holds = type == OrderType.RESERVATION ? hold(part) : null;
+        boolean settled = false;
+        try {
+            engine.settle(part, type);
+            settled = true;
+        } finally {
+            settleHolds(holds, settled);
+        }
+        if (journal != null) {
+            journal.awaitDurable();
         }
+        consumeHolds(switch (type) {
+            case PURCHASE -> WarehouseJournal.PROCESS;
+            case RESERVATION -> WarehouseJournal.RESERVE;
+            case CANCELLATION -> WarehouseJournal.CANCEL;
+            case CHECKOUT -> WarehouseJournal.CHECKOUT;
+        }, part);
+    }
 
-        return true;
+    /**
+     * Gives back units taken with {@link #take(Order, boolean)} for a part that will not be settled.
+     *
+     * @param part         quantities taken
+     * @param fromReserved true if they were taken from reserved stock
+     */
+    void undoTake(Order part, boolean fromReserved) {
+        engine.undoTake(part, fromReserved);
     }
 
     /**
-     * Checks if all Products in an Order is available in the warehouse stock.
+     * Registers the holds of a reservation about to be applied, if reservations expire, so a
+     * cancellation or checkout committing right after it is counted against them.
      *
-     * @param order order to check in the stock.
-     * @return true if all products in order are available.
+     * @return holds to pass to {@link #settleHolds}, or null if there are none
      */
-    private boolean hasEnoughStock(Order order) {
-        for (var entry : order.getItems().entrySet()) {
-            var product = entry.getKey();
-            var quantity = entry.getValue();
-            Integer currentStock = stock.get(product);
-            if (currentStock == null || currentStock < quantity) {
-                return false;
-            }
+    private ReservationExpiry.Hold[] hold(Order order) {
+        return expiry != null && order.isReservationOrder() ? expiry.hold(order) : null;
+    }
+
+    /**
+     * Starts expiring the holds of a reservation that was applied, or withdraws them if it was not.
+     */
+    private void settleHolds(ReservationExpiry.Hold[] holds, boolean reserved) {
+        if (holds == null) {
+            return;
+        }
+        if (reserved) {
+            expiry.confirm(holds);
+        } else {
+            expiry.withdraw(holds);
+        }
+    }
+
+    /**
+     * Tells reservation expiry, if enabled, about units an applied operation took off hold.
+     */
+    private void consumeHolds(byte operation, Order order) {
+        if (expiry != null && (operation == WarehouseJournal.CANCEL || operation == WarehouseJournal.CHECKOUT)) {
+            expiry.consume(order);
         }
-        return true;
     }
 
     /**
-     * Checks if all Products in an Order is available in the warehouse reserved stock.
+     * Returns expired reserved units to stock, one cancellation per product, and makes them durable
+     * together. A product whose reserved stock no longer covers its expired units, because a
+     * cancellation or checkout of them was applied but not yet counted, releases what is left.
+     * Called by {@link ReservationExpiry}.
      *
-     * @param reservation order to check in the reserve stock.
-     * @return true if all products in order are available.
+     * @param cancellations cancellations of the expired units, one item each
      */
-    private boolean hasEnoughReserved(Order reservation) {
-        for (var entry : reservation.getItems().entrySet()) {
-            Product product = entry.getKey();
-            int quantity = entry.getValue();
-            if (reservedStock.getOrDefault(product, 0) < quantity) {
-                return false;
+    void releaseExpired(List<Order> cancellations) {
+        for (Order cancellation : cancellations) {
+            Product product = cancellation.product(0);
+            int quantity = cancellation.quantity(0);
+            while (quantity > 0 && !engine.cancel(cancellation)) {
+                quantity = Math.min(quantity - 1, engine.reserved(product));
+                cancellation = new ReservationCancellationOrder();
+                cancellation.add(product, quantity);
             }
         }
-        return true;
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+    }
+
+    private static byte journalOperation(OrderOutcome outcome) {
+        return switch (outcome) {
+            case RESERVED -> WarehouseJournal.RESERVE;
+            case CANCELLED -> WarehouseJournal.CANCEL;
+            case CHECKED_OUT -> WarehouseJournal.CHECKOUT;
+            default -> WarehouseJournal.PROCESS;
+        };
     }
 }
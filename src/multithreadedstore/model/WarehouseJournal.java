@@ -0,0 +1,480 @@
+package multithreadedstore.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal of the operations a {@link Warehouse} committed.
+ *
+ * <p>A journal directory holds a checkpoint ({@code checkpoint.bin}: stock, reserved and maximum
+ * reserved per product plus a generation number) and the journal of that generation
+ * ({@code journal-<generation>.log}). Each journal record holds one committed operation as the
+ * catalog index and quantity of every item, protected by a CRC.
+ *
+ * <p>The {@link StockEngine} appends an operation while the units it adds are not yet visible to
+ * other operations: under the locks of its products, or after its claims succeeded and before
+ * their increments are published. An operation taking units that another operation added is
+ * therefore always journaled after that one, so replaying the records in journal order never takes
+ * more than was there. Replay checks that: a record that would drive stock or reserved stock below
+ * zero means the journal does not match the checkpoint, and recovery fails rather than rebuild
+ * impossible stock. The maximum reserved quantity is rebuilt as the running maximum seen during
+ * replay.
+ *
+ * <p>Appends go to an in-memory buffer. {@link #awaitDurable()} group-commits: the first waiter
+ * becomes the leader, writes every record appended so far and forces the file once, while workers
+ * arriving in the meantime wait and are covered by the next flush. One fsync is thus shared by every
+ * order that was appended while the previous one was in progress.
+ *
+ * <p>A flush that fails leaves the records it held, and any appended after them, in doubt: the
+ * operations were applied in memory but may not be on disk. The journal then fails every later
+ * append and wait, so the engine refuses further operations instead of building on state that a
+ * restart would not reproduce. Reopening the warehouse recovers what is durable.
+ */
+class WarehouseJournal implements Closeable {
+
+    static final byte PROCESS = 0;
+    static final byte RESERVE = 1;
+    static final byte CANCEL = 2;
+    static final byte CHECKOUT = 3;
+
+    /** Units added without any check; no longer appended, but still replayed from older journals. */
+    static final byte RESTOCK = 4;
+    static final byte RESTOCK_RESERVED = 5;
+
+    private static final long CHECKPOINT_MAGIC = 0x5748434B50543031L;
+    private static final long JOURNAL_MAGIC = 0x57484A524E4C3031L;
+    private static final int JOURNAL_HEADER_BYTES = 24;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final Product[] catalog;
+    private final int[] slotById;
+    private final long fingerprint;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private final UnaryOperator<FileChannel> channels;
+
+    private FileChannel channel;
+    private long generation;
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean flushing;
+    private IOException failure;
+
+    private WarehouseJournal(Path directory, Product[] catalog, int[] slotById, long generation, FileChannel channel,
+                             UnaryOperator<FileChannel> channels) {
+        this.directory = directory;
+        this.catalog = catalog;
+        this.slotById = slotById;
+        this.fingerprint = fingerprint(catalog);
+        this.generation = generation;
+        this.channels = channels;
+        this.channel = channels.apply(channel);
+    }
+
+    /**
+     * Rebuilds an engine from the latest checkpoint and journal in a directory and opens the journal
+     * for appending. An empty or missing directory starts a new journal from the engine's current state.
+     *
+     * @param directory directory holding the checkpoint and journal
+     * @param catalog   stocked products; must be the same, in the same order, on every restart
+     * @param engine    freshly created engine to restore
+     * @return the journal to append to
+     * @throws IOException if the files cannot be read or belong to a different catalog
+     */
+    static WarehouseJournal recover(Path directory, Product[] catalog, StockEngine engine) throws IOException {
+        return recover(directory, catalog, engine, UnaryOperator.identity());
+    }
+
+    /**
+     * Recovers like {@link #recover(Path, Product[], StockEngine)}, appending through the channels
+     * the given function wraps around every journal file it opens.
+     */
+    static WarehouseJournal recover(Path directory, Product[] catalog, StockEngine engine,
+                                    UnaryOperator<FileChannel> channels) throws IOException {
+        Files.createDirectories(directory);
+        long fingerprint = fingerprint(catalog);
+        int[] slotById = new int[Arrays.stream(catalog).mapToInt(ProductRegistry::idOf).max().orElse(-1) + 1];
+        Arrays.fill(slotById, -1);
+        for (int slot = 0; slot < catalog.length; slot++) {
+            slotById[ProductRegistry.idOf(catalog[slot])] = slot;
+        }
+
+        int[] stock = new int[catalog.length];
+        int[] reserved = new int[catalog.length];
+        int[] maxReserved = new int[catalog.length];
+        long generation = readCheckpoint(directory.resolve("checkpoint.bin"), fingerprint, stock, reserved, maxReserved);
+        if (generation < 0) {
+            generation = 0;
+            for (int slot = 0; slot < catalog.length; slot++) {
+                stock[slot] = engine.stock(catalog[slot]);
+                reserved[slot] = engine.reserved(catalog[slot]);
+                maxReserved[slot] = engine.maxReserved(catalog[slot]);
+            }
+        }
+
+        Path journalFile = journalFile(directory, generation);
+        long validLength = Files.exists(journalFile)
+                ? replay(journalFile, fingerprint, generation, stock, reserved, maxReserved)
+                : 0;
+        for (int slot = 0; slot < catalog.length; slot++) {
+            engine.restore(catalog[slot], stock[slot], reserved[slot], maxReserved[slot]);
+        }
+
+        FileChannel channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (validLength == 0) {
+            channel.truncate(0);
+            writeHeader(channel, fingerprint, generation);
+        } else {
+            channel.truncate(validLength);
+            channel.position(validLength);
+        }
+        return new WarehouseJournal(directory, catalog, slotById, generation, channel, channels);
+    }
+
+    /**
+     * Appends an operation the engine is committing to the journal buffer. Must be called before
+     * any other operation can see the units it adds; it is durable once a later
+     * {@link #awaitDurable()} returns. Items of products outside the catalog are left out.
+     *
+     * @param operation one of {@link #PROCESS}, {@link #RESERVE}, {@link #CANCEL}, {@link #CHECKOUT}
+     * @param order     the order being committed
+     * @throws UncheckedIOException if an earlier flush failed; the operation must then not be applied
+     */
+    void append(byte operation, Order order) {
+        int items = 0;
+        for (int i = 0; i < order.size(); i++) {
+            if (slotOf(order.productId(i)) >= 0) {
+                items++;
+            }
+        }
+        int payloadBytes = 3 + 8 * items;
+        int recordBytes = RECORD_HEADER_BYTES + payloadBytes;
+        lock.lock();
+        try {
+            checkNotFailed();
+            while (active.remaining() < recordBytes) {
+                if (active.position() == 0) {
+                    active = ByteBuffer.allocateDirect(recordBytes);
+                    spare = ByteBuffer.allocateDirect(recordBytes);
+                } else {
+                    flushLocked(appendedLsn);
+                }
+            }
+            int start = active.position();
+            active.putInt(payloadBytes).putInt(0).put(operation).putShort((short) items);
+            for (int i = 0; i < order.size(); i++) {
+                int slot = slotOf(order.productId(i));
+                if (slot >= 0) {
+                    active.putInt(slot).putInt(order.quantity(i));
+                }
+            }
+            crc.reset();
+            crc.update(active.slice(start + RECORD_HEADER_BYTES, payloadBytes));
+            active.putInt(start + 4, (int) crc.getValue());
+            appendedLsn += recordBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record appended so far, including every record the calling thread
+     * appended, has been written and forced to disk, flushing as the leader if no flush is in
+     * progress.
+     *
+     * @throws UncheckedIOException if a flush failed, now or earlier
+     */
+    void awaitDurable() {
+        lock.lock();
+        try {
+            awaitDurable(appendedLsn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record up to a log position has been written and forced to disk. Must be
+     * called with the lock held exactly once, so a leader's flush runs with the lock released.
+     */
+    private void awaitDurable(long lsn) {
+        while (durableLsn < lsn) {
+            checkNotFailed();
+            flushLocked(lsn);
+        }
+    }
+
+    /**
+     * Fails if a flush failed, with the lock held.
+     */
+    private void checkNotFailed() {
+        if (failure != null) {
+            throw new UncheckedIOException("Warehouse journal could not be written; reopen the warehouse", failure);
+        }
+    }
+
+    private int slotOf(int productId) {
+        return productId < slotById.length ? slotById[productId] : -1;
+    }
+
+    /**
+     * Writes a new checkpoint of the engine and starts a new, empty journal generation.
+     * Must only be called while no orders are being applied, so the engine state matches the journal.
+     *
+     * @param engine engine whose state to checkpoint
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void checkpoint(StockEngine engine) throws IOException {
+        lock.lock();
+        try {
+            awaitDurable(appendedLsn);
+            long nextGeneration = generation + 1;
+            Path temporary = directory.resolve("checkpoint.tmp");
+            ByteBuffer buffer = ByteBuffer.allocate(32 + 12 * catalog.length + 4);
+            buffer.putLong(CHECKPOINT_MAGIC).putInt(1).putLong(fingerprint).putLong(nextGeneration).putInt(catalog.length);
+            for (Product product : catalog) {
+                buffer.putInt(engine.stock(product)).putInt(engine.reserved(product)).putInt(engine.maxReserved(product));
+            }
+            crc.reset();
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.putInt((int) crc.getValue()).flip();
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(temporary, directory.resolve("checkpoint.bin"),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            FileChannel next = FileChannel.open(journalFile(directory, nextGeneration), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writeHeader(next, fingerprint, nextGeneration);
+            channel.close();
+            Files.deleteIfExists(journalFile(directory, generation));
+            channel = channels.apply(next);
+            generation = nextGeneration;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every record appended so far and closes the file.
+     *
+     * @throws IOException if a flush failed, now or earlier
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            awaitDurable(appendedLsn);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs one round of group commit with the lock held: waits for a flush in progress, or becomes
+     * the leader and writes and forces every record appended so far with the lock released. A
+     * failed flush is kept, so every later append and wait fails too.
+     */
+    private void flushLocked(long lsn) {
+        if (flushing) {
+            flushed.awaitUninterruptibly();
+            return;
+        }
+        if (durableLsn >= lsn) {
+            return;
+        }
+        flushing = true;
+        ByteBuffer toWrite = active;
+        long target = appendedLsn;
+        active = spare;
+        spare = null;
+        IOException failed = null;
+        lock.unlock();
+        try {
+            toWrite.flip();
+            while (toWrite.hasRemaining()) {
+                channel.write(toWrite);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failed = e;
+        } finally {
+            lock.lock();
+            toWrite.clear();
+            spare = toWrite;
+            flushing = false;
+            flushed.signalAll();
+        }
+        if (failed != null) {
+            failure = failed;
+            throw new UncheckedIOException("Could not write warehouse journal", failed);
+        }
+        durableLsn = target;
+    }
+
+    /**
+     * Reads a checkpoint into the given arrays.
+     *
+     * @return generation of the checkpoint, or -1 if there is none
+     */
+    private static long readCheckpoint(Path file, long fingerprint, int[] stock, int[] reserved,
+                                       int[] maxReserved) throws IOException {
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < 36 || buffer.getLong() != CHECKPOINT_MAGIC || buffer.getInt() != 1) {
+            throw new IOException("Not a warehouse checkpoint: " + file);
+        }
+        if (buffer.getLong() != fingerprint) {
+            throw new IOException("Checkpoint was written for a different product catalog: " + file);
+        }
+        long generation = buffer.getLong();
+        int count = buffer.getInt();
+        if (count != stock.length || buffer.remaining() != 12 * count + 4) {
+            throw new IOException("Corrupt warehouse checkpoint: " + file);
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException("Corrupt warehouse checkpoint: " + file);
+        }
+        for (int slot = 0; slot < count; slot++) {
+            stock[slot] = buffer.getInt();
+            reserved[slot] = buffer.getInt();
+            maxReserved[slot] = buffer.getInt();
+        }
+        return generation;
+    }
+
+    /**
+     * Applies every intact record of a journal file to the given arrays. Stops at the first torn or
+     * corrupt record, which is where a crash interrupted the last flush.
+     *
+     * @return length of the intact prefix of the file, or 0 if its header is missing
+     * @throws IOException if an intact record names a product outside the catalog or would drive
+     *                     stock or reserved stock below zero
+     */
+    private static long replay(Path file, long fingerprint, long generation, int[] stock, int[] reserved,
+                               int[] maxReserved) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < JOURNAL_HEADER_BYTES) {
+                return 0;
+            }
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getLong() != JOURNAL_MAGIC || buffer.getLong() != fingerprint || buffer.getLong() != generation) {
+                throw new IOException("Journal does not belong to this checkpoint and catalog: " + file);
+            }
+            CRC32C checksum = new CRC32C();
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int start = buffer.position();
+                int payloadBytes = buffer.getInt();
+                int expectedCrc = buffer.getInt();
+                if (payloadBytes < 3 || payloadBytes > buffer.remaining()) {
+                    return start;
+                }
+                checksum.reset();
+                checksum.update(buffer.slice(buffer.position(), payloadBytes));
+                if ((int) checksum.getValue() != expectedCrc) {
+                    return start;
+                }
+                byte operation = buffer.get();
+                int items = buffer.getShort() & 0xFFFF;
+                if (payloadBytes != 3 + 8 * items) {
+                    throw new IOException("Malformed journal record at offset " + start + " in " + file);
+                }
+                for (int i = 0; i < items; i++) {
+                    int slot = buffer.getInt();
+                    int quantity = buffer.getInt();
+                    if (slot < 0 || slot >= stock.length || quantity < 0) {
+                        throw new IOException("Malformed journal record at offset " + start + " in " + file);
+                    }
+                    switch (operation) {
+                        case PROCESS -> stock[slot] -= quantity;
+                        case RESERVE -> {
+                            stock[slot] -= quantity;
+                            reserved[slot] += quantity;
+                            maxReserved[slot] = Math.max(maxReserved[slot], reserved[slot]);
+                        }
+                        case CANCEL -> {
+                            stock[slot] += quantity;
+                            reserved[slot] -= quantity;
+                        }
+                        case CHECKOUT -> reserved[slot] -= quantity;
+                        case RESTOCK -> stock[slot] += quantity;
+                        case RESTOCK_RESERVED -> {
+                            reserved[slot] += quantity;
+                            maxReserved[slot] = Math.max(maxReserved[slot], reserved[slot]);
+                        }
+                        default -> throw new IOException("Unknown journal operation " + operation + " in " + file);
+                    }
+                    if (stock[slot] < 0 || reserved[slot] < 0) {
+                        throw new IOException("Journal record at offset " + start + " in " + file
+                                + " takes more than was in stock; journal and checkpoint do not match");
+                    }
+                }
+            }
+            return buffer.position();
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long fingerprint, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_BYTES);
+        header.putLong(JOURNAL_MAGIC).putLong(fingerprint).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+
+    private static Path journalFile(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    /**
+     * Identifies a catalog by the names and prices of its products in order, so state is never
+     * replayed onto a different one. Hashes their bytes explicitly rather than relying on
+     * {@link Product#hashCode()}, whose algorithm a record leaves unspecified.
+     */
+    private static long fingerprint(Product[] catalog) {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer number = ByteBuffer.allocate(8);
+        long hash = catalog.length;
+        for (Product product : catalog) {
+            checksum.reset();
+            checksum.update(product.name().getBytes(StandardCharsets.UTF_8));
+            checksum.update(number.clear().putLong(Double.doubleToLongBits(product.price())).flip());
+            hash = hash * 31 + checksum.getValue();
+        }
+        return hash;
+    }
+}
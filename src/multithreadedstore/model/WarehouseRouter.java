@@ -0,0 +1,331 @@
+package multithreadedstore.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Routes orders over several {@link Warehouse}s, so throughput grows with the number of warehouses
+ * instead of every worker contending on one.
+ *
+ * <p>An order goes whole to one warehouse whenever one can fill it, choosing among those that can the
+ * one with the fewest operations in flight. Otherwise it is split: each item goes to the warehouses
+ * with the most units of its product, and the parts are committed all-or-nothing in two phases. The
+ * taking half of the operation (stock for purchases and reservations, reserved stock for checkouts and
+ * cancellations) is applied to every warehouse first; if one of them no longer has enough, the units
+ * already taken are given back. Only once every part was taken is each part settled: its warehouse
+ * journals it as one record of the whole operation and publishes the receiving half (reserved stock
+ * of a reservation, stock of a cancellation), so no other order can use units that might still be
+ * given back. A concurrent order may briefly miss units that a failing split order is about to give
+ * back.
+ *
+ * <p>Taking and giving back are not journaled, so a durable warehouse never loses units to a crash
+ * in the middle of a split order: a part taken but not yet settled is simply back in place after a
+ * restart. The warehouses journal separately, though, so a crash or a journal failure between the
+ * settling of two parts leaves the order applied in the warehouses already settled and not in the
+ * others. Each warehouse stays consistent on its own.
+ *
+ * <p>Checkouts and cancellations are routed by reserved stock, so they settle in the warehouses
+ * holding the reserved units: reservations stay pinned to where they were made.
+ * As with a single warehouse, a reservation, cancellation or checkout that cannot be applied falls
+ * back to a regular purchase.
+ */
+public class WarehouseRouter implements Inventory, Closeable {
+
+    /** Spacing of the in-flight counters, so counters of different warehouses do not share a cache line. */
+    private static final int PADDING = 16;
+
+    private final Warehouse[] warehouses;
+    private final AtomicIntegerArray inFlight;
+
+    /**
+     * Creates a router over a fixed set of warehouses.
+     *
+     * @param warehouses warehouses to route to, at least one
+     */
+    public WarehouseRouter(List<Warehouse> warehouses) {
+        if (warehouses.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one warehouse");
+        }
+        this.warehouses = warehouses.toArray(Warehouse[]::new);
+        this.inFlight = new AtomicIntegerArray(this.warehouses.length * PADDING);
+    }
+
+    /**
+     * Returns the warehouses routed to, in the order they were given.
+     */
+    public List<Warehouse> getWarehouses() {
+        return List.of(warehouses);
+    }
+
+    @Override
+    public OrderOutcome apply(Order order) {
+        if (order == null || order.isEmpty()) {
+            return OrderOutcome.INVALID;
+        } else if (order.isReservationOrder() && route(order, OrderType.RESERVATION)) {
+            return OrderOutcome.RESERVED;
+        } else if (order.isReservationCancellationOrder() && route(order, OrderType.CANCELLATION)) {
+            return OrderOutcome.CANCELLED;
+        } else if (order.isReservationCheckoutOrder() && route(order, OrderType.CHECKOUT)) {
+            return OrderOutcome.CHECKED_OUT;
+        } else if (route(order, OrderType.PURCHASE)) {
+            return OrderOutcome.PURCHASED;
+        }
+        return OrderOutcome.shortage(order.type());
+    }
+
+    /**
+     * Returns, per product, the largest maximum reserved quantity a single warehouse reached. The
+     * warehouses reach their maxima at different times, so their sum would overstate what was ever
+     * reserved at once; {@link #getMaxReservedByWarehouse()} has every warehouse's own values.
+     */
+    @Override
+    public Map<Product, Integer> getMaxReservedByProduct() {
+        Map<Product, Integer> maxReserved = new HashMap<>();
+        for (Warehouse warehouse : warehouses) {
+            warehouse.getMaxReservedByProduct().forEach((product, quantity) -> maxReserved.merge(product, quantity, Math::max));
+        }
+        return maxReserved;
+    }
+
+    /**
+     * Returns the maximum reserved quantity seen per product in every warehouse, in the order the
+     * warehouses were given.
+     */
+    public List<Map<Product, Integer>> getMaxReservedByWarehouse() {
+        return Arrays.stream(warehouses).map(Warehouse::getMaxReservedByProduct).toList();
+    }
+
+    @Override
+    public int getStock(Product product) {
+        return Arrays.stream(warehouses).mapToInt(warehouse -> warehouse.getStock(product)).sum();
+    }
+
+    @Override
+    public int getReserved(Product product) {
+        return Arrays.stream(warehouses).mapToInt(warehouse -> warehouse.getReserved(product)).sum();
+    }
+
+    @Override
+    public long getContentions() {
+        return Arrays.stream(warehouses).mapToLong(Warehouse::getContentions).sum();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return Arrays.stream(warehouses).mapToLong(Warehouse::getLockWaitNanos).sum();
+    }
+
+    /**
+     * Closes every warehouse.
+     *
+     * @throws IOException the first failure to close a warehouse, after trying all of them
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Warehouse warehouse : warehouses) {
+            try {
+                warehouse.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Applies one operation of an order to a single warehouse if one can fill it, else split. An
+     * order that lost a race for the units it was routed to is routed again, after backing off, until
+     * it is applied or the warehouses together no longer have enough, so a refusal always means a
+     * real shortage.
+     *
+     * @param type operation to apply; {@link OrderType#PURCHASE} processes the order
+     * @return false if the warehouses together cannot fill the order
+     */
+    private boolean route(Order order, OrderType type) {
+        boolean fromReserved = type == OrderType.CANCELLATION || type == OrderType.CHECKOUT;
+        for (int attempt = 0; ; attempt++) {
+            int target = pickWarehouse(order, fromReserved);
+            if (target >= 0) {
+                if (applyWhole(target, order, type)) {
+                    return true;
+                }
+            } else {
+                int[][] plan = planSplit(order, fromReserved);
+                if (plan == null) {
+                    return false;
+                }
+                if (applySplit(order, type, plan)) {
+                    return true;
+                }
+            }
+            WriteActivity.backOff(attempt);
+        }
+    }
+
+    /**
+     * Returns the least loaded warehouse that has enough units for every item, or -1 if none has.
+     * Scanning starts at a random warehouse so equally loaded warehouses share the work.
+     */
+    private int pickWarehouse(Order order, boolean fromReserved) {
+        int best = -1;
+        int bestLoad = Integer.MAX_VALUE;
+        int start = ThreadLocalRandom.current().nextInt(warehouses.length);
+        for (int n = 0; n < warehouses.length; n++) {
+            int w = (start + n) % warehouses.length;
+            int load = inFlight.get(w * PADDING);
+            if (load < bestLoad && canFill(warehouses[w], order, fromReserved)) {
+                best = w;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private static boolean canFill(Warehouse warehouse, Order order, boolean fromReserved) {
+        for (int i = 0; i < order.size(); i++) {
+            if (available(warehouse, order.product(i), fromReserved) < order.quantity(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads every item over the warehouses with the most units of its product.
+     *
+     * @return units per warehouse and item, or null if the warehouses together do not have enough
+     */
+    private int[][] planSplit(Order order, boolean fromReserved) {
+        int[][] plan = new int[warehouses.length][order.size()];
+        int[] available = new int[warehouses.length];
+        Integer[] byAvailable = new Integer[warehouses.length];
+        for (int i = 0; i < order.size(); i++) {
+            Product product = order.product(i);
+            for (int w = 0; w < warehouses.length; w++) {
+                available[w] = available(warehouses[w], product, fromReserved);
+                byAvailable[w] = w;
+            }
+            Arrays.sort(byAvailable, (a, b) -> Integer.compare(available[b], available[a]));
+            int needed = order.quantity(i);
+            for (int w : byAvailable) {
+                int taken = Math.min(needed, Math.max(0, available[w]));
+                plan[w][i] = taken;
+                needed -= taken;
+            }
+            if (needed > 0) {
+                return null;
+            }
+        }
+        return plan;
+    }
+
+    private boolean applyWhole(int target, Order order, OrderType type) {
+        Warehouse warehouse = warehouses[target];
+        inFlight.getAndIncrement(target * PADDING);
+        try {
+            return switch (type) {
+                case RESERVATION -> warehouse.reserveProduct(order);
+                case CANCELLATION -> warehouse.cancelReservation(order);
+                case CHECKOUT -> warehouse.checkoutReservation(order);
+                case PURCHASE -> warehouse.process(order);
+            };
+        } finally {
+            inFlight.getAndDecrement(target * PADDING);
+        }
+    }
+
+    /**
+     * Commits the parts of a split order all-or-nothing: takes units from every warehouse, gives them
+     * back if one of them fails, and settles the parts only once every part was taken.
+     *
+     * @return false, with every warehouse as before, if a warehouse no longer had enough units
+     * @throws java.io.UncheckedIOException if a warehouse could not journal its part; parts not yet
+     *                                      settled are given back
+     */
+    private boolean applySplit(Order order, OrderType type, int[][] plan) {
+        boolean fromReserved = type == OrderType.CANCELLATION || type == OrderType.CHECKOUT;
+        Order[] parts = new Order[warehouses.length];
+        for (int w = 0; w < warehouses.length; w++) {
+            for (int i = 0; i < order.size(); i++) {
+                if (plan[w][i] > 0) {
+                    if (parts[w] == null) {
+                        parts[w] = newPart(order);
+                    }
+                    parts[w].add(order.product(i), plan[w][i]);
+                }
+            }
+        }
+
+        for (int w = 0; w < warehouses.length; w++) {
+            if (parts[w] != null) {
+                inFlight.getAndIncrement(w * PADDING);
+            }
+        }
+        try {
+            for (int w = 0; w < warehouses.length; w++) {
+                if (parts[w] != null && !warehouses[w].take(parts[w], fromReserved)) {
+                    undoTakes(parts, 0, w, fromReserved);
+                    return false;
+                }
+            }
+            for (int w = 0; w < warehouses.length; w++) {
+                if (parts[w] == null) {
+                    continue;
+                }
+                try {
+                    warehouses[w].settle(parts[w], type);
+                } catch (RuntimeException e) {
+                    undoTakes(parts, w + 1, warehouses.length, fromReserved);
+                    throw e;
+                }
+            }
+            return true;
+        } finally {
+            for (int w = 0; w < warehouses.length; w++) {
+                if (parts[w] != null) {
+                    inFlight.getAndDecrement(w * PADDING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives back the parts taken from the warehouses in {@code [from, to)}, last first.
+     */
+    private void undoTakes(Order[] parts, int from, int to, boolean fromReserved) {
+        for (int w = to - 1; w >= from; w--) {
+            if (parts[w] != null) {
+                warehouses[w].undoTake(parts[w], fromReserved);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty order of the same type, keeping a reservation's time to live.
+     */
+    private static Order newPart(Order order) {
+        return switch (order.type()) {
+            case RESERVATION -> new ReservationOrder(order instanceof ReservationOrder reservation ? reservation.getTtl() : null);
+            case CANCELLATION -> new ReservationCancellationOrder();
+            case CHECKOUT -> new ReservationCheckoutOrder();
+            case PURCHASE -> new Order();
+        };
+    }
+
+    private static int available(Warehouse warehouse, Product product, boolean fromReserved) {
+        return fromReserved ? warehouse.getReserved(product) : warehouse.getStock(product);
+    }
+}
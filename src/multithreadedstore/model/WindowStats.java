@@ -0,0 +1,62 @@
+package multithreadedstore.model;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Activity over a recent stretch of time, such as the last second or minute.
+ *
+ * @param window         length of the time covered
+ * @param orders         number of purchases and checkouts committed
+ * @param revenue        revenue of those orders
+ * @param reservations   number of reservations committed
+ * @param cancellations  number of reservation cancellations committed
+ * @param rejectedOrders number of orders refused at intake because the store was overloaded
+ * @param topProducts    most sold products with units sold and error bounds, best first
+ */
+public record WindowStats(
+        Duration window,
+        long orders,
+        double revenue,
+        long reservations,
+        long cancellations,
+        long rejectedOrders,
+        List<HeavyHitter> topProducts
+) {
+    public WindowStats {
+        topProducts = Collections.unmodifiableList(topProducts);
+    }
+
+    /**
+     * Returns the average number of purchases and checkouts per second over the window.
+     */
+    public double ordersPerSecond() {
+        return orders / seconds();
+    }
+
+    /**
+     * Returns the average revenue per second over the window.
+     */
+    public double revenuePerSecond() {
+        return revenue / seconds();
+    }
+
+    /**
+     * Returns the average number of reservations per second over the window.
+     */
+    public double reservationsPerSecond() {
+        return reservations / seconds();
+    }
+
+    /**
+     * Returns the average number of cancellations per second over the window.
+     */
+    public double cancellationsPerSecond() {
+        return cancellations / seconds();
+    }
+
+    private double seconds() {
+        return window.toNanos() / 1e9;
+    }
+}
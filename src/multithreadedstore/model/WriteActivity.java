@@ -0,0 +1,117 @@
+package multithreadedstore.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-thread "write in progress" marks that let readers take consistent snapshots of several
+ * products without taking any lock writers use and without writers paying for an atomic
+ * read-modify-write.
+ *
+ * <p>Every writing thread owns a padded cell holding a sequence, odd while the thread is between
+ * {@link #begin()} and {@link #end()}. Only its owner writes a cell, so marking a write is two
+ * ordered stores to a line the writer already holds. A reader reads its products, waits with
+ * {@link #awaitWritesInProgress()} until every write that was in progress then is done, and reads
+ * them again: if both reads agree, neither caught a write half applied. Writes that begin while a
+ * reader waits are not waited for, so readers never wait for more than the writes already running.
+ *
+ * <p>A cell is handed to another thread only once its owner terminated, so the number of cells is
+ * the largest number of threads that ever wrote at the same time.
+ *
+ * <p>Marks nest: a cell also counts how deep its owner is in nested marks, such as the per-order
+ * operations of a batch applied under the batch's mark, and only the outermost
+ * {@link #begin()} and {@link #end()} change the sequence. The sequence therefore stays odd until
+ * the whole outer write is done.
+ */
+final class WriteActivity {
+
+    private static final int PADDING = 8;
+    private static final int DEPTH = PADDING + 1;
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /** Failed attempts after which a waiting reader yields its core instead of spinning. */
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final ReentrantLock registrationLock = new ReentrantLock();
+    private final ThreadLocal<long[]> cell = ThreadLocal.withInitial(this::register);
+
+    /** Cells in registration order; replaced, never modified, when a thread registers. */
+    private volatile long[][] cells = new long[0][];
+    private Thread[] owners = new Thread[0];
+
+    /**
+     * Marks a write by the calling thread as in progress, before any of its changes. Only the
+     * outermost of nested marks changes the sequence.
+     */
+    void begin() {
+        long[] mine = cell.get();
+        if (mine[DEPTH]++ == 0) {
+            SEQUENCE.setOpaque(mine, PADDING, (long) SEQUENCE.getOpaque(mine, PADDING) + 1);
+            VarHandle.storeStoreFence();
+        }
+    }
+
+    /**
+     * Marks the write begun with {@link #begin()} as done, after all of its changes. Only the
+     * outermost of nested marks changes the sequence.
+     */
+    void end() {
+        long[] mine = cell.get();
+        if (--mine[DEPTH] == 0) {
+            SEQUENCE.setRelease(mine, PADDING, (long) SEQUENCE.getOpaque(mine, PADDING) + 1);
+        }
+    }
+
+    /**
+     * Waits until every write in progress when called is done. Changes read before the call are
+     * then either complete or undone by the time reads after the call are made.
+     */
+    void awaitWritesInProgress() {
+        for (long[] other : cells) {
+            long sequence = (long) SEQUENCE.getAcquire(other, PADDING);
+            for (int attempt = 0; (sequence & 1) != 0 && (long) SEQUENCE.getAcquire(other, PADDING) == sequence; attempt++) {
+                backOff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Waits a little before a reader tries again.
+     *
+     * @param attempt number of attempts that failed so far
+     */
+    static void backOff(int attempt) {
+        if (attempt < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns a cell for the calling thread, reusing the cell of a thread that terminated.
+     */
+    private long[] register() {
+        registrationLock.lock();
+        try {
+            Thread current = Thread.currentThread();
+            for (int i = 0; i < owners.length; i++) {
+                if (!owners[i].isAlive()) {
+                    owners[i] = current;
+                    return cells[i];
+                }
+            }
+            long[] mine = new long[2 * PADDING + 1];
+            owners = Arrays.copyOf(owners, owners.length + 1);
+            owners[owners.length - 1] = current;
+            long[][] grown = Arrays.copyOf(cells, cells.length + 1);
+            grown[grown.length - 1] = mine;
+            cells = grown;
+            return mine;
+        } finally {
+            registrationLock.unlock();
+        }
+    }
+}
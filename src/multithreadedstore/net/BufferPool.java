@@ -0,0 +1,43 @@
+package multithreadedstore.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of direct buffers of one size, so connections coming and going do not allocate
+ * and free native memory each time.
+ */
+final class BufferPool {
+
+    private final BlockingQueue<ByteBuffer> free;
+    private final int bufferBytes;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferBytes size of every buffer
+     * @param capacity    maximum number of idle buffers kept
+     */
+    BufferPool(int bufferBytes, int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.bufferBytes = bufferBytes;
+    }
+
+    /**
+     * Returns an empty buffer, reusing an idle one if available.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    /**
+     * Returns a buffer to the pool. Dropped if the pool is full.
+     *
+     * @param buffer buffer that is no longer used anywhere else
+     */
+    void release(ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,28 @@
+package multithreadedstore.net;
+
+import multithreadedstore.model.OrderOutcome;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * What an {@link OrderLoadClient} run sent and got back.
+ *
+ * @param orders   number of requests answered
+ * @param elapsed  time from the first request sent to the last response received
+ * @param outcomes number of responses per outcome
+ */
+public record LoadReport(long orders, Duration elapsed, Map<OrderOutcome, Long> outcomes) {
+
+    public LoadReport {
+        outcomes = Collections.unmodifiableMap(outcomes);
+    }
+
+    /**
+     * Returns the average number of requests answered per second.
+     */
+    public double ordersPerSecond() {
+        return orders / (elapsed.toNanos() / 1e9);
+    }
+}
@@ -0,0 +1,195 @@
+package multithreadedstore.net;
+
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for an {@link OrderServer}: opens a number of connections and keeps a fixed
+ * number of requests outstanding on each for a while, then waits for the last responses.
+ *
+ * <p>Requests pick their products uniformly from the server's catalog, one unit each, and are
+ * purchases, reservations, checkouts and cancellations in a 6:2:1:1 mix like
+ * {@link multithreadedstore.service.WorkloadProfile#uniform()}. Each connection has its own
+ * thread, a blocking channel and one send and one receive buffer, so the client itself allocates
+ * nothing per request.
+ *
+ * <p>Run it on its own with {@code host port catalogSize connections pipelineDepth itemsPerOrder seconds}.
+ */
+public class OrderLoadClient {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long SEED = 0x5EED;
+    private static final OrderType[] MIX = {
+            OrderType.PURCHASE, OrderType.PURCHASE, OrderType.PURCHASE, OrderType.PURCHASE, OrderType.PURCHASE,
+            OrderType.PURCHASE, OrderType.RESERVATION, OrderType.RESERVATION, OrderType.CHECKOUT, OrderType.CANCELLATION
+    };
+
+    private final InetSocketAddress server;
+    private final int catalogSize;
+    private final int connections;
+    private final int pipelineDepth;
+    private final int itemsPerOrder;
+
+    /**
+     * Creates a client.
+     *
+     * @param server        address of the server
+     * @param catalogSize   number of products in the server's catalog
+     * @param connections   number of connections, each with its own thread
+     * @param pipelineDepth requests kept outstanding per connection, at most {@link OrderProtocol#MAX_IN_FLIGHT}
+     * @param itemsPerOrder products per request
+     */
+    public OrderLoadClient(InetSocketAddress server, int catalogSize, int connections, int pipelineDepth,
+                           int itemsPerOrder) {
+        if (catalogSize < 1 || connections < 1) {
+            throw new IllegalArgumentException("Need at least one product and one connection");
+        }
+        if (pipelineDepth < 1 || pipelineDepth > OrderProtocol.MAX_IN_FLIGHT) {
+            throw new IllegalArgumentException("Pipeline depth must be between 1 and " + OrderProtocol.MAX_IN_FLIGHT);
+        }
+        if (itemsPerOrder < 1 || itemsPerOrder > OrderProtocol.MAX_ITEMS
+                || OrderProtocol.requestBytes(itemsPerOrder) > BUFFER_BYTES) {
+            throw new IllegalArgumentException("Items per order must be between 1 and " + OrderProtocol.MAX_ITEMS);
+        }
+        this.server = server;
+        this.catalogSize = catalogSize;
+        this.connections = connections;
+        this.pipelineDepth = pipelineDepth;
+        this.itemsPerOrder = itemsPerOrder;
+    }
+
+    /**
+     * Sends requests on every connection for a while and waits for all of them to be answered.
+     *
+     * @param duration how long to keep sending
+     * @return what was sent and received over all connections
+     * @throws IOException          if a connection fails
+     * @throws InterruptedException if interrupted while waiting for the connections
+     */
+    public LoadReport run(Duration duration) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        ExecutorService threads = Executors.newFixedThreadPool(connections,
+                r -> Thread.ofPlatform().name("load-client-", 0).unstarted(r));
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            int connection = i;
+            results.add(threads.submit(() -> drive(connection, deadline)));
+        }
+        threads.shutdown();
+
+        long[] counts = new long[OrderOutcome.values().length];
+        try {
+            for (Future<long[]> result : results) {
+                long[] connectionCounts = result.get();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += connectionCounts[i];
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            threads.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Map<OrderOutcome, Long> outcomes = new EnumMap<>(OrderOutcome.class);
+        long orders = 0;
+        for (OrderOutcome outcome : OrderOutcome.values()) {
+            orders += counts[outcome.ordinal()];
+            if (counts[outcome.ordinal()] > 0) {
+                outcomes.put(outcome, counts[outcome.ordinal()]);
+            }
+        }
+        return new LoadReport(orders, elapsed, outcomes);
+    }
+
+    /**
+     * Keeps one connection's pipeline full until the deadline, then drains it.
+     *
+     * @return responses received per outcome ordinal
+     */
+    private long[] drive(int connection, long deadline) {
+        long[] counts = new long[OrderOutcome.values().length];
+        SplittableRandom random = new SplittableRandom(SEED + connection);
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        int requestBytes = OrderProtocol.requestBytes(itemsPerOrder);
+        try (SocketChannel channel = SocketChannel.open(server)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            long nextRequestId = 0;
+            int outstanding = 0;
+            while (true) {
+                boolean sending = System.nanoTime() < deadline;
+                if (!sending && outstanding == 0) {
+                    return counts;
+                }
+                if (sending) {
+                    while (outstanding < pipelineDepth && out.remaining() >= requestBytes) {
+                        OrderProtocol.putHeader(out, nextRequestId++, MIX[random.nextInt(MIX.length)], itemsPerOrder);
+                        for (int item = 0; item < itemsPerOrder; item++) {
+                            OrderProtocol.putItem(out, random.nextInt(catalogSize), 1);
+                        }
+                        outstanding++;
+                    }
+                    out.flip();
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    out.clear();
+                }
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Server closed the connection with " + outstanding + " requests outstanding");
+                }
+                in.flip();
+                while (in.remaining() >= OrderProtocol.RESPONSE_BYTES) {
+                    in.getLong();
+                    counts[OrderProtocol.outcome(in.get()).ordinal()]++;
+                    outstanding--;
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs a load test against a server and prints the result.
+     *
+     * @param args host, port, catalog size, connections, pipeline depth, items per order, seconds
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 7) {
+            System.err.println("Usage: OrderLoadClient host port catalogSize connections pipelineDepth itemsPerOrder seconds");
+            System.exit(2);
+        }
+        OrderLoadClient client = new OrderLoadClient(new InetSocketAddress(args[0], Integer.parseInt(args[1])),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                Integer.parseInt(args[5]));
+        LoadReport report = client.run(Duration.ofSeconds(Long.parseLong(args[6])));
+        System.out.printf("%d orders in %s: %.0f orders/s %s%n",
+                report.orders(), report.elapsed(), report.ordersPerSecond(), report.outcomes());
+    }
+}
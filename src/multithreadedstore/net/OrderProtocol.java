@@ -0,0 +1,95 @@
+package multithreadedstore.net;
+
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary wire format spoken between an {@link OrderServer} and its clients. All numbers are
+ * big-endian and every field sits at a fixed offset, so both sides encode and decode in place.
+ *
+ * <p>A request frame is
+ * <pre>
+ * int   length      bytes after this field: 11 + 8 * items
+ * long  requestId   chosen by the client, echoed in the response
+ * byte  type        {@link OrderType} ordinal
+ * short items       number of items, at most {@link #MAX_ITEMS}
+ * items times:
+ *   int productId   position of the product in the catalog the server was started with
+ *   int quantity    units of that product, not negative
+ * </pre>
+ * A response is {@link #RESPONSE_BYTES} bytes: the {@code long} request id followed by a
+ * {@code byte} {@link OrderOutcome} ordinal. A client may send many requests without waiting;
+ * responses come back as orders commit, which is not necessarily the order they were sent in.
+ * A server stops reading a connection that has {@link #MAX_IN_FLIGHT} requests it has not answered
+ * yet, so a client must keep reading responses while it has that many outstanding.
+ */
+public final class OrderProtocol {
+
+    /** Bytes of a request frame before its items, including the length field. */
+    public static final int HEADER_BYTES = 15;
+
+    /** Bytes of one item of a request frame. */
+    public static final int ITEM_BYTES = 8;
+
+    /** Bytes of a response. */
+    public static final int RESPONSE_BYTES = 9;
+
+    /** Largest number of items in one request. */
+    public static final int MAX_ITEMS = 1024;
+
+    /** Largest number of requests a connection can have outstanding before the server stops reading it. */
+    public static final int MAX_IN_FLIGHT = 4096;
+
+    private static final OrderOutcome[] OUTCOMES = OrderOutcome.values();
+
+    private OrderProtocol() {
+    }
+
+    /**
+     * Returns the size of a request frame, including its length field.
+     *
+     * @param items number of items in the request
+     */
+    public static int requestBytes(int items) {
+        return HEADER_BYTES + ITEM_BYTES * items;
+    }
+
+    /**
+     * Writes the header of a request frame; exactly {@code items} calls to
+     * {@link #putItem(ByteBuffer, int, int)} must follow.
+     *
+     * @param buffer    buffer to write to at its position
+     * @param requestId id the response will carry
+     * @param type      kind of order
+     * @param items     number of items that follow, at most {@link #MAX_ITEMS}
+     * @throws IllegalArgumentException if there are too many items
+     */
+    public static void putHeader(ByteBuffer buffer, long requestId, OrderType type, int items) {
+        if (items < 0 || items > MAX_ITEMS) {
+            throw new IllegalArgumentException("Between 0 and " + MAX_ITEMS + " items per request");
+        }
+        buffer.putInt(requestBytes(items) - 4).putLong(requestId).put((byte) type.ordinal()).putShort((short) items);
+    }
+
+    /**
+     * Writes one item of a request frame.
+     *
+     * @param buffer    buffer to write to at its position
+     * @param productId position of the product in the server's catalog
+     * @param quantity  units of the product
+     */
+    public static void putItem(ByteBuffer buffer, int productId, int quantity) {
+        buffer.putInt(productId).putInt(quantity);
+    }
+
+    /**
+     * Returns the outcome encoded in a response byte.
+     *
+     * @param code outcome byte of a response
+     */
+    public static OrderOutcome outcome(byte code) {
+        return OUTCOMES[code];
+    }
+}
@@ -0,0 +1,415 @@
+package multithreadedstore.net;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderPool;
+import multithreadedstore.model.OrderType;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.ReservationCancellationOrder;
+import multithreadedstore.model.ReservationCheckoutOrder;
+import multithreadedstore.model.ReservationOrder;
+import multithreadedstore.service.OrderIntake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * TCP front-end that lets external clients submit orders to an {@link OrderIntake} using the
+ * {@link OrderProtocol} wire format.
+ *
+ * <p>One selector thread serves every connection. Requests are decoded straight out of the
+ * connection's pooled direct read buffer into orders taken from per-type {@link OrderPool}s and
+ * handed to {@link OrderIntake#submitAsync(Order)}; nothing else is allocated per request but the
+ * outcome future. A client can pipeline as many requests as it likes: the workers that commit the
+ * orders append each response to the connection's pending buffer and flag the connection, and the
+ * selector thread swaps that buffer out and writes it, so one write carries every response that
+ * came in meanwhile. A connection with {@link OrderProtocol#MAX_IN_FLIGHT} unanswered requests is
+ * not read until responses have gone out, which bounds the memory a slow client can hold.
+ *
+ * <p>An order goes back to its pool as soon as its outcome is known, so the {@link OrderIntake}
+ * must feed a processor that does not retain orders: no result lists, and listeners that only
+ * read them during {@link multithreadedstore.service.OrderListener#onCommit}. Requests naming an
+ * unknown order type or product, or a negative quantity, are answered with
+ * {@link OrderOutcome#INVALID} without being submitted; a malformed frame closes the connection.
+ */
+public class OrderServer implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int POOLED_BUFFERS = 256;
+    private static final int POOLED_ORDERS = 16 * 1024;
+
+    private final OrderIntake intake;
+    private final Product[] catalog;
+    private final List<OrderPool<Order>> pools;
+    private final BufferPool buffers = new BufferPool(BUFFER_BYTES, POOLED_BUFFERS);
+    private final Selector selector;
+    private final ServerSocketChannel acceptor;
+    private final ConcurrentLinkedQueue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    private final LongAdder requests = new LongAdder();
+    private final Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * Creates a server listening on an address; it accepts connections once {@link #start()}ed.
+     *
+     * @param intake  intake to submit decoded orders to
+     * @param catalog products clients refer to by position
+     * @param address address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public OrderServer(OrderIntake intake, List<Product> catalog, InetSocketAddress address) throws IOException {
+        this.intake = intake;
+        this.catalog = catalog.toArray(Product[]::new);
+        this.pools = Arrays.stream(OrderType.values())
+                .map(type -> new OrderPool<>(factoryOf(type), POOLED_ORDERS))
+                .toList();
+        this.selector = Selector.open();
+        this.acceptor = ServerSocketChannel.open();
+        acceptor.bind(address);
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = Thread.ofPlatform().name("order-server").daemon().unstarted(this::run);
+    }
+
+    /**
+     * Starts accepting connections and serving requests.
+     *
+     * @throws IllegalStateException if the server was already started
+     */
+    public void start() {
+        if (running || selectorThread.isAlive()) {
+            throw new IllegalStateException("Server already started");
+        }
+        running = true;
+        selectorThread.start();
+    }
+
+    /**
+     * Returns the address the server listens on, with the actual port if port 0 was asked for.
+     */
+    public InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) acceptor.getLocalAddress();
+    }
+
+    /**
+     * Returns the number of requests decoded so far.
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * Stops serving and closes every connection. Orders already submitted still commit, but their
+     * responses are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection) {
+                connection.close();
+            }
+        }
+        acceptor.close();
+        selector.close();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(this::handle);
+                wakeupRequested.set(false);
+                for (Connection connection; (connection = flushQueue.poll()) != null; ) {
+                    connection.queued.set(false);
+                    connection.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (key.attachment() == null) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = acceptor.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException ignored) {
+            // the client went away before it was accepted
+        }
+    }
+
+    /**
+     * Asks the selector thread to flush a connection, waking it up unless a wakeup is already pending.
+     */
+    private void requestFlush(Connection connection) {
+        if (connection.queued.compareAndSet(false, true)) {
+            flushQueue.offer(connection);
+            if (wakeupRequested.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    private static Supplier<Order> factoryOf(OrderType type) {
+        return switch (type) {
+            case PURCHASE -> Order::new;
+            case RESERVATION -> ReservationOrder::new;
+            case CANCELLATION -> ReservationCancellationOrder::new;
+            case CHECKOUT -> ReservationCheckoutOrder::new;
+        };
+    }
+
+    /**
+     * State of one client connection. Everything but the pending responses belongs to the selector thread.
+     */
+    private final class Connection {
+
+        final SocketChannel channel;
+        final AtomicBoolean queued = new AtomicBoolean();
+        final ReentrantLock pendingLock = new ReentrantLock();
+        SelectionKey key;
+        ByteBuffer in;
+        ByteBuffer out;
+        /** Responses not yet handed to the selector thread; guarded by {@link #pendingLock}. */
+        ByteBuffer pending;
+        /** Submitted orders whose outcome is not known yet; guarded by {@link #pendingLock}. */
+        int submitted;
+        /** True once the connection is closed; guarded by {@link #pendingLock}. */
+        boolean closed;
+        /** Requests decoded but not fully written back. */
+        int inFlight;
+        long bytesWritten;
+        boolean inputShut;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = buffers.acquire();
+            this.out = buffers.acquire().flip();
+            this.pending = buffers.acquire();
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                inputShut = true;
+            }
+            decode();
+            updateInterest();
+        }
+
+        /**
+         * Submits every complete request in the read buffer, up to the in-flight limit.
+         */
+        void decode() {
+            in.flip();
+            try {
+                while (inFlight < OrderProtocol.MAX_IN_FLIGHT && in.remaining() >= 4) {
+                    int start = in.position();
+                    int length = in.getInt(start);
+                    if (length < OrderProtocol.HEADER_BYTES - 4
+                            || length > OrderProtocol.requestBytes(OrderProtocol.MAX_ITEMS) - 4) {
+                        close();
+                        return;
+                    }
+                    if (in.remaining() < 4 + length) {
+                        break;
+                    }
+                    int items = in.getShort(start + 13) & 0xFFFF;
+                    if (length != OrderProtocol.requestBytes(items) - 4) {
+                        close();
+                        return;
+                    }
+                    in.position(start + 4 + length);
+                    inFlight++;
+                    requests.increment();
+                    submit(in.getLong(start + 4), in.get(start + 12), start + OrderProtocol.HEADER_BYTES, items);
+                }
+            } finally {
+                if (channel.isOpen()) {
+                    in.compact();
+                }
+            }
+        }
+
+        /**
+         * Builds the order of one request from the read buffer and submits it.
+         */
+        private void submit(long requestId, int type, int offset, int items) {
+            if (type < 0 || type >= pools.size()) {
+                respond(requestId, OrderOutcome.INVALID, false);
+                return;
+            }
+            OrderPool<Order> pool = pools.get(type);
+            Order order = pool.acquire();
+            for (int i = 0; i < items; i++, offset += OrderProtocol.ITEM_BYTES) {
+                int productId = in.getInt(offset);
+                int quantity = in.getInt(offset + 4);
+                if (productId < 0 || productId >= catalog.length || quantity < 0) {
+                    pool.release(order);
+                    respond(requestId, OrderOutcome.INVALID, false);
+                    return;
+                }
+                order.add(catalog[productId], quantity);
+            }
+            pendingLock.lock();
+            try {
+                submitted++;
+            } finally {
+                pendingLock.unlock();
+            }
+            intake.submitAsync(order).thenAccept(outcome -> {
+                pool.release(order);
+                respond(requestId, outcome, true);
+            });
+        }
+
+        /**
+         * Queues a response for the selector thread to write. Called by workers as orders commit.
+         *
+         * @param submitted true if the response is the outcome of a submitted order
+         */
+        void respond(long requestId, OrderOutcome outcome, boolean submitted) {
+            pendingLock.lock();
+            try {
+                if (submitted) {
+                    this.submitted--;
+                }
+                if (closed) {
+                    if (this.submitted == 0 && pending != null) {
+                        buffers.release(pending);
+                        pending = null;
+                    }
+                    return;
+                }
+                pending.putLong(requestId).put((byte) outcome.ordinal());
+            } finally {
+                pendingLock.unlock();
+            }
+            requestFlush(this);
+        }
+
+        /**
+         * Writes what is left of the current responses, or takes over the pending ones if all were
+         * written, then resumes decoding if responses going out brought the connection below its
+         * in-flight limit.
+         */
+        void flush() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                if (!out.hasRemaining()) {
+                    pendingLock.lock();
+                    try {
+                        ByteBuffer written = out.clear();
+                        out = pending.flip();
+                        pending = written;
+                    } finally {
+                        pendingLock.unlock();
+                    }
+                }
+                long before = bytesWritten / OrderProtocol.RESPONSE_BYTES;
+                bytesWritten += channel.write(out);
+                inFlight -= (int) (bytesWritten / OrderProtocol.RESPONSE_BYTES - before);
+                if (inFlight < OrderProtocol.MAX_IN_FLIGHT && in.position() > 0) {
+                    decode();
+                }
+                if (!channel.isOpen()) {
+                    return;
+                }
+                if (inputShut && inFlight == 0) {
+                    close();
+                    return;
+                }
+                updateInterest();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            if (inputShut && inFlight == 0) {
+                close();
+                return;
+            }
+            int ops = (!inputShut && inFlight < OrderProtocol.MAX_IN_FLIGHT ? SelectionKey.OP_READ : 0)
+                    | (out.hasRemaining() ? SelectionKey.OP_WRITE : 0);
+            key.interestOps(ops);
+        }
+
+        /**
+         * Closes the channel and returns the buffers; the pending buffer is returned by the last
+         * outstanding order, since workers may still append to it.
+         */
+        void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing left to do with the connection
+            }
+            buffers.release(in);
+            buffers.release(out);
+            pendingLock.lock();
+            try {
+                closed = true;
+                if (submitted == 0) {
+                    buffers.release(pending);
+                    pending = null;
+                }
+            } finally {
+                pendingLock.unlock();
+            }
+        }
+    }
+}
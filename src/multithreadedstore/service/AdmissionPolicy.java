@@ -0,0 +1,41 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.OrderType;
+
+/**
+ * What {@link OrderIntake} does with an order that arrives while the transport is full.
+ * Every policy except {@link #BLOCK} keeps the queue, and so the queueing delay of an admitted
+ * order, bounded by refusing work instead of letting it pile up.
+ */
+public enum AdmissionPolicy {
+
+    /** Waits for space. Producers slow down to the speed of the workers; nothing is refused. */
+    BLOCK,
+
+    /** Waits up to the intake's offer timeout for space, then refuses the order. */
+    TIMED_OFFER,
+
+    /** Refuses the order at once if there is no space. */
+    REJECT_FAST,
+
+    /**
+     * Refuses orders of lower-priority types while the queue is still partly empty, keeping the
+     * rest for more valuable work: reservations may fill a quarter of the capacity, purchases half,
+     * cancellations three quarters and checkouts all of it, waiting up to the offer timeout for space.
+     * Checkouts complete sales already held in reserved stock, so they are shed last. On a
+     * {@link LaneTransport} the shares are of each type's own lane.
+     */
+    SHED_BY_TYPE;
+
+    /**
+     * Returns how many quarters of the capacity orders of a type may fill under {@link #SHED_BY_TYPE}.
+     */
+    static int quartersAllowed(OrderType type) {
+        return switch (type) {
+            case RESERVATION -> 1;
+            case PURCHASE -> 2;
+            case CANCELLATION -> 3;
+            case CHECKOUT -> 4;
+        };
+    }
+}
@@ -1,20 +1,28 @@
 package multithreadedstore.service;
 
+import multithreadedstore.model.HeavyHitter;
 import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
 import multithreadedstore.model.Product;
+import multithreadedstore.model.ProductRegistry;
 import multithreadedstore.model.Report;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Provides analytics and summary reports for processed, reserved,
- * and cancelled orders.
+ * and cancelled orders, either from lists of retained orders or from an {@link OrderLog}.
  */
 public class Analytics {
 
+    private static final int TOP_PRODUCTS = 3;
+
     /**
      * Generates a summarized report of all processedOrders orders, including
      * profit, reservation, cancellation counts, and top-selling products.
@@ -33,7 +41,7 @@ public class Analytics {
             Map<Product, Integer> maxReservedByProduct
     ) {
         if (processedOrders == null || processedOrders.isEmpty() || reservedOrders == null || reservedOrders.isEmpty()) {
-            return new Report(0, 0.0, 0, 0, Collections.emptyList(), maxReservedByProduct);
+            return new Report(0, 0.0, 0, 0, Collections.emptyList(), maxReservedByProduct, Collections.emptyList(), 0);
         }
 
         long totalOrders = processedOrders.size();
@@ -43,22 +51,183 @@ public class Analytics {
         long totalCancellations = cancelledOrders.size();
 
         double totalProfit = processedOrders.parallelStream()
-                .flatMap(order -> order.getItems().entrySet().stream())
-                .mapToDouble(entry -> entry.getKey().price() * entry.getValue())
+                .flatMapToDouble(order -> IntStream.range(0, order.size())
+                        .mapToDouble(i -> order.product(i).price() * order.quantity(i)))
                 .sum();
 
         Map<String, Long> salesByProduct = processedOrders.parallelStream()
-                .flatMap(order -> order.getItems().entrySet().stream())
+                .flatMap(order -> IntStream.range(0, order.size())
+                        .mapToObj(i -> Map.entry(order.product(i).name(), (long) order.quantity(i))))
                 .collect(Collectors.groupingBy(
-                        entry -> entry.getKey().name(),
+                        Map.Entry::getKey,
                         Collectors.summingLong(Map.Entry::getValue)));
 
-        List<String> top3Products = salesByProduct.entrySet().stream()
+        List<HeavyHitter> topProducts = salesByProduct.entrySet().stream()
                 .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
                 .limit(3)
-                .map(Map.Entry::getKey)
+                .map(entry -> new HeavyHitter(entry.getKey(), entry.getValue(), 0))
+                .toList();
+
+        List<String> top3Products = topProducts.stream()
+                .map(HeavyHitter::product)
                 .toList();
 
-        return new Report(totalOrders, totalProfit, totalReservations,totalCancellations, top3Products, maxReservedByProduct);
+        return new Report(totalOrders, totalProfit, totalReservations,totalCancellations, top3Products, maxReservedByProduct, topProducts, 0);
+    }
+
+    /**
+     * Generates a report from the history in an order log. Chunks are scanned in parallel, each
+     * in one pass over its primitive columns into a tally sized by the products it sold; the
+     * tallies are then added into one count per product for the whole report. Orders still being
+     * appended may be missed.
+     *
+     * @param log                  history of committed orders
+     * @param maxReservedByProduct map tracking the maximum reserved quantity per product
+     * @return a {@link Report} where purchases and checkouts count as orders
+     */
+    public static Report generateReport(OrderLog log, Map<Product, Integer> maxReservedByProduct) {
+        List<Tally> tallies = log.chunks().parallelStream().map(Tally::of).toList();
+        long[] orders = new long[OrderOutcome.values().length];
+        long[] units = new long[ProductRegistry.size()];
+        long revenueCents = 0;
+        for (Tally tally : tallies) {
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] += tally.ordersByOutcome[i];
+            }
+            tally.addUnitsTo(units);
+            revenueCents += tally.revenueCents;
+        }
+
+        int[] top = new int[TOP_PRODUCTS];
+        int topCount = 0;
+        for (int productId = 0; productId < units.length; productId++) {
+            if (units[productId] == 0 || topCount == TOP_PRODUCTS && units[productId] <= units[top[TOP_PRODUCTS - 1]]) {
+                continue;
+            }
+            int position = Math.min(topCount, TOP_PRODUCTS - 1);
+            while (position > 0 && units[top[position - 1]] < units[productId]) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = productId;
+            topCount = Math.min(topCount + 1, TOP_PRODUCTS);
+        }
+        List<HeavyHitter> topProducts = new ArrayList<>(topCount);
+        for (int i = 0; i < topCount; i++) {
+            topProducts.add(new HeavyHitter(ProductRegistry.product(top[i]).name(), units[top[i]], 0));
+        }
+
+        return new Report(orders[OrderOutcome.PURCHASED.ordinal()] + orders[OrderOutcome.CHECKED_OUT.ordinal()],
+                revenueCents / 100.0,
+                orders[OrderOutcome.RESERVED.ordinal()],
+                orders[OrderOutcome.CANCELLED.ordinal()],
+                topProducts.stream().map(HeavyHitter::product).toList(),
+                maxReservedByProduct, topProducts,
+                orders[OrderOutcome.REJECTED_OVERLOAD.ordinal()]);
+    }
+
+    /**
+     * Counts the orders in an order log that ended with an outcome, including orders without
+     * items. Orders still being appended may be missed.
+     *
+     * @param log     history of committed orders
+     * @param outcome outcome to count
+     * @return number of orders with that outcome
+     */
+    public static long countOrders(OrderLog log, OrderOutcome outcome) {
+        return log.chunks().parallelStream()
+                .mapToLong(chunk -> Tally.of(chunk).ordersByOutcome[outcome.ordinal()])
+                .sum();
+    }
+
+    /**
+     * Order counts, revenue and units sold per product over the rows of one {@link OrderLog} chunk.
+     * Units are kept in an open-addressing table that grows with the number of distinct products
+     * sold, so a chunk costs what it holds rather than the size of the product registry.
+     */
+    private static final class Tally {
+
+        private static final byte PURCHASED = (byte) OrderOutcome.PURCHASED.ordinal();
+        private static final byte CHECKED_OUT = (byte) OrderOutcome.CHECKED_OUT.ordinal();
+        private static final int INITIAL_SLOTS = 16;
+
+        final long[] ordersByOutcome = new long[OrderOutcome.values().length];
+        long revenueCents;
+        private int[] productIds = emptySlots(INITIAL_SLOTS);
+        private long[] units = new long[INITIAL_SLOTS];
+        private int distinct;
+
+        static Tally of(OrderLog.Chunk chunk) {
+            Tally tally = new Tally();
+            int rows = chunk.size();
+            long[] orderIds = chunk.orderIds;
+            byte[] outcomes = chunk.outcomes;
+            int[] productIds = chunk.productIds;
+            int[] quantities = chunk.quantities;
+            long[] priceCents = chunk.priceCents;
+            long revenue = 0;
+            for (int row = 0; row < rows; row++) {
+                if (row == 0 || orderIds[row] != orderIds[row - 1]) {
+                    tally.ordersByOutcome[outcomes[row]]++;
+                }
+                if (outcomes[row] == PURCHASED || outcomes[row] == CHECKED_OUT) {
+                    revenue += priceCents[row] * quantities[row];
+                    if (productIds[row] >= 0) {
+                        tally.addUnits(productIds[row], quantities[row]);
+                    }
+                }
+            }
+            tally.revenueCents = revenue;
+            return tally;
+        }
+
+        /**
+         * Adds the units of every product in this tally to a count per product id, ignoring
+         * products beyond its end.
+         */
+        void addUnitsTo(long[] unitsByProduct) {
+            for (int slot = 0; slot < productIds.length; slot++) {
+                if (productIds[slot] >= 0 && productIds[slot] < unitsByProduct.length) {
+                    unitsByProduct[productIds[slot]] += units[slot];
+                }
+            }
+        }
+
+        private void addUnits(int productId, long quantity) {
+            int mask = productIds.length - 1;
+            int slot = (productId * 0x9E3779B9) >>> 16 & mask;
+            while (productIds[slot] >= 0 && productIds[slot] != productId) {
+                slot = slot + 1 & mask;
+            }
+            if (productIds[slot] < 0) {
+                if (2 * (distinct + 1) > productIds.length) {
+                    grow();
+                    addUnits(productId, quantity);
+                    return;
+                }
+                productIds[slot] = productId;
+                distinct++;
+            }
+            units[slot] += quantity;
+        }
+
+        private void grow() {
+            int[] oldIds = productIds;
+            long[] oldUnits = units;
+            productIds = emptySlots(oldIds.length * 2);
+            units = new long[oldIds.length * 2];
+            distinct = 0;
+            for (int slot = 0; slot < oldIds.length; slot++) {
+                if (oldIds[slot] >= 0) {
+                    addUnits(oldIds[slot], oldUnits[slot]);
+                }
+            }
+        }
+
+        private static int[] emptySlots(int count) {
+            int[] slots = new int[count];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
     }
 }
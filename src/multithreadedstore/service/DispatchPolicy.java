@@ -0,0 +1,22 @@
+package multithreadedstore.service;
+
+/**
+ * How a {@link LaneTransport} chooses the lane the next order is taken from while several lanes
+ * hold orders. Either way a worker never waits while any lane holds an order.
+ */
+public enum DispatchPolicy {
+
+    /**
+     * Serves lanes in proportion to their weights, interleaved evenly: with weights 4 and 1, one
+     * order in five comes from the lighter lane while both are backlogged. A lane that is empty on
+     * its turn gives the turn away in priority order.
+     */
+    WEIGHTED_FAIR,
+
+    /**
+     * Always serves the heaviest lane that holds an order, except that one in every
+     * {@code starvationLimit} turns goes to each lane in rotation, so a lower lane buried under
+     * higher-priority work still makes progress.
+     */
+    STRICT_PRIORITY
+}
@@ -0,0 +1,34 @@
+package multithreadedstore.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Selects the threads customers and warehouse workers run on.
+ */
+public enum ExecutionMode {
+
+    /** A fixed pool of platform threads; concurrency is capped by the pool size. */
+    PLATFORM,
+
+    /**
+     * One virtual thread per task. Blocking a virtual thread frees its carrier, so many thousands
+     * of mostly waiting tasks run on a handful of cores. Waiting code must not pin the carrier,
+     * so shared state is guarded with {@link java.util.concurrent.locks.ReentrantLock} rather
+     * than {@code synchronized}, and transports should wait with {@link WaitStrategy#PARK}.
+     */
+    VIRTUAL;
+
+    /**
+     * Creates an executor for this mode.
+     *
+     * @param name     prefix of the thread names
+     * @param poolSize number of threads of a {@link #PLATFORM} pool; ignored for {@link #VIRTUAL}
+     */
+    ExecutorService newExecutor(String name, int poolSize) {
+        return switch (this) {
+            case PLATFORM -> Executors.newFixedThreadPool(poolSize, Thread.ofPlatform().name(name, 0).factory());
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 0).factory());
+        };
+    }
+}
@@ -0,0 +1,290 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderType;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Order transport with one lane per {@link OrderType}, so a backlog of one type of order does not
+ * hold up the others. Each lane is a bounded {@link RingBufferTransport}: producers of a type
+ * whose lane is full wait or are refused while the other lanes keep accepting orders.
+ *
+ * <p>Consumers take orders across the lanes according to a {@link DispatchPolicy} and per-type
+ * weights. Every poll takes the next turn from a shared counter with an atomic increment, so no
+ * two consumers share a turn and the counter never moves backwards; the turn names the lane the
+ * consumer tries first. A lane that is empty on its turn hands it on to the others by descending
+ * weight, so a consumer only finds the transport empty when every lane is. While every lane holds
+ * orders, the first {@code n} turns therefore take exactly as many orders from each lane as the
+ * policy assigns to them, however many consumers poll at once.
+ *
+ * <p>Under {@link DispatchPolicy#WEIGHTED_FAIR} turns follow a smooth weighted round robin
+ * precomputed from the weights. Under {@link DispatchPolicy#STRICT_PRIORITY} turns go to the
+ * heaviest lane, except that every {@code starvationLimit}-th turn goes to the lanes in rotation,
+ * so a lane holding orders is served at least once every {@code starvationLimit} times the number
+ * of lanes.
+ *
+ * <p>By default checkouts weigh most, since they complete sales already held in reserved stock,
+ * then cancellations, which free stock for others, then purchases, then reservations.
+ *
+ * <p>{@link Order#POISON} does not enter a lane. It is held back and only handed out once a
+ * consumer found every lane empty, so a consumer stopping at the pill leaves no order behind in
+ * any lane.
+ */
+public class LaneTransport implements OrderTransport {
+
+    /** Turns between two rotation turns under {@link DispatchPolicy#STRICT_PRIORITY} by default. */
+    public static final int DEFAULT_STARVATION_LIMIT = 16;
+
+    private static final int MAX_TOTAL_WEIGHT = 1 << 16;
+
+    private final RingBufferTransport[] lanes = new RingBufferTransport[OrderType.values().length];
+    private final DispatchPolicy policy;
+    private final int[] byWeight;
+    private final int[] schedule;
+    private final int starvationLimit;
+    private final WaitStrategy waitStrategy;
+    private final PaddedSequence turns = new PaddedSequence(0);
+    private final AtomicInteger poisons = new AtomicInteger();
+
+    /**
+     * Creates empty lanes with the default weights and starvation limit.
+     *
+     * @param laneCapacity minimum number of orders each lane can hold; rounded up to a power of two
+     * @param policy       how consumers choose among lanes holding orders
+     * @param waitStrategy how threads wait while a lane is full or every lane is empty
+     */
+    public LaneTransport(int laneCapacity, DispatchPolicy policy, WaitStrategy waitStrategy) {
+        this(laneCapacity, policy, defaultWeights(), DEFAULT_STARVATION_LIMIT, waitStrategy);
+    }
+
+    /**
+     * Creates empty lanes.
+     *
+     * @param laneCapacity    minimum number of orders each lane can hold; rounded up to a power of two
+     * @param policy          how consumers choose among lanes holding orders
+     * @param weights         weight of every order type, at least 1: its share of turns under
+     *                        {@link DispatchPolicy#WEIGHTED_FAIR}, its rank under
+     *                        {@link DispatchPolicy#STRICT_PRIORITY}
+     * @param starvationLimit under {@link DispatchPolicy#STRICT_PRIORITY}, one turn in this many
+     *                        goes to the lanes in rotation; ignored under
+     *                        {@link DispatchPolicy#WEIGHTED_FAIR}
+     * @param waitStrategy    how threads wait while a lane is full or every lane is empty
+     */
+    public LaneTransport(int laneCapacity, DispatchPolicy policy, Map<OrderType, Integer> weights,
+                         int starvationLimit, WaitStrategy waitStrategy) {
+        int[] weight = new int[lanes.length];
+        for (OrderType type : OrderType.values()) {
+            Integer value = weights.get(type);
+            if (value == null || value < 1) {
+                throw new IllegalArgumentException("Weight of " + type + " must be at least 1");
+            }
+            weight[type.ordinal()] = value;
+        }
+        if (Arrays.stream(weight).asLongStream().sum() > MAX_TOTAL_WEIGHT) {
+            throw new IllegalArgumentException("Weights must add up to at most " + MAX_TOTAL_WEIGHT);
+        }
+        if (starvationLimit < 1) {
+            throw new IllegalArgumentException("Starvation limit must be at least 1");
+        }
+        Arrays.setAll(lanes, i -> new RingBufferTransport(laneCapacity, waitStrategy));
+        this.policy = policy;
+        this.byWeight = IntStream.range(0, lanes.length).boxed()
+                .sorted((a, b) -> Integer.compare(weight[b], weight[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.schedule = schedule(weight);
+        this.starvationLimit = starvationLimit;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Returns the default weights: 8 for checkouts, 4 for cancellations, 2 for purchases and 1
+     * for reservations.
+     */
+    public static Map<OrderType, Integer> defaultWeights() {
+        Map<OrderType, Integer> weights = new EnumMap<>(OrderType.class);
+        weights.put(OrderType.CHECKOUT, 8);
+        weights.put(OrderType.CANCELLATION, 4);
+        weights.put(OrderType.PURCHASE, 2);
+        weights.put(OrderType.RESERVATION, 1);
+        return weights;
+    }
+
+    /**
+     * Returns the number of orders all lanes hold together when full.
+     */
+    public int capacity() {
+        return laneCapacity() * lanes.length;
+    }
+
+    /**
+     * Returns the number of orders each lane holds when full.
+     */
+    public int laneCapacity() {
+        return lanes[0].capacity();
+    }
+
+    /**
+     * Returns the number of orders of a type currently waiting. May be stale under concurrent use.
+     *
+     * @param type order type whose lane to measure
+     */
+    public int depth(OrderType type) {
+        return lanes[type.ordinal()].size();
+    }
+
+    /**
+     * Returns the number of orders of a type taken from the transport so far.
+     *
+     * @param type order type whose lane to count
+     */
+    public long dispatched(OrderType type) {
+        return lanes[type.ordinal()].dequeued();
+    }
+
+    @Override
+    public void put(Order order) throws InterruptedException {
+        if (order.isPoison()) {
+            poisons.incrementAndGet();
+        } else {
+            lanes[order.type().ordinal()].put(order);
+        }
+    }
+
+    @Override
+    public boolean offer(Order order) {
+        if (order.isPoison()) {
+            poisons.incrementAndGet();
+            return true;
+        }
+        return lanes[order.type().ordinal()].offer(order);
+    }
+
+    @Override
+    public boolean offer(Order order, long timeout, TimeUnit unit) throws InterruptedException {
+        if (order.isPoison()) {
+            poisons.incrementAndGet();
+            return true;
+        }
+        return lanes[order.type().ordinal()].offer(order, timeout, unit);
+    }
+
+    @Override
+    public Order take() throws InterruptedException {
+        int attempt = 0;
+        Order order;
+        while ((order = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            attempt = waitStrategy.idle(attempt);
+        }
+        return order;
+    }
+
+    @Override
+    public Order poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        Order order;
+        while ((order = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            attempt = waitStrategy.idle(attempt);
+        }
+        return order;
+    }
+
+    /**
+     * Dequeues the next order by the dispatch policy if any lane holds one, or a held back
+     * {@link Order#POISON} once every lane is empty, without waiting.
+     *
+     * @return the next order, or null if every lane is empty and no poison pill is pending
+     */
+    public Order poll() {
+        long turn = turns.getAndIncrement();
+        int first = switch (policy) {
+            case WEIGHTED_FAIR -> schedule[(int) (turn % schedule.length)];
+            case STRICT_PRIORITY -> turn % starvationLimit == starvationLimit - 1
+                    ? byWeight[(int) (turn / starvationLimit % lanes.length)]
+                    : byWeight[0];
+        };
+        Order order = lanes[first].poll();
+        for (int i = 0; order == null && i < byWeight.length; i++) {
+            if (byWeight[i] != first) {
+                order = lanes[byWeight[i]].poll();
+            }
+        }
+        return order != null ? order : takePoison();
+    }
+
+    @Override
+    public int drainTo(Collection<? super Order> target, int maxOrders) {
+        int drained = 0;
+        Order order;
+        while (drained < maxOrders && (order = poll()) != null) {
+            target.add(order);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns the number of orders waiting in all lanes; held back poison pills are not counted.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (RingBufferTransport lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns a held back poison pill, or null if none is pending.
+     */
+    private Order takePoison() {
+        int pending;
+        do {
+            pending = poisons.get();
+            if (pending == 0) {
+                return null;
+            }
+        } while (!poisons.compareAndSet(pending, pending - 1));
+        return Order.POISON;
+    }
+
+    /**
+     * Returns one cycle of a smooth weighted round robin over the lanes: each lane appears as often
+     * as its weight, spread as evenly as the weights allow.
+     */
+    private static int[] schedule(int[] weight) {
+        int total = Arrays.stream(weight).sum();
+        int[] schedule = new int[total];
+        int[] credit = new int[weight.length];
+        for (int turn = 0; turn < total; turn++) {
+            int best = 0;
+            for (int lane = 0; lane < weight.length; lane++) {
+                credit[lane] += weight[lane];
+                if (credit[lane] > credit[best]) {
+                    best = lane;
+                }
+            }
+            credit[best] -= total;
+            schedule[turn] = best;
+        }
+        return schedule;
+    }
+}
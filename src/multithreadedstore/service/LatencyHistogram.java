@@ -0,0 +1,87 @@
+package multithreadedstore.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent latency histogram with log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so a percentile read back is within 12.5% of the recorded
+ * value over the whole range of a {@code long}. Recording is one bucket index computation and one
+ * atomic increment and never allocates.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value; negative values count as 0.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(bucketOf(value));
+        if (value > max.getPlain()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Returns count, mean, 50th, 99th and 99.9th percentile and maximum of what was recorded so far.
+     * Values recorded while the snapshot is taken may or may not be included.
+     */
+    LatencyStats snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        double sum = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            count += snapshot[bucket];
+            sum += snapshot[bucket] * (double) (lowerBound(bucket) + upperBound(bucket)) / 2;
+        }
+        return new LatencyStats(count, count == 0 ? 0 : (long) (sum / count),
+                percentile(snapshot, count, 0.5), percentile(snapshot, count, 0.99),
+                percentile(snapshot, count, 0.999), max.get());
+    }
+
+    private long percentile(long[] snapshot, long count, double quantile) {
+        long rank = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(bucket), max.get());
+            }
+        }
+        return 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> exponent - SUB_BUCKET_BITS) & SUB_BUCKETS - 1;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        return lowerBound(bucket) + (1L << bucket / SUB_BUCKETS - 1) - 1;
+    }
+}
@@ -0,0 +1,73 @@
+package multithreadedstore.service;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a latency histogram at one moment, in nanoseconds.
+ * Exposed over JMX as composite data.
+ */
+public final class LatencyStats {
+
+    private final long count;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    /**
+     * Creates a summary.
+     *
+     * @param count     number of recorded values
+     * @param meanNanos mean of the recorded values
+     * @param p50Nanos  median
+     * @param p99Nanos  99th percentile
+     * @param p999Nanos 99.9th percentile
+     * @param maxNanos  largest recorded value
+     */
+    @ConstructorProperties({"count", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+    public LatencyStats(long count, long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /** Returns the number of recorded values. */
+    public long getCount() {
+        return count;
+    }
+
+    /** Returns the mean of the recorded values. */
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    /** Returns the median. */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /** Returns the 99th percentile. */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /** Returns the 99.9th percentile. */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /** Returns the largest recorded value. */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, meanNanos / 1e3, p50Nanos / 1e3, p99Nanos / 1e3, p999Nanos / 1e3, maxNanos / 1e3);
+    }
+}
@@ -0,0 +1,238 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.HeavyHitter;
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.ProductRegistry;
+import multithreadedstore.model.Report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Incremental analytics updated by {@link OrderProcessor} workers as each order commits, and by
+ * {@link OrderIntake} for orders refused under overload.
+ * Revenue and order counts per outcome are kept in striped {@link LongAdder}/{@link DoubleAdder}
+ * counters, so recording never blocks a worker and memory does not grow with the number of orders.
+ * A {@link Report} can be taken at any moment; it reads counters that may still be moving, so it is
+ * not an exact cut across them.
+ *
+ * <p>Best-selling products are tracked in one of two ways:
+ * <ul>
+ *     <li>exact: one units counter per catalog product; a report costs O(products).</li>
+ *     <li>approximate: striped {@link SpaceSaving} summaries of a fixed number of counters,
+ *     merged when a report is taken. Memory and report time stay constant however large the
+ *     catalog and order volume grow, and every estimate comes with an error bound.</li>
+ * </ul>
+ */
+public class LiveAnalytics implements OrderListener {
+
+    private static final int DEFAULT_TOP_PRODUCTS = 3;
+
+    private final int topK;
+    private final DoubleAdder revenue = new DoubleAdder();
+    private final LongAdder[] ordersByOutcome = new LongAdder[OrderOutcome.values().length];
+
+    private final Product[] products;
+    private final int[] slotById;
+    private final LongAdder[] unitsSold;
+
+    private final SpaceSaving[] summaries;
+    private final ReentrantLock[] summaryLocks;
+
+    /**
+     * Creates empty analytics tracking the top 3 products of a catalog exactly.
+     *
+     * @param products products to track
+     */
+    public LiveAnalytics(List<Product> products) {
+        this(products, DEFAULT_TOP_PRODUCTS);
+    }
+
+    /**
+     * Creates empty analytics tracking the top products of a catalog exactly.
+     * Sales of other products count towards revenue but not towards the top products.
+     *
+     * @param products products to track
+     * @param topK     number of best-selling products to report
+     */
+    public LiveAnalytics(List<Product> products, int topK) {
+        this.topK = topK;
+        this.products = products.stream().distinct().toArray(Product[]::new);
+        this.slotById = new int[Arrays.stream(this.products).mapToInt(ProductRegistry::idOf).max().orElse(-1) + 1];
+        Arrays.fill(slotById, -1);
+        this.unitsSold = new LongAdder[this.products.length];
+        for (int slot = 0; slot < this.products.length; slot++) {
+            slotById[ProductRegistry.idOf(this.products[slot])] = slot;
+            unitsSold[slot] = new LongAdder();
+        }
+        this.summaries = null;
+        this.summaryLocks = null;
+        Arrays.setAll(ordersByOutcome, i -> new LongAdder());
+    }
+
+    /**
+     * Creates empty analytics estimating the top products of any catalog in fixed memory.
+     *
+     * @param topK     number of best-selling products to report
+     * @param counters counters per stripe; the error of an estimate is at most units sold / counters
+     * @param stripes  number of independently locked summaries workers spread over
+     */
+    private LiveAnalytics(int topK, int counters, int stripes) {
+        this.topK = topK;
+        this.products = null;
+        this.slotById = null;
+        this.unitsSold = null;
+        this.summaries = new SpaceSaving[stripes];
+        this.summaryLocks = new ReentrantLock[stripes];
+        Arrays.setAll(summaries, i -> new SpaceSaving(counters));
+        Arrays.setAll(summaryLocks, i -> new ReentrantLock());
+        Arrays.setAll(ordersByOutcome, i -> new LongAdder());
+    }
+
+    /**
+     * Creates empty analytics estimating the top products with Space-Saving summaries, one per
+     * available processor.
+     *
+     * @param topK     number of best-selling products to report
+     * @param counters counters per summary, at least {@code topK}; the error of an estimate is at
+     *                 most total units sold / counters
+     */
+    public static LiveAnalytics approximate(int topK, int counters) {
+        if (counters < topK) {
+            throw new IllegalArgumentException("Need at least as many counters as reported products");
+        }
+        return new LiveAnalytics(topK, counters, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void onCommit(Order order, OrderOutcome outcome) {
+        ordersByOutcome[outcome.ordinal()].increment();
+        if (outcome != OrderOutcome.PURCHASED && outcome != OrderOutcome.CHECKED_OUT) {
+            return;
+        }
+        for (int i = 0; i < order.size(); i++) {
+            revenue.add(order.product(i).price() * order.quantity(i));
+        }
+        if (summaries == null) {
+            for (int i = 0; i < order.size(); i++) {
+                int productId = order.productId(i);
+                int slot = productId < slotById.length ? slotById[productId] : -1;
+                if (slot >= 0) {
+                    unitsSold[slot].add(order.quantity(i));
+                }
+            }
+        } else {
+            recordApproximate(order);
+        }
+    }
+
+    /**
+     * Returns the number of committed orders with a given outcome so far.
+     *
+     * @param outcome outcome to count
+     */
+    public long count(OrderOutcome outcome) {
+        return ordersByOutcome[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Summarizes everything recorded so far without blocking workers.
+     *
+     * @param maxReservedByProduct map tracking the maximum reserved quantity per product
+     * @return a {@link Report} where purchases and checkouts count as orders
+     */
+    public Report snapshot(Map<Product, Integer> maxReservedByProduct) {
+        long totalOrders = count(OrderOutcome.PURCHASED) + count(OrderOutcome.CHECKED_OUT);
+        long totalReservations = count(OrderOutcome.RESERVED);
+        long totalCancellations = count(OrderOutcome.CANCELLED);
+
+        List<HeavyHitter> topProducts = summaries == null ? exactTopProducts() : approximateTopProducts();
+        List<String> top3Products = topProducts.stream()
+                .limit(DEFAULT_TOP_PRODUCTS)
+                .map(HeavyHitter::product)
+                .toList();
+        return new Report(totalOrders, revenue.sum(), totalReservations, totalCancellations, top3Products,
+                maxReservedByProduct, topProducts, count(OrderOutcome.REJECTED_OVERLOAD));
+    }
+
+    /**
+     * Adds an order's units to the summary of a stripe chosen by thread, moving on to the next
+     * stripe if that one is busy and only waiting once every stripe was busy.
+     */
+    private void recordApproximate(Order order) {
+        int home = (int) (Thread.currentThread().threadId() % summaries.length);
+        int stripe = home;
+        while (!summaryLocks[stripe].tryLock()) {
+            stripe = (stripe + 1) % summaries.length;
+            if (stripe == home) {
+                summaryLocks[stripe].lock();
+                break;
+            }
+        }
+        try {
+            for (int i = 0; i < order.size(); i++) {
+                summaries[stripe].offer(order.productId(i), order.quantity(i));
+            }
+        } finally {
+            summaryLocks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Selects the top products from the per-product counters in one O(products) pass.
+     */
+    private List<HeavyHitter> exactTopProducts() {
+        int[] top = new int[topK];
+        long[] topUnits = new long[topK];
+        int topCount = 0;
+        for (int slot = 0; slot < products.length; slot++) {
+            long units = unitsSold[slot].sum();
+            if (units == 0 || topCount == topK && units <= topUnits[topK - 1]) {
+                continue;
+            }
+            int position = Math.min(topCount, topK - 1);
+            while (position > 0 && topUnits[position - 1] < units) {
+                top[position] = top[position - 1];
+                topUnits[position] = topUnits[position - 1];
+                position--;
+            }
+            top[position] = slot;
+            topUnits[position] = units;
+            topCount = Math.min(topCount + 1, topK);
+        }
+
+        List<HeavyHitter> topProducts = new ArrayList<>(topCount);
+        for (int i = 0; i < topCount; i++) {
+            topProducts.add(new HeavyHitter(products[top[i]].name(), topUnits[i], 0));
+        }
+        return topProducts;
+    }
+
+    /**
+     * Merges the stripe summaries and reads the top products with their error bounds.
+     */
+    private List<HeavyHitter> approximateTopProducts() {
+        SpaceSaving merged = null;
+        for (int stripe = 0; stripe < summaries.length; stripe++) {
+            summaryLocks[stripe].lock();
+            try {
+                merged = merged == null ? summaries[stripe].copy() : merged.merge(summaries[stripe]);
+            } finally {
+                summaryLocks[stripe].unlock();
+            }
+        }
+
+        List<HeavyHitter> topProducts = new ArrayList<>(topK);
+        for (long[] row : merged.top(topK)) {
+            topProducts.add(new HeavyHitter(ProductRegistry.product((int) row[0]).name(), row[1], row[2]));
+        }
+        return topProducts;
+    }
+}
@@ -1,84 +1,228 @@
 package multithreadedstore.service;
 
 import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderType;
 import multithreadedstore.model.Product;
 import multithreadedstore.model.ReservationCancellationOrder;
 import multithreadedstore.model.ReservationCheckoutOrder;
 import multithreadedstore.model.ReservationOrder;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
  * Generates random customer orders and submits them to a shared queue
- * for processing by worker threads.
+ * for processing by worker threads. Orders go through an {@link OrderIntake},
+ * which may refuse them when the workers cannot keep up.
+ *
+ * <p>What the orders look like is set by a {@link WorkloadProfile}. Orders are either sent as fast
+ * as customers can submit them ({@link #startCustomers(int)}), or at a fixed rate
+ * ({@link #startCustomers(int, double)}). At a fixed rate every order carries the time it was
+ * meant to be sent, so latency can be measured from there: a customer held up by a full queue
+ * does not hide the orders it should have sent in the meantime.
  */
 public class OrderGenerator {
 
+    private static final long SEED_STRIDE = 0x9E3779B97F4A7C15L;
+
     private final List<Product> products;
-    private final BlockingQueue<Order> queue;
+    private final OrderIntake intake;
     private final ExecutorService customers;
+    private final WorkloadProfile profile;
+    private final double[] popularity;
+    private final OrderType[] types;
+    private final double[] typeWeights;
 
     /**
      * Constructs a new {@code OrderGenerator}.
      *
      * @param products       list of products available for orders
-     * @param queue          queue to submit generated orders
+     * @param queue          transport to submit generated orders
      * @param threadPoolSize number of customer threads generating orders
      */
-    public OrderGenerator(List<Product> products, BlockingQueue<Order> queue, int threadPoolSize) {
+    public OrderGenerator(List<Product> products, OrderSink queue, int threadPoolSize) {
+        this(products, queue, threadPoolSize, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * Constructs a new {@code OrderGenerator}.
+     *
+     * @param products       list of products available for orders
+     * @param queue          transport to submit generated orders
+     * @param threadPoolSize number of customer threads generating orders in {@link ExecutionMode#PLATFORM} mode
+     * @param executionMode  whether customers share a fixed pool or each run on their own virtual thread
+     */
+    public OrderGenerator(List<Product> products, OrderSink queue, int threadPoolSize, ExecutionMode executionMode) {
+        this(products, new OrderIntake(queue), threadPoolSize, executionMode);
+    }
+
+    /**
+     * Constructs a new {@code OrderGenerator} whose orders are subject to admission control.
+     *
+     * @param products       list of products available for orders
+     * @param intake         admission control in front of the transport feeding the workers
+     * @param threadPoolSize number of customer threads generating orders in {@link ExecutionMode#PLATFORM} mode
+     * @param executionMode  whether customers share a fixed pool or each run on their own virtual thread
+     */
+    public OrderGenerator(List<Product> products, OrderIntake intake, int threadPoolSize, ExecutionMode executionMode) {
+        this(products, intake, threadPoolSize, executionMode, WorkloadProfile.uniform());
+    }
+
+    /**
+     * Constructs a new {@code OrderGenerator} producing orders of a given shape.
+     *
+     * @param products       list of products available for orders, most popular first
+     * @param intake         admission control in front of the transport feeding the workers
+     * @param threadPoolSize number of customer threads generating orders in {@link ExecutionMode#PLATFORM} mode
+     * @param executionMode  whether customers share a fixed pool or each run on their own virtual thread
+     * @param profile        shape of the generated orders
+     */
+    public OrderGenerator(List<Product> products, OrderIntake intake, int threadPoolSize,
+                          ExecutionMode executionMode, WorkloadProfile profile) {
+        if (products.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one product");
+        }
         this.products = products;
-        this.queue = queue;
-        this.customers = Executors.newFixedThreadPool(threadPoolSize);
+        this.intake = intake;
+        this.customers = executionMode.newExecutor("customer-", threadPoolSize);
+        this.profile = profile;
+
+        this.popularity = new double[products.size()];
+        double total = 0;
+        for (int rank = 0; rank < popularity.length; rank++) {
+            total += Math.pow(rank + 1, -profile.skew());
+            popularity[rank] = total;
+        }
+        this.types = profile.mix().keySet().toArray(OrderType[]::new);
+        this.typeWeights = new double[types.length];
+        total = 0;
+        for (int i = 0; i < types.length; i++) {
+            total += profile.mix().get(types[i]);
+            typeWeights[i] = total;
+        }
     }
 
     /**
-     * Starts threads that generate random orders and submit them to the queue.
-     * Orders can be normal purchases, reservations, checkouts, or cancellations
-     * with randomized probabilities.
+     * Starts threads that generate orders and submit them to the queue as fast as they can.
+     * Every customer waits for its order to be admitted before sending the next one.
      *
      * @param totalOrders total number of orders to generate
      */
     public void startCustomers(int totalOrders) {
         for (int i = 0; i < totalOrders; i++) {
             int orderNumber = i;
+            customers.submit(() -> send(newOrder(orderNumber)));
+        }
+    }
+
+    /**
+     * Starts threads that send orders at a fixed rate, whether or not earlier orders were admitted
+     * yet. Order {@code n} is meant to be sent {@code n / ordersPerSecond} seconds after this call
+     * and is stamped with that time through {@link Order#setIntendedAt(long)}, so
+     * {@link ProcessorMetrics} measures its response time from when it should have been sent.
+     * Customers that fall behind send their late orders at once.
+     *
+     * @param totalOrders     total number of orders to generate
+     * @param ordersPerSecond rate at which orders are meant to be sent
+     */
+    public void startCustomers(int totalOrders, double ordersPerSecond) {
+        if (!(ordersPerSecond > 0)) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        double interval = TimeUnit.SECONDS.toNanos(1) / ordersPerSecond;
+        long start = System.nanoTime();
+        for (int i = 0; i < totalOrders; i++) {
+            int orderNumber = i;
+            long intendedAt = start + (long) (orderNumber * interval);
             customers.submit(() -> {
-                Order order;
-                double random = Math.random();
-                if (random < 0.2) {
-                    order = new ReservationOrder();
-                } else if (random < 0.8) {
-                    order = new Order();
-                } else if (random < 0.8 && orderNumber > 40) {
-                    order = new ReservationCheckoutOrder();
-                } else {
-                    order = new ReservationCancellationOrder();
+                Order order = newOrder(orderNumber);
+                for (long wait; (wait = intendedAt - System.nanoTime()) > 0; ) {
+                    LockSupport.parkNanos(wait);
                 }
-                var product = products.get(ThreadLocalRandom.current().nextInt(products.size()));
-                order.add(product, 1);
-                queue.add(order);
+                order.setIntendedAt(intendedAt);
+                send(order);
             });
         }
     }
 
     /**
-     * Waits for all customer threads to finish generating orders and
-     * then inserts poison pills into the queue to signal workers to stop.
+     * Builds order number {@code orderNumber} of the profile; the same number always gives the same order.
+     */
+    private Order newOrder(int orderNumber) {
+        SplittableRandom random = new SplittableRandom(profile.seed() + orderNumber * SEED_STRIDE);
+        Order order = switch (types[pick(typeWeights, random)]) {
+            case PURCHASE -> new Order();
+            case RESERVATION -> new ReservationOrder();
+            case CANCELLATION -> new ReservationCancellationOrder();
+            case CHECKOUT -> new ReservationCheckoutOrder();
+        };
+        int items = Math.min(geometric(profile.meanItems(), profile.maxItems(), random), products.size());
+        // a product drawn twice keeps its last quantity; hot products make that common, so redraw a few times
+        for (int attempt = 0; order.size() < items && attempt < items * 4; attempt++) {
+            order.add(products.get(pick(popularity, random)),
+                    geometric(profile.meanQuantity(), profile.maxQuantity(), random));
+        }
+        return order;
+    }
+
+    private void send(Order order) {
+        try {
+            intake.submit(order);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the index a random point falls into among cumulative weights.
+     */
+    private static int pick(double[] cumulativeWeights, SplittableRandom random) {
+        double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, point);
+        return Math.min(index >= 0 ? index + 1 : -index - 1, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * Draws from a geometric distribution over 1, 2, 3, ... with the given mean, capped at {@code max}.
+     */
+    private static int geometric(double mean, int max, SplittableRandom random) {
+        if (mean <= 1) {
+            return 1;
+        }
+        double draw = 1 + Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / mean));
+        return (int) Math.min(draw, max);
+    }
+
+    /**
+     * Waits for all customer threads to finish generating orders, after which an
+     * {@link OrderProcessor} can be drained with {@link OrderProcessor#awaitProcessing()}.
      *
-     * @param workerCount number of worker threads that will consume orders
      * @throws InterruptedException if the current thread is interrupted while waiting
      */
-    public void awaitCompletion(int workerCount) throws InterruptedException {
+    public void awaitCompletion() throws InterruptedException {
         customers.shutdown();
-        customers.awaitTermination(1, TimeUnit.MINUTES);
+        while (!customers.awaitTermination(1, TimeUnit.MINUTES)) {
+            // customers sending at a fixed rate can take longer than any fixed timeout
+        }
+    }
 
+    /**
+     * Waits for all customer threads to finish generating orders and then inserts poison pills
+     * into the queue, for consumers written against a fixed pool. An {@link OrderProcessor} drops
+     * them and stops once {@link OrderProcessor#awaitProcessing()} drained it.
+     *
+     * @param workerCount number of worker threads that will consume orders
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void awaitCompletion(int workerCount) throws InterruptedException {
+        awaitCompletion();
         for (int i = 0; i < workerCount; i++) {
-            queue.put(Order.POISON);
+            intake.submit(Order.POISON);
         }
     }
 }
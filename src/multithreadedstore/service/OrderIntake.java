@@ -0,0 +1,189 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of the {@link OrderSink} that feeds an {@link OrderProcessor} or a
+ * {@link PartitionedOrderProcessor}.
+ * Producers {@link #submit(Order)} orders and learn right away whether they were admitted;
+ * under overload the {@link AdmissionPolicy} decides which orders wait and which are refused.
+ *
+ * <p>Refused orders are counted per {@link OrderType} and handed to the registered
+ * {@link OrderListener}s with {@link OrderOutcome#REJECTED_OVERLOAD}, so {@link LiveAnalytics}
+ * counts them in its {@link multithreadedstore.model.Report}.
+ *
+ * <p>{@link #submitAsync(Order)} never waits and returns the order's {@link Order#outcome()}
+ * future, which the worker applying the order completes. A front-end can keep many orders in
+ * flight from one thread and react to each outcome as it arrives.
+ */
+public class OrderIntake {
+
+    private final OrderSink transport;
+    private final int capacity;
+    private final AdmissionPolicy policy;
+    private final long offerTimeoutNanos;
+    private final LongAdder[] rejectedByType = new LongAdder[OrderType.values().length];
+    private volatile OrderListener[] listeners = new OrderListener[0];
+
+    /**
+     * Creates an intake that waits for space, so nothing is refused.
+     *
+     * @param transport transport the workers take orders from
+     */
+    public OrderIntake(OrderSink transport) {
+        this(transport, Integer.MAX_VALUE, AdmissionPolicy.BLOCK, Duration.ZERO);
+    }
+
+    /**
+     * Creates an intake.
+     *
+     * @param transport    transport the workers take orders from
+     * @param capacity     number of orders the transport holds when full; used to share it out by
+     *                     order type under {@link AdmissionPolicy#SHED_BY_TYPE}, except on a
+     *                     {@link LaneTransport}, whose lanes are shared out one by one
+     * @param policy       what to do with orders arriving while the transport is full
+     * @param offerTimeout how long {@link AdmissionPolicy#TIMED_OFFER} and
+     *                     {@link AdmissionPolicy#SHED_BY_TYPE} wait for space
+     */
+    public OrderIntake(OrderSink transport, int capacity, AdmissionPolicy policy, Duration offerTimeout) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        if (offerTimeout.isNegative()) {
+            throw new IllegalArgumentException("Offer timeout cannot be negative");
+        }
+        this.transport = transport;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        Arrays.setAll(rejectedByType, i -> new LongAdder());
+    }
+
+    /**
+     * Registers a listener notified of every refused order.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(OrderListener listener) {
+        OrderListener[] current = listeners;
+        OrderListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Offers an order to the workers according to the admission policy.
+     * {@link Order#POISON} is always admitted, waiting for space if needed. Other orders are
+     * stamped with {@link Order#setEnqueuedAt(long)} so their queueing delay can be measured.
+     *
+     * @param order order to submit
+     * @return true if the order was enqueued, false if it was refused because of overload
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    public boolean submit(Order order) throws InterruptedException {
+        if (order.isPoison()) {
+            transport.put(order);
+            return true;
+        }
+        order.setEnqueuedAt(System.nanoTime());
+        boolean admitted = switch (policy) {
+            case BLOCK -> {
+                transport.put(order);
+                yield true;
+            }
+            case TIMED_OFFER -> transport.offer(order, offerTimeoutNanos, TimeUnit.NANOSECONDS);
+            case REJECT_FAST -> transport.offer(order);
+            case SHED_BY_TYPE -> withinShare(order.type())
+                    && transport.offer(order, offerTimeoutNanos, TimeUnit.NANOSECONDS);
+        };
+        if (!admitted) {
+            refuse(order);
+        }
+        return admitted;
+    }
+
+    /**
+     * Offers an order to the workers without waiting for space. Under every policy an order that
+     * finds the transport full is refused at once; under {@link AdmissionPolicy#SHED_BY_TYPE} an
+     * order beyond its type's share is refused too.
+     *
+     * @param order order to submit, not {@link Order#POISON}
+     * @return the order's outcome: completed by the worker that applies it, or right away with
+     *         {@link OrderOutcome#REJECTED_OVERLOAD} if it was refused
+     */
+    public CompletableFuture<OrderOutcome> submitAsync(Order order) {
+        CompletableFuture<OrderOutcome> outcome = order.outcome();
+        order.setEnqueuedAt(System.nanoTime());
+        boolean admitted = (policy != AdmissionPolicy.SHED_BY_TYPE || withinShare(order.type()))
+                && transport.offer(order);
+        if (!admitted) {
+            refuse(order);
+        }
+        return outcome;
+    }
+
+    /**
+     * Counts a refused order and reports it to the listeners and its submitter. A listener that
+     * throws is reported and does not keep the others, or the submitter, from learning the outcome.
+     */
+    private void refuse(Order order) {
+        rejectedByType[order.type().ordinal()].increment();
+        for (OrderListener listener : listeners) {
+            try {
+                listener.onCommit(order, OrderOutcome.REJECTED_OVERLOAD);
+            } catch (RuntimeException e) {
+                report(e);
+            }
+        }
+        order.complete(OrderOutcome.REJECTED_OVERLOAD);
+    }
+
+    /**
+     * Hands a failure to the calling thread's uncaught exception handler, which prints it by
+     * default, without ending the thread.
+     */
+    private static void report(RuntimeException failure) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+    }
+
+    /**
+     * Returns true if the queue is still below the share of the capacity orders of a type may fill.
+     * On a {@link LaneTransport} the share is of the type's own lane, since that lane is all the
+     * orders of the type can fill.
+     */
+    private boolean withinShare(OrderType type) {
+        int quarters = AdmissionPolicy.quartersAllowed(type);
+        if (quarters == 4) {
+            return true;
+        }
+        if (transport instanceof LaneTransport lanes) {
+            return (long) lanes.depth(type) * 4 < (long) lanes.laneCapacity() * quarters;
+        }
+        return (long) transport.size() * 4 < (long) capacity * quarters;
+    }
+
+    /**
+     * Returns the number of orders of a type refused so far.
+     *
+     * @param type order type to count
+     */
+    public long rejected(OrderType type) {
+        return rejectedByType[type.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of orders refused so far.
+     */
+    public long rejected() {
+        return Arrays.stream(rejectedByType).mapToLong(LongAdder::sum).sum();
+    }
+}
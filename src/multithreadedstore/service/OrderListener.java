@@ -0,0 +1,22 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+
+/**
+ * Receives every order an {@link OrderProcessor} worker has applied to the warehouse.
+ * Called on the worker thread right after the order committed, so implementations must be
+ * thread-safe, cheap and must not block. An {@link OrderIntake} also reports the orders it
+ * refused, with {@link OrderOutcome#REJECTED_OVERLOAD}, on the producer thread.
+ */
+@FunctionalInterface
+public interface OrderListener {
+
+    /**
+     * Called once per applied order, including rejected ones.
+     *
+     * @param order   the applied order
+     * @param outcome what the warehouse did with it
+     */
+    void onCommit(Order order, OrderOutcome outcome);
+}
@@ -0,0 +1,175 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Append-only history of committed orders, stored column by column in primitive arrays.
+ * Register it as an {@link OrderListener}; every item of every order becomes one row holding the
+ * order id, order type, outcome, commit time in epoch milliseconds, product id, quantity and unit
+ * price in cents. An order without items, such as an {@link OrderOutcome#INVALID} one, becomes a
+ * single row with product id -1 and quantity 0, so it is still counted. A row takes 34 bytes,
+ * against well over a hundred for a retained {@link Order} and its item arrays.
+ *
+ * <p>Rows are written into chunks. Every appending thread owns its current chunk, so appends take
+ * no lock and touch no shared cache line except when a chunk fills up and a new one is linked in
+ * with a compare-and-set. A thread's first chunk is small and each next one twice as large, up to
+ * a few thousand rows, and order ids are taken from the shared counter in blocks that grow the same
+ * way, so threads that append a handful of orders cost a handful of rows. Readers such as
+ * {@link Analytics#generateReport(OrderLog, java.util.Map)} scan the chunks' arrays front to back
+ * and see every row whose order was fully appended before the scan reached its chunk; the items
+ * of one order are always in the same chunk.
+ */
+public class OrderLog implements OrderListener {
+
+    /** Rows of a thread's first chunk. */
+    static final int FIRST_CHUNK_ROWS = 64;
+
+    /** Rows per chunk once a thread appended enough: large enough for cheap scans. */
+    static final int CHUNK_ROWS = 4096;
+
+    /** Order ids a thread first takes from the shared counter at once. */
+    private static final int FIRST_ID_BLOCK = 16;
+
+    /** Most order ids a thread takes from the shared counter at once. */
+    private static final int ID_BLOCK = 1024;
+
+    private final AtomicReference<Chunk> newest = new AtomicReference<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final ThreadLocal<Appender> appenders = ThreadLocal.withInitial(Appender::new);
+
+    @Override
+    public void onCommit(Order order, OrderOutcome outcome) {
+        appenders.get().append(order, outcome);
+    }
+
+    /**
+     * Returns the number of rows appended so far, one per order item and one per order without items.
+     */
+    public long rows() {
+        long rows = 0;
+        for (Chunk chunk = newest.get(); chunk != null; chunk = chunk.previous) {
+            rows += chunk.size();
+        }
+        return rows;
+    }
+
+    /**
+     * Returns every chunk appended to so far, oldest first.
+     */
+    List<Chunk> chunks() {
+        List<Chunk> chunks = new ArrayList<>();
+        for (Chunk chunk = newest.get(); chunk != null; chunk = chunk.previous) {
+            chunks.add(chunk);
+        }
+        Collections.reverse(chunks);
+        return chunks;
+    }
+
+    /**
+     * Columns of up to {@code capacity} rows, written by one thread and readable by any.
+     * Rows below {@link #size()} are complete and never change.
+     */
+    static final class Chunk {
+
+        private static final VarHandle SIZE;
+
+        static {
+            try {
+                SIZE = MethodHandles.lookup().findVarHandle(Chunk.class, "size", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final long[] orderIds;
+        final byte[] types;
+        final byte[] outcomes;
+        final long[] timestamps;
+        final int[] productIds;
+        final int[] quantities;
+        final long[] priceCents;
+        private volatile int size;
+        private Chunk previous;
+
+        Chunk(int capacity) {
+            orderIds = new long[capacity];
+            types = new byte[capacity];
+            outcomes = new byte[capacity];
+            timestamps = new long[capacity];
+            productIds = new int[capacity];
+            quantities = new int[capacity];
+            priceCents = new long[capacity];
+        }
+
+        /**
+         * Returns the number of complete rows.
+         */
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return orderIds.length;
+        }
+    }
+
+    /**
+     * Per-thread state: the chunk this thread appends to and its current block of order ids, each
+     * twice the size of the previous one up to its limit.
+     */
+    private final class Appender {
+
+        private Chunk chunk;
+        private int chunkRows = FIRST_CHUNK_ROWS;
+        private long nextId;
+        private long idLimit;
+        private int idBlock = FIRST_ID_BLOCK;
+
+        void append(Order order, OrderOutcome outcome) {
+            int items = order.size();
+            int rows = Math.max(items, 1);
+            int row = chunk == null ? 0 : chunk.size();
+            if (chunk == null || row + rows > chunk.capacity()) {
+                chunk = link(new Chunk(Math.max(chunkRows, rows)));
+                chunkRows = Math.min(chunkRows * 2, CHUNK_ROWS);
+                row = 0;
+            }
+            if (nextId == idLimit) {
+                nextId = OrderLog.this.nextId.getAndAdd(idBlock);
+                idLimit = nextId + idBlock;
+                idBlock = Math.min(idBlock * 2, ID_BLOCK);
+            }
+            long orderId = nextId++;
+            byte type = (byte) order.type().ordinal();
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < rows; i++, row++) {
+                chunk.orderIds[row] = orderId;
+                chunk.types[row] = type;
+                chunk.outcomes[row] = (byte) outcome.ordinal();
+                chunk.timestamps[row] = timestamp;
+                chunk.productIds[row] = items == 0 ? -1 : order.productId(i);
+                chunk.quantities[row] = items == 0 ? 0 : order.quantity(i);
+                chunk.priceCents[row] = items == 0 ? 0 : Math.round(order.product(i).price() * 100);
+            }
+            Chunk.SIZE.setRelease(chunk, row);
+        }
+
+        private Chunk link(Chunk fresh) {
+            Chunk previous;
+            do {
+                previous = newest.get();
+                fresh.previous = previous;
+            } while (!newest.compareAndSet(previous, fresh));
+            return fresh;
+        }
+    }
+}
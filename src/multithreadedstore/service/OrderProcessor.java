@@ -1,91 +1,383 @@
 package multithreadedstore.service;
 
+import multithreadedstore.model.Inventory;
 import multithreadedstore.model.Order;
-import multithreadedstore.model.Warehouse;
+import multithreadedstore.model.OrderOutcome;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Handles concurrent order processing using a pool of worker threads.
- * Each worker takes orders from a blocking queue and updates the shared
- * {@link Warehouse} accordingly. The processor supports normal, reservation,
- * checkout, and cancellation orders.
+ * Each worker takes orders from an {@link OrderTransport} and updates the shared
+ * {@link Inventory} accordingly: a single warehouse or a router over several.
+ * The inventory operations are atomic on their own,
+ * so workers handling orders for different products run in parallel.
+ * The processor supports normal, reservation, checkout, and cancellation orders.
+ *
+ * <p>With a batch size above one, a worker drains up to that many queued orders at once,
+ * applies them to the warehouse in one pass and appends the results in bulk, so a burst
+ * of orders shares one wakeup, one round of warehouse locking and one list append.
+ *
+ * <p>Every applied order is also handed to the registered {@link OrderListener}s, such as
+ * {@link LiveAnalytics}. When those are all that is needed, the result lists can be null and
+ * no order is retained after it committed; an {@link OrderLog} keeps a compact history instead.
+ * Once the listeners have seen an order, the worker completes its {@link Order#outcome()}
+ * future, so submitters learn the outcome without another thread being involved. A listener that
+ * throws is reported to the worker's uncaught exception handler and the others still see the order;
+ * if applying a batch throws, the failure is reported the same way, the futures of its orders
+ * complete exceptionally and the worker carries on with the next batch.
+ *
+ * <p>Workers stamp every order with {@link Order#setDequeuedAt(long)} when they take it, so
+ * listeners such as {@link ProcessorMetrics} can measure queueing and service latency.
+ *
+ * <p>An elastic processor runs between a minimum and a maximum number of workers. Every few
+ * milliseconds it compares the queue depth and the mean time orders took from intake to commit
+ * with what its workers can absorb, and starts another worker while either is too high; a worker
+ * that found nothing to do for {@link #IDLE_TIMEOUT} retires while more than the minimum are
+ * running. {@link #awaitProcessing()} drains: once it was called, workers keep going until the
+ * transport is empty and then stop, so no poison pills are needed. Only it starts the drain; poison
+ * pills taken from the transport, put by producers written against a fixed pool, are dropped.
  */
 public class OrderProcessor {
 
-    private final Warehouse warehouse;
-    private final BlockingQueue<Order> queue;
+    /** How long a worker of an elastic processor waits for orders before it retires. */
+    public static final Duration IDLE_TIMEOUT = Duration.ofMillis(200);
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SCALE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Inventory inventory;
+    private final OrderTransport queue;
     private final List<Order> processedOrders;
     private final List<Order> reservedOrders;
     private final List<Order> cancelledOrders;
     private final ExecutorService workers;
+    private final int batchSize;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final long targetLatencyNanos;
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private volatile boolean draining;
+    private ScheduledExecutorService scaler;
+    private volatile OrderListener[] listeners = new OrderListener[0];
 
     /**
-     * Constructs a new {@code OrderProcessor}.
+     * Constructs a new {@code OrderProcessor} that handles one order at a time.
      *
-     * @param warehouse        warehouse to update
-     * @param orderQueue       queue supplying orders to process
-     * @param processedOrders  list to collect successfully processed orders
-     * @param reservedOrders   list to collect successfully reserved orders
-     * @param cancelledOrders  list to collect successfully cancelled reservations
+     * @param inventory        warehouse or router to update
+     * @param orderQueue       transport supplying orders to process
+     * @param processedOrders  list to collect successfully processed orders, or null
+     * @param reservedOrders   list to collect successfully reserved orders, or null
+     * @param cancelledOrders  list to collect successfully cancelled reservations, or null
      * @param workerCount      number of worker threads to run
      */
-    public OrderProcessor(Warehouse warehouse, BlockingQueue<Order> orderQueue,
+    public OrderProcessor(Inventory inventory, OrderTransport orderQueue,
                           List<Order> processedOrders, List<Order> reservedOrders,
                           List<Order> cancelledOrders, int workerCount) {
-        this.warehouse = warehouse;
+        this(inventory, orderQueue, processedOrders, reservedOrders, cancelledOrders, workerCount, 1,
+                ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * Constructs a new {@code OrderProcessor} with a fixed number of workers.
+     *
+     * @param inventory        warehouse or router to update
+     * @param orderQueue       transport supplying orders to process
+     * @param processedOrders  list to collect successfully processed orders, or null
+     * @param reservedOrders   list to collect successfully reserved orders, or null
+     * @param cancelledOrders  list to collect successfully cancelled reservations, or null
+     * @param workerCount      number of worker threads to run
+     * @param batchSize        maximum number of orders a worker drains and applies at once
+     * @param executionMode    whether workers share a fixed pool or each run on their own virtual thread
+     */
+    public OrderProcessor(Inventory inventory, OrderTransport orderQueue,
+                          List<Order> processedOrders, List<Order> reservedOrders,
+                          List<Order> cancelledOrders, int workerCount, int batchSize,
+                          ExecutionMode executionMode) {
+        this(inventory, orderQueue, processedOrders, reservedOrders, cancelledOrders,
+                workerCount, workerCount, batchSize, executionMode, Duration.ZERO);
+    }
+
+    /**
+     * Constructs an elastic {@code OrderProcessor} that reports outcomes to listeners only.
+     *
+     * @param inventory     warehouse or router to update
+     * @param orderQueue    transport supplying orders to process
+     * @param minWorkers    number of workers kept running however idle, at least 1
+     * @param maxWorkers    number of workers never exceeded under load
+     * @param batchSize     maximum number of orders a worker drains and applies at once
+     * @param executionMode whether workers share a pool of {@code maxWorkers} threads or each run
+     *                      on their own virtual thread
+     * @param targetLatency mean time from intake to commit above which another worker is started;
+     *                      zero to scale on queue depth only
+     */
+    public OrderProcessor(Inventory inventory, OrderTransport orderQueue, int minWorkers, int maxWorkers,
+                          int batchSize, ExecutionMode executionMode, Duration targetLatency) {
+        this(inventory, orderQueue, null, null, null, minWorkers, maxWorkers, batchSize, executionMode,
+                targetLatency);
+    }
+
+    private OrderProcessor(Inventory inventory, OrderTransport orderQueue,
+                           List<Order> processedOrders, List<Order> reservedOrders,
+                           List<Order> cancelledOrders, int minWorkers, int maxWorkers, int batchSize,
+                           ExecutionMode executionMode, Duration targetLatency) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        if (minWorkers < 1 || maxWorkers < minWorkers) {
+            throw new IllegalArgumentException("Need 1 <= min workers <= max workers");
+        }
+        if (targetLatency.isNegative()) {
+            throw new IllegalArgumentException("Target latency cannot be negative");
+        }
+        this.inventory = inventory;
         this.queue = orderQueue;
         this.processedOrders = processedOrders;
         this.reservedOrders = reservedOrders;
         this.cancelledOrders = cancelledOrders;
-        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.workers = executionMode.newExecutor("worker-", maxWorkers);
+        this.batchSize = batchSize;
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        this.targetLatencyNanos = targetLatency.toNanos();
+    }
+
+    /**
+     * Registers a listener notified of every applied order. Must be called before {@link #startWorkers(int)}.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(OrderListener listener) {
+        OrderListener[] current = listeners;
+        OrderListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
     }
 
     /**
-     * Starts worker threads that continuously consume and process orders
-     * from the queue until a poison order is encountered.
+     * Starts worker threads that consume and process orders from the queue until
+     * {@link #awaitProcessing()} drains it. An elastic processor also starts adjusting its
+     * number of workers.
      *
-     * @param count number of worker threads to start
+     * @param count number of worker threads to start, between the minimum and maximum number of workers
      */
     public void startWorkers(int count) {
+        if (count < minWorkers || count > maxWorkers) {
+            throw new IllegalArgumentException("Worker count must be between " + minWorkers + " and " + maxWorkers);
+        }
         for (int i = 0; i < count; i++) {
-            workers.submit(() -> {
-                try {
-                    while (true) {
-                        Order order = queue.take();
-                        if (order.isPoison()) break;
-
-                        synchronized (warehouse) {
-                            if (order.isReservationOrder() && warehouse.reserveProduct(order)) {
-                                reservedOrders.add(order);
-                            } else if (order.isReservationCancellationOrder() && warehouse.cancelReservation(order)) {
-                                cancelledOrders.add(order);
-                            } else if (order.isReservationCheckoutOrder() && warehouse.checkoutReservation(order)) {
-                                processedOrders.add(order);
-                            } else if (warehouse.process(order)) {
-                                processedOrders.add(order);
-                            }
-                        }
-                    }
-                } catch (InterruptedException ignored) {
-                    Thread.currentThread().interrupt();
-                }
-            });
+            running.incrementAndGet();
+            workers.submit(this::work);
+        }
+        if (isElastic()) {
+            scaler = Executors.newSingleThreadScheduledExecutor(
+                    runnable -> Thread.ofPlatform().name("worker-scaler").daemon().unstarted(runnable));
+            scaler.scheduleAtFixedRate(this::scale, SCALE_PERIOD_NANOS, SCALE_PERIOD_NANOS, TimeUnit.NANOSECONDS);
         }
     }
 
     /**
-     * Waits for all workers to finish processing queued orders.
+     * Returns the number of workers currently running.
+     */
+    public int workerCount() {
+        return running.get();
+    }
+
+    /**
+     * Drains the processor: waits until the transport is empty and every order taken from it has
+     * committed, then stops the workers. Call once producers stopped submitting; orders submitted
+     * after the workers stopped are not processed.
      *
      * @throws InterruptedException if interrupted while waiting
      */
     public void awaitProcessing() throws InterruptedException {
+        draining = true;
+        if (scaler != null) {
+            scaler.shutdownNow();
+            while (!scaler.awaitTermination(1, TimeUnit.MINUTES)) {
+                // a scaling round in progress may still start a worker; the pool must accept it
+            }
+        }
         workers.shutdown();
-        workers.awaitTermination(1, TimeUnit.SECONDS);
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            // a large backlog can take longer than any fixed timeout; workers stop once it is gone
+        }
+    }
+
+    private boolean isElastic() {
+        return maxWorkers > minWorkers;
     }
-}
 
+    /**
+     * Starts one more worker if the queue holds more than the running workers take in one round,
+     * or orders took longer than the target from intake to commit since the last check.
+     */
+    private void scale() {
+        long count = latencyCount.sumThenReset();
+        long sum = latencySum.sumThenReset();
+        long meanLatency = count == 0 ? 0 : sum / count;
+        int current = running.get();
+        boolean behind = queue.size() > current * batchSize
+                || targetLatencyNanos > 0 && meanLatency > targetLatencyNanos;
+        if (behind && !draining && current < maxWorkers && running.compareAndSet(current, current + 1)) {
+            workers.submit(this::work);
+        }
+    }
+
+    /**
+     * Leaves the pool if more than the minimum number of workers are running.
+     *
+     * @return true if the calling worker should stop
+     */
+    private boolean retire() {
+        int current;
+        do {
+            current = running.get();
+            if (current <= minWorkers) {
+                return false;
+            }
+        } while (!running.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    /**
+     * Worker loop draining up to {@code batchSize} orders at a time and applying them in one pass,
+     * until the processor drains and the queue is empty, or the worker retires after idling.
+     * The worker leaves the running count however it stops.
+     */
+    private void work() {
+        List<Order> batch = new ArrayList<>(batchSize);
+        OrderOutcome[] outcomes = new OrderOutcome[batchSize];
+        List<Order> processed = new ArrayList<>(batchSize);
+        List<Order> reserved = new ArrayList<>(batchSize);
+        List<Order> cancelled = new ArrayList<>(batchSize);
+        long idleSince = System.nanoTime();
+        boolean retired = false;
+        try {
+            while (true) {
+                Order first = queue.poll(POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    if (draining && queue.size() == 0) {
+                        break;
+                    }
+                    if (System.nanoTime() - idleSince >= IDLE_TIMEOUT.toNanos() && retire()) {
+                        retired = true;
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                if (batchSize > 1) {
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                batch.removeIf(Order::isPoison);
+                if (!batch.isEmpty()) {
+                    try {
+                        apply(batch, outcomes, processed, reserved, cancelled);
+                    } catch (RuntimeException e) {
+                        report(e);
+                        for (Order order : batch) {
+                            order.fail(e);
+                        }
+                        processed.clear();
+                        reserved.clear();
+                        cancelled.clear();
+                    }
+                    batch.clear();
+                }
+                idleSince = System.nanoTime();
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!retired) {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of orders, appends the results and notifies listeners and submitters.
+     */
+    private void apply(List<Order> batch, OrderOutcome[] outcomes, List<Order> processed,
+                       List<Order> reserved, List<Order> cancelled) {
+        long dequeuedAt = System.nanoTime();
+        for (Order order : batch) {
+            order.setDequeuedAt(dequeuedAt);
+        }
+        if (batch.size() == 1) {
+            outcomes[0] = inventory.apply(batch.get(0));
+        } else {
+            inventory.applyBatch(batch, outcomes);
+        }
+        if (isElastic()) {
+            long committedAt = System.nanoTime();
+            for (Order order : batch) {
+                if (order.getEnqueuedAt() != 0) {
+                    latencySum.add(committedAt - order.getEnqueuedAt());
+                    latencyCount.increment();
+                }
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Order order = batch.get(i);
+            switch (outcomes[i]) {
+                case RESERVED -> reserved.add(order);
+                case CANCELLED -> cancelled.add(order);
+                case PURCHASED, CHECKED_OUT -> processed.add(order);
+                case INSUFFICIENT_STOCK, INSUFFICIENT_RESERVED, INVALID, REJECTED_OVERLOAD -> { }
+            }
+            notifyListeners(order, outcomes[i]);
+        }
+        appendAll(processedOrders, processed);
+        appendAll(reservedOrders, reserved);
+        appendAll(cancelledOrders, cancelled);
+    }
+
+    /**
+     * Hands an outcome to every listener and completes the order's future. A failing listener is
+     * reported and does not keep the others, or the submitter, from learning the outcome.
+     */
+    private void notifyListeners(Order order, OrderOutcome outcome) {
+        for (OrderListener listener : listeners) {
+            try {
+                listener.onCommit(order, outcome);
+            } catch (RuntimeException e) {
+                report(e);
+            }
+        }
+        order.complete(outcome);
+    }
+
+    /**
+     * Hands a failure to the calling thread's uncaught exception handler, which prints it by
+     * default, without ending the thread.
+     */
+    private static void report(RuntimeException failure) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+    }
+
+    /**
+     * Appends a worker's local results to a shared result list in one call and clears them.
+     */
+    private static void appendAll(List<Order> target, List<Order> results) {
+        if (!results.isEmpty()) {
+            if (target != null) {
+                target.addAll(results);
+            }
+            results.clear();
+        }
+    }
+}
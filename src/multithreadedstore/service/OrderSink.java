@@ -0,0 +1,46 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer side of order processing: where {@link OrderIntake} and other producers put orders.
+ * An {@link OrderTransport} is a sink consumers take orders from; a
+ * {@link PartitionedOrderProcessor}'s intake is a sink routing orders straight to the partitions.
+ * Implementations must be safe for any number of concurrent producers.
+ */
+public interface OrderSink {
+
+    /**
+     * Enqueues an order, waiting for space if the transport is bounded and full.
+     *
+     * @param order order to enqueue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put(Order order) throws InterruptedException;
+
+    /**
+     * Enqueues an order if there is space, without waiting.
+     *
+     * @param order order to enqueue
+     * @return false if the transport is full
+     */
+    boolean offer(Order order);
+
+    /**
+     * Enqueues an order, waiting up to a timeout for space if the transport is bounded and full.
+     *
+     * @param order   order to enqueue
+     * @param timeout how long to wait for space
+     * @param unit    unit of {@code timeout}
+     * @return false if the transport was still full when the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean offer(Order order, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns the number of orders currently waiting. May be stale under concurrent use.
+     */
+    int size();
+}
@@ -0,0 +1,87 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands orders from producers ({@link OrderGenerator}) to consumers ({@link OrderProcessor}):
+ * an {@link OrderSink} that consumers can also take orders from.
+ * Implementations must be safe for any number of concurrent producers and consumers and
+ * deliver {@link Order#POISON} like any other order.
+ */
+public interface OrderTransport extends OrderSink {
+
+    /**
+     * Dequeues the next order, waiting until one is available.
+     *
+     * @return the next order
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Order take() throws InterruptedException;
+
+    /**
+     * Dequeues the next order, waiting up to a timeout for one to become available.
+     *
+     * @param timeout how long to wait
+     * @param unit    unit of {@code timeout}
+     * @return the next order, or null if none arrived before the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Order poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Moves up to {@code maxOrders} immediately available orders into a collection without waiting.
+     *
+     * @param target    collection receiving the orders in dequeue order
+     * @param maxOrders maximum number of orders to move
+     * @return number of orders moved
+     */
+    int drainTo(Collection<? super Order> target, int maxOrders);
+
+    /**
+     * Adapts a {@link BlockingQueue} to an {@code OrderTransport}.
+     *
+     * @param queue queue to wrap
+     */
+    static OrderTransport of(BlockingQueue<Order> queue) {
+        return new OrderTransport() {
+            @Override
+            public void put(Order order) throws InterruptedException {
+                queue.put(order);
+            }
+
+            @Override
+            public boolean offer(Order order) {
+                return queue.offer(order);
+            }
+
+            @Override
+            public boolean offer(Order order, long timeout, TimeUnit unit) throws InterruptedException {
+                return queue.offer(order, timeout, unit);
+            }
+
+            @Override
+            public Order take() throws InterruptedException {
+                return queue.take();
+            }
+
+            @Override
+            public Order poll(long timeout, TimeUnit unit) throws InterruptedException {
+                return queue.poll(timeout, unit);
+            }
+
+            @Override
+            public int drainTo(Collection<? super Order> target, int maxOrders) {
+                return queue.drainTo(target, maxOrders);
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package multithreadedstore.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Padding before the value of a {@link PaddedSequence}.
+ */
+abstract class LeftPad {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * The value of a {@link PaddedSequence}.
+ */
+abstract class SequenceValue extends LeftPad {
+    volatile long value;
+}
+
+/**
+ * A volatile {@code long} counter padded on both sides to its own cache line, so counters
+ * written by different threads (like the head and tail of a ring buffer) do not false-share.
+ */
+class PaddedSequence extends SequenceValue {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    PaddedSequence(long initialValue) {
+        value = initialValue;
+    }
+
+    long get() {
+        return value;
+    }
+
+    boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    long getAndIncrement() {
+        return (long) VALUE.getAndAdd(this, 1L);
+    }
+
+    void setRelease(long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+}
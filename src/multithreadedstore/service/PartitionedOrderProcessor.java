@@ -0,0 +1,639 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderType;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.ProductRegistry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Order processing where every product is owned by exactly one worker, as an alternative to an
+ * {@link OrderProcessor} whose workers all share one {@link multithreadedstore.model.Inventory}.
+ *
+ * <p>Products are hash-partitioned over the workers. Each partition keeps the stock, reserved stock
+ * and maximum reserved quantity of its products in plain arrays that only its own thread ever
+ * touches, and has its own bounded inbox, a {@link RingBufferTransport} its thread is the only
+ * consumer of. Producers put orders into {@link #intake()}, which routes them straight to the
+ * inbox of the partition owning their products, so an order whose products all live in one
+ * partition is applied without any lock or atomic operation on stock.
+ *
+ * <p>An order spanning several partitions goes to the inbox of the lowest partition involved,
+ * which splits it into one part per partition and commits it with a vote: every partition takes
+ * the taking half of the operation (stock for purchases and reservations, reserved stock for
+ * checkouts and cancellations) from its part if it can, and the partition casting the last vote
+ * decides. If every part was taken it sends the receiving half (reserved stock of a reservation,
+ * stock of a cancellation) to the partitions; otherwise it sends the taken parts back and, like
+ * {@link multithreadedstore.model.Warehouse}, falls back to a regular purchase. Partitions never
+ * wait for each other; all coordination is messages on a lock-free queue per partition, which
+ * delivers in order, so a give-back always lands before the retried purchase. A partition has at
+ * most as many votes open as its inbox holds orders and takes no order while that many are open,
+ * so split orders wait for space like any other and the message queues stay bounded.
+ *
+ * <p>{@link #awaitProcessing()} drains: partitions keep going until every accepted order and
+ * every message has been handled, then stop, so no poison pills are needed.
+ *
+ * <p>Outcomes are only reported to {@link OrderListener}s and through {@link Order#outcome()}. Stock can be read once
+ * {@link #awaitProcessing()} returned.
+ */
+public class PartitionedOrderProcessor {
+
+    private final Partition[] partitions;
+    private final int[] partitionById;
+    private final int[] slotById;
+    private final int inboxCapacity;
+    private final ExecutorService workers;
+    /** Orders accepted but not yet committed, plus messages sent but not yet handled. */
+    private final AtomicLong inFlight = new AtomicLong();
+    private final OrderSink intake = new Intake();
+    private volatile boolean draining;
+    private volatile OrderListener[] listeners = new OrderListener[0];
+
+    /**
+     * Creates a processor; call {@link #start()} to run its partitions.
+     *
+     * @param products       products to stock
+     * @param initialStock   starting quantity of every product
+     * @param partitionCount number of partitions, each with its own worker thread
+     * @param inboxCapacity  minimum number of orders a partition's inbox holds before producers
+     *                       wait, rounded up to a power of two; also the number of split orders a
+     *                       partition coordinates at once
+     * @param executionMode  whether partitions run on platform or virtual threads
+     */
+    public PartitionedOrderProcessor(List<Product> products, int initialStock, int partitionCount,
+                                     int inboxCapacity, ExecutionMode executionMode) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Need at least one partition");
+        }
+        if (inboxCapacity < 1) {
+            throw new IllegalArgumentException("Inbox capacity must be at least 1");
+        }
+        Product[] catalog = products.stream().distinct().toArray(Product[]::new);
+        int maxId = Arrays.stream(catalog).mapToInt(ProductRegistry::idOf).max().orElse(-1);
+        this.partitionById = new int[maxId + 1];
+        this.slotById = new int[maxId + 1];
+        Arrays.fill(partitionById, -1);
+
+        int[] sizes = new int[partitionCount];
+        for (Product product : catalog) {
+            int id = ProductRegistry.idOf(product);
+            int partition = partitionOf(id, partitionCount);
+            partitionById[id] = partition;
+            slotById[id] = sizes[partition]++;
+        }
+        this.partitions = new Partition[partitionCount];
+        for (int p = 0; p < partitionCount; p++) {
+            partitions[p] = new Partition(sizes[p], initialStock, inboxCapacity);
+        }
+        for (Product product : catalog) {
+            int id = ProductRegistry.idOf(product);
+            partitions[partitionById[id]].products[slotById[id]] = product;
+        }
+        this.inboxCapacity = inboxCapacity;
+        this.workers = executionMode.newExecutor("partition-", partitionCount);
+    }
+
+    /**
+     * Returns the sink producers put orders into. It routes every order to the inbox of the
+     * partitions owning its products, waiting while that inbox is full. {@link Order#POISON} is
+     * accepted and ignored; {@link #awaitProcessing()} stops the partitions.
+     */
+    public OrderSink intake() {
+        return intake;
+    }
+
+    /**
+     * Returns the number of orders the partitions' inboxes hold together when full.
+     */
+    public int capacity() {
+        return partitions[0].inbox.capacity() * partitions.length;
+    }
+
+    /**
+     * Returns the number of partitions.
+     */
+    public int partitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Registers a listener notified of every applied order. Must be called before {@link #start()}.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(OrderListener listener) {
+        OrderListener[] current = listeners;
+        OrderListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Starts one worker per partition.
+     */
+    public void start() {
+        for (Partition partition : partitions) {
+            workers.submit(partition);
+        }
+    }
+
+    /**
+     * Drains the processor: waits until every accepted order has committed, then stops the
+     * partitions. Call once producers stopped submitting; orders submitted after the partitions
+     * stopped are not processed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitProcessing() throws InterruptedException {
+        draining = true;
+        workers.shutdown();
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            // a large backlog can take longer than any fixed timeout; partitions stop once it is gone
+        }
+    }
+
+    /**
+     * Returns the stock of a product, 0 if it is not stocked. Only valid once processing finished.
+     */
+    public int getStock(Product product) {
+        int id = ProductRegistry.idOf(product);
+        return id < partitionById.length && partitionById[id] >= 0 ? partitions[partitionById[id]].stock[slotById[id]] : 0;
+    }
+
+    /**
+     * Returns the reserved stock of a product. Only valid once processing finished.
+     */
+    public int getReserved(Product product) {
+        int id = ProductRegistry.idOf(product);
+        return id < partitionById.length && partitionById[id] >= 0 ? partitions[partitionById[id]].reserved[slotById[id]] : 0;
+    }
+
+    /**
+     * Returns the maximum reserved quantity seen per product. Only valid once processing finished.
+     */
+    public Map<Product, Integer> getMaxReservedByProduct() {
+        Map<Product, Integer> maxReserved = new HashMap<>();
+        for (Partition partition : partitions) {
+            for (int slot = 0; slot < partition.products.length; slot++) {
+                if (partition.maxReserved[slot] > 0) {
+                    maxReserved.put(partition.products[slot], partition.maxReserved[slot]);
+                }
+            }
+        }
+        return maxReserved;
+    }
+
+    /**
+     * Returns the lowest partition owning a product of an order, or -1 if the order is empty or
+     * holds a product that is not stocked.
+     */
+    private int ownerOf(Order order) {
+        if (order.isEmpty()) {
+            return -1;
+        }
+        int owner = Integer.MAX_VALUE;
+        for (int i = 0; i < order.size(); i++) {
+            int id = order.productId(i);
+            if (id >= partitionById.length || partitionById[id] < 0) {
+                return -1;
+            }
+            owner = Math.min(owner, partitionById[id]);
+        }
+        return owner;
+    }
+
+    /**
+     * Returns whether every product of a routed order belongs to the same partition.
+     */
+    private boolean isLocal(Order order) {
+        int partition = partitionById[order.productId(0)];
+        for (int i = 1; i < order.size(); i++) {
+            if (partitionById[order.productId(i)] != partition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the distinct partitions owning the products of a routed order in ascending order,
+     * sorting them in place in a scratch array at least as long as the order.
+     */
+    private int[] participantsOf(Order order, int[] scratch) {
+        int size = order.size();
+        for (int i = 0; i < size; i++) {
+            scratch[i] = partitionById[order.productId(i)];
+        }
+        Arrays.sort(scratch, 0, size);
+        int distinct = 1;
+        for (int i = 1; i < size; i++) {
+            if (scratch[i] != scratch[distinct - 1]) {
+                scratch[distinct++] = scratch[i];
+            }
+        }
+        return Arrays.copyOf(scratch, distinct);
+    }
+
+    /**
+     * Splits an order into one part per partition involved and asks every one of them for its vote.
+     */
+    private void split(Order order, int[] participants, Partition coordinator) {
+        Order[] parts = new Order[participants.length];
+        for (int k = 0; k < participants.length; k++) {
+            parts[k] = new Order();
+        }
+        for (int i = 0; i < order.size(); i++) {
+            int partition = partitionById[order.productId(i)];
+            parts[Arrays.binarySearch(participants, partition)].add(order.product(i), order.quantity(i));
+        }
+        coordinator.openVotes.incrementAndGet();
+        vote(new Vote(order, order.type(), participants, parts, coordinator));
+    }
+
+    /**
+     * Sends a prepare message for one operation of a split order to every partition involved.
+     */
+    private void vote(Vote vote) {
+        for (int k = 0; k < vote.participants.length; k++) {
+            send(vote.participants[k], new Prepare(vote, k));
+        }
+    }
+
+    /**
+     * Counts a message as in flight and queues it for a partition. Counting first means the
+     * in-flight count never drops to zero while the message is still to be handled.
+     */
+    private void send(int partition, Object message) {
+        inFlight.incrementAndGet();
+        partitions[partition].messages.add(message);
+    }
+
+    /**
+     * Completes a split operation once every partition voted: publishes the receiving half if every
+     * part was taken, else gives the taken parts back and moves on to the fallback operation.
+     * Messages are sent before the order is reported, so the order stays in flight until they are.
+     */
+    private void decide(Vote vote) {
+        boolean allTaken = true;
+        for (boolean taken : vote.taken) {
+            allTaken &= taken;
+        }
+
+        if (allTaken) {
+            if (vote.operation == OrderType.RESERVATION || vote.operation == OrderType.CANCELLATION) {
+                settle(vote, true);
+            }
+            close(vote, outcomeOf(vote.operation));
+            return;
+        }
+        settle(vote, false);
+        if (vote.operation == OrderType.PURCHASE) {
+            close(vote, OrderOutcome.shortage(vote.order.type()));
+        } else {
+            vote(vote.fallback());
+        }
+    }
+
+    /**
+     * Reports the outcome of a split order and frees its place among its coordinator's open votes.
+     */
+    private void close(Vote vote, OrderOutcome outcome) {
+        try {
+            notifyListeners(vote.order, outcome);
+        } finally {
+            vote.coordinator.openVotes.decrementAndGet();
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends every partition that took its part a message to publish it, or to give it back.
+     */
+    private void settle(Vote vote, boolean publish) {
+        for (int k = 0; k < vote.participants.length; k++) {
+            if (vote.taken[k]) {
+                send(vote.participants[k], new Settle(vote, k, publish));
+            }
+        }
+    }
+
+    /**
+     * Hands an outcome to every listener and completes the order's future. A failing listener is
+     * reported to the thread's uncaught exception handler and does not keep the others, or the
+     * submitter, from learning the outcome.
+     */
+    private void notifyListeners(Order order, OrderOutcome outcome) {
+        for (OrderListener listener : listeners) {
+            try {
+                listener.onCommit(order, outcome);
+            } catch (RuntimeException e) {
+                report(e);
+            }
+        }
+        order.complete(outcome);
+    }
+
+    /**
+     * Hands a failure to the calling thread's uncaught exception handler, which prints it by
+     * default, without ending the thread.
+     */
+    private static void report(RuntimeException failure) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+    }
+
+    private static OrderOutcome outcomeOf(OrderType operation) {
+        return switch (operation) {
+            case PURCHASE -> OrderOutcome.PURCHASED;
+            case RESERVATION -> OrderOutcome.RESERVED;
+            case CANCELLATION -> OrderOutcome.CANCELLED;
+            case CHECKOUT -> OrderOutcome.CHECKED_OUT;
+        };
+    }
+
+    private static boolean takesReserved(OrderType operation) {
+        return operation == OrderType.CANCELLATION || operation == OrderType.CHECKOUT;
+    }
+
+    private static int partitionOf(int productId, int partitionCount) {
+        int hash = productId * 0x9E3779B9;
+        return Math.floorMod(hash ^ hash >>> 16, partitionCount);
+    }
+
+    /**
+     * State of one operation of a split order while its partitions vote.
+     * Each partition writes only its own {@code taken} entry before counting down {@code votes},
+     * so the deciding partition sees every entry.
+     */
+    private static final class Vote {
+        final Order order;
+        final OrderType operation;
+        final int[] participants;
+        final Order[] parts;
+        final Partition coordinator;
+        final boolean[] taken;
+        final AtomicInteger votes;
+
+        Vote(Order order, OrderType operation, int[] participants, Order[] parts, Partition coordinator) {
+            this.order = order;
+            this.operation = operation;
+            this.participants = participants;
+            this.parts = parts;
+            this.coordinator = coordinator;
+            this.taken = new boolean[participants.length];
+            this.votes = new AtomicInteger(participants.length);
+        }
+
+        /**
+         * Returns a vote on buying the same parts as a regular purchase.
+         */
+        Vote fallback() {
+            return new Vote(order, OrderType.PURCHASE, participants, parts, coordinator);
+        }
+    }
+
+    /**
+     * Asks participant {@code index} of a vote to take its part.
+     */
+    private record Prepare(Vote vote, int index) {
+    }
+
+    /**
+     * Tells participant {@code index} of a decided vote to publish its part, or to give it back.
+     */
+    private record Settle(Vote vote, int index, boolean publish) {
+    }
+
+    /**
+     * A partition: plain state of the products it owns, the inbox of orders its single worker
+     * drains and the queue of vote messages other partitions send it.
+     */
+    private final class Partition implements Runnable {
+        final RingBufferTransport inbox;
+        final ConcurrentLinkedQueue<Object> messages = new ConcurrentLinkedQueue<>();
+        /** Split orders this partition coordinates whose outcome is not reported yet. */
+        final AtomicInteger openVotes = new AtomicInteger();
+        final Product[] products;
+        final int[] stock;
+        final int[] reserved;
+        final int[] maxReserved;
+        /** Partitions of the items of the order being handled, sorted to find the participants. */
+        int[] scratch = new int[8];
+
+        Partition(int size, int initialStock, int inboxCapacity) {
+            this.inbox = new RingBufferTransport(inboxCapacity, WaitStrategy.PARK);
+            this.products = new Product[size];
+            this.stock = new int[size];
+            this.reserved = new int[size];
+            this.maxReserved = new int[size];
+            Arrays.fill(stock, initialStock);
+        }
+
+        /**
+         * Handles vote messages first, so open votes finish before new orders start more, then
+         * orders, until the processor drains and nothing is left in flight anywhere. A message or
+         * order whose handling failed is reported and the partition carries on.
+         */
+        @Override
+        public void run() {
+            int attempt = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                Object message = messages.poll();
+                Order order = message == null && openVotes.get() < inboxCapacity ? inbox.poll() : null;
+                if (message == null && order == null) {
+                    if (draining && inFlight.get() == 0) {
+                        return;
+                    }
+                    attempt = WaitStrategy.PARK.idle(attempt);
+                    continue;
+                }
+                try {
+                    if (message != null) {
+                        handle(message);
+                    } else {
+                        handle(order);
+                    }
+                } catch (RuntimeException e) {
+                    report(e);
+                }
+                attempt = 0;
+            }
+        }
+
+        /**
+         * Handles a vote message, counting it out of flight even if handling it failed.
+         */
+        private void handle(Object message) {
+            try {
+                if (message instanceof Prepare prepare) {
+                    takePart(prepare.vote(), prepare.index());
+                } else if (message instanceof Settle settle) {
+                    settlePart(settle.vote(), settle.index(), settle.publish());
+                }
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        /**
+         * Applies an order from the inbox if all of its products belong to this partition, or
+         * starts a vote on it otherwise. The order stays in flight until its outcome is reported.
+         */
+        private void handle(Order order) {
+            order.setDequeuedAt(System.nanoTime());
+            if (!isLocal(order)) {
+                if (scratch.length < order.size()) {
+                    scratch = new int[order.size()];
+                }
+                split(order, participantsOf(order, scratch), this);
+                return;
+            }
+            try {
+                notifyListeners(order, apply(order));
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        /**
+         * Applies an order whose products all belong to this partition, with the same fallback
+         * as {@link multithreadedstore.model.Warehouse#apply(Order)}.
+         */
+        private OrderOutcome apply(Order order) {
+            if (order.isReservationOrder() && take(order, false)) {
+                give(order, true);
+                return OrderOutcome.RESERVED;
+            } else if (order.isReservationCancellationOrder() && take(order, true)) {
+                give(order, false);
+                return OrderOutcome.CANCELLED;
+            } else if (order.isReservationCheckoutOrder() && take(order, true)) {
+                return OrderOutcome.CHECKED_OUT;
+            } else if (take(order, false)) {
+                return OrderOutcome.PURCHASED;
+            }
+            return OrderOutcome.shortage(order.type());
+        }
+
+        /**
+         * Takes this partition's part of a split operation and casts its vote, deciding if it is the last.
+         */
+        private void takePart(Vote vote, int index) {
+            vote.taken[index] = take(vote.parts[index], takesReserved(vote.operation));
+            if (vote.votes.decrementAndGet() == 0) {
+                decide(vote);
+            }
+        }
+
+        /**
+         * Publishes the receiving half of this partition's part, or gives back what it took.
+         */
+        private void settlePart(Vote vote, int index, boolean publish) {
+            give(vote.parts[index], publish ? vote.operation == OrderType.RESERVATION : takesReserved(vote.operation));
+        }
+
+        /**
+         * Removes an order's quantities from stock or reserved stock if every item has enough.
+         */
+        private boolean take(Order order, boolean fromReserved) {
+            int[] counters = fromReserved ? reserved : stock;
+            for (int i = 0; i < order.size(); i++) {
+                if (counters[slotById[order.productId(i)]] < order.quantity(i)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < order.size(); i++) {
+                counters[slotById[order.productId(i)]] -= order.quantity(i);
+            }
+            return true;
+        }
+
+        /**
+         * Adds an order's quantities to stock or reserved stock.
+         */
+        private void give(Order order, boolean toReserved) {
+            for (int i = 0; i < order.size(); i++) {
+                int slot = slotById[order.productId(i)];
+                if (toReserved) {
+                    reserved[slot] += order.quantity(i);
+                    maxReserved[slot] = Math.max(maxReserved[slot], reserved[slot]);
+                } else {
+                    stock[slot] += order.quantity(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Producer side of the processor: routes orders to the inbox of the lowest partition owning
+     * their products instead of queueing them centrally, waiting while that inbox is full.
+     */
+    private final class Intake implements OrderSink {
+
+        @Override
+        public void put(Order order) throws InterruptedException {
+            int attempt = 0;
+            while (!offer(order)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                attempt = WaitStrategy.PARK.idle(attempt);
+            }
+        }
+
+        /**
+         * Reports an order that cannot be routed right away, counts any other as in flight and
+         * queues it in its partition's inbox if there is space.
+         */
+        @Override
+        public boolean offer(Order order) {
+            if (order.isPoison()) {
+                return true;
+            }
+            int owner = ownerOf(order);
+            if (owner < 0) {
+                notifyListeners(order, order.isEmpty() ? OrderOutcome.INVALID : OrderOutcome.shortage(order.type()));
+                return true;
+            }
+            inFlight.incrementAndGet();
+            if (partitions[owner].inbox.offer(order)) {
+                return true;
+            }
+            inFlight.decrementAndGet();
+            return false;
+        }
+
+        @Override
+        public boolean offer(Order order, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int attempt = 0;
+            while (!offer(order)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                attempt = WaitStrategy.PARK.idle(attempt);
+            }
+            return true;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Partition partition : partitions) {
+                size += partition.inbox.size();
+            }
+            return size;
+        }
+    }
+}
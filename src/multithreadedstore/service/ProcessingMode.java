@@ -0,0 +1,21 @@
+package multithreadedstore.service;
+
+/**
+ * Selects how orders are processed.
+ */
+public enum ProcessingMode {
+
+    /**
+     * An {@link OrderProcessor} whose workers take orders from one transport and apply them to a
+     * shared {@link multithreadedstore.model.Inventory}, which locks or claims the products of
+     * every order.
+     */
+    SHARED,
+
+    /**
+     * A {@link PartitionedOrderProcessor} owning every product from exactly one worker, which
+     * applies orders within its partition without locks and votes with other partitions on orders
+     * spanning several.
+     */
+    PARTITIONED
+}
@@ -0,0 +1,240 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Inventory;
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderType;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot-path metrics of an {@link OrderProcessor} and the {@link OrderIntake} feeding it.
+ * Register it as a listener of both; it records, per {@link OrderType}, a histogram of the time
+ * from intake until a worker took the order and of the time from there until it committed,
+ * using the timestamps intake and workers put on every order. Orders sent at a fixed rate by
+ * {@link OrderGenerator#startCustomers(int, double)} also get their response time recorded, from
+ * when they were meant to be sent until they committed, which includes any time the sender was
+ * held up. Recording costs one {@link System#nanoTime()} call, up to three histogram increments
+ * and one counter increment per order, and allocates nothing.
+ *
+ * <p>Queue depth, per lane for a {@link LaneTransport}, and lock contention are read from the
+ * transport and the inventory when asked. Metrics of a {@link PartitionedOrderProcessor} have no
+ * inventory and report no contention, since every product belongs to a single partition.
+ * Everything is available over JMX after {@link #register(String)}, and as text from
+ * {@link #dump()}, optionally printed periodically by {@link #startDumping(Duration, PrintStream)}.
+ */
+public class ProcessorMetrics implements OrderListener, ProcessorMetricsMXBean, AutoCloseable {
+
+    private final OrderSink transport;
+    private final Inventory inventory;
+    private final LatencyHistogram[] queueLatency = new LatencyHistogram[OrderType.values().length];
+    private final LatencyHistogram[] serviceLatency = new LatencyHistogram[OrderType.values().length];
+    private final LatencyHistogram[] responseLatency = new LatencyHistogram[OrderType.values().length];
+    private final LongAdder[] ordersByOutcome = new LongAdder[OrderOutcome.values().length];
+    private ObjectName objectName;
+    private ScheduledExecutorService dumper;
+
+    /**
+     * Creates empty metrics of a processor without a shared inventory, such as a
+     * {@link PartitionedOrderProcessor}.
+     *
+     * @param transport sink the processor takes orders from
+     */
+    public ProcessorMetrics(OrderSink transport) {
+        this(transport, null);
+    }
+
+    /**
+     * Creates empty metrics.
+     *
+     * @param transport transport the workers take orders from
+     * @param inventory warehouse or router the workers update, or null if there is none
+     */
+    public ProcessorMetrics(OrderSink transport, Inventory inventory) {
+        this.transport = transport;
+        this.inventory = inventory;
+        Arrays.setAll(queueLatency, i -> new LatencyHistogram());
+        Arrays.setAll(serviceLatency, i -> new LatencyHistogram());
+        Arrays.setAll(responseLatency, i -> new LatencyHistogram());
+        Arrays.setAll(ordersByOutcome, i -> new LongAdder());
+    }
+
+    @Override
+    public void onCommit(Order order, OrderOutcome outcome) {
+        ordersByOutcome[outcome.ordinal()].increment();
+        long dequeuedAt = order.getDequeuedAt();
+        if (outcome == OrderOutcome.REJECTED_OVERLOAD || dequeuedAt == 0) {
+            return;
+        }
+        int type = order.type().ordinal();
+        long now = System.nanoTime();
+        serviceLatency[type].record(now - dequeuedAt);
+        if (order.getIntendedAt() != 0) {
+            responseLatency[type].record(now - order.getIntendedAt());
+        }
+        if (order.getEnqueuedAt() != 0) {
+            queueLatency[type].record(dequeuedAt - order.getEnqueuedAt());
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * {@code multithreadedstore:type=OrderProcessor,name=<name>}.
+     *
+     * @param name name distinguishing this processor from others
+     * @throws IllegalStateException if registration fails, e.g. because the name is taken
+     */
+    public void register(String name) {
+        try {
+            ObjectName registered = new ObjectName("multithreadedstore:type=OrderProcessor,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+            objectName = registered;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics " + name, e);
+        }
+    }
+
+    /**
+     * Prints {@link #dump()} at a fixed rate from a background thread until {@link #close()}.
+     *
+     * @param period time between dumps
+     * @param out    stream to print to
+     */
+    public void startDumping(Duration period, PrintStream out) {
+        if (dumper != null) {
+            throw new IllegalStateException("Already dumping");
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(
+                runnable -> Thread.ofPlatform().name("metrics-dump").daemon().unstarted(runnable));
+        dumper.scheduleAtFixedRate(() -> out.print(dump()), period.toNanos(), period.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops periodic dumps and unregisters from JMX.
+     */
+    @Override
+    public void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException ignored) {
+                // already unregistered
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return transport.size();
+    }
+
+    @Override
+    public Map<String, Integer> getLaneDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        if (transport instanceof LaneTransport lanes) {
+            for (OrderType type : OrderType.values()) {
+                depths.put(type.name(), lanes.depth(type));
+            }
+        }
+        return depths;
+    }
+
+    @Override
+    public long getAcceptedOrders() {
+        long accepted = 0;
+        for (OrderOutcome outcome : OrderOutcome.values()) {
+            if (outcome != OrderOutcome.REJECTED_OVERLOAD) {
+                accepted += ordersByOutcome[outcome.ordinal()].sum();
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public long getRejectedOrders() {
+        return ordersByOutcome[OrderOutcome.REJECTED_OVERLOAD.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getOrdersByOutcome() {
+        Map<String, Long> orders = new LinkedHashMap<>();
+        for (OrderOutcome outcome : OrderOutcome.values()) {
+            orders.put(outcome.name(), ordersByOutcome[outcome.ordinal()].sum());
+        }
+        return orders;
+    }
+
+    @Override
+    public Map<String, LatencyStats> getQueueLatency() {
+        return snapshot(queueLatency);
+    }
+
+    @Override
+    public Map<String, LatencyStats> getServiceLatency() {
+        return snapshot(serviceLatency);
+    }
+
+    @Override
+    public Map<String, LatencyStats> getResponseLatency() {
+        return snapshot(responseLatency);
+    }
+
+    @Override
+    public long getContentions() {
+        return inventory == null ? 0 : inventory.getContentions();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return inventory == null ? 0 : inventory.getLockWaitNanos();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("orders: accepted=%d rejected=%d queueDepth=%d contentions=%d lockWait=%.3fms%n",
+                getAcceptedOrders(), getRejectedOrders(), getQueueDepth(), getContentions(), getLockWaitNanos() / 1e6));
+        getOrdersByOutcome().forEach((outcome, count) -> text.append("  ").append(outcome).append('=').append(count));
+        text.append(System.lineSeparator());
+        Map<String, Integer> laneDepths = getLaneDepths();
+        if (!laneDepths.isEmpty()) {
+            text.append("  lanes:");
+            laneDepths.forEach((type, depth) -> text.append(' ').append(type).append('=').append(depth));
+            text.append(System.lineSeparator());
+        }
+        for (OrderType type : OrderType.values()) {
+            text.append(String.format("  %-12s queue    %s%n", type, queueLatency[type.ordinal()].snapshot()));
+            text.append(String.format("  %-12s service  %s%n", type, serviceLatency[type.ordinal()].snapshot()));
+            LatencyStats response = responseLatency[type.ordinal()].snapshot();
+            if (response.getCount() > 0) {
+                text.append(String.format("  %-12s response %s%n", type, response));
+            }
+        }
+        return text.toString();
+    }
+
+    private static Map<String, LatencyStats> snapshot(LatencyHistogram[] histograms) {
+        Map<String, LatencyStats> stats = new LinkedHashMap<>();
+        for (OrderType type : OrderType.values()) {
+            stats.put(type.name(), histograms[type.ordinal()].snapshot());
+        }
+        return stats;
+    }
+}
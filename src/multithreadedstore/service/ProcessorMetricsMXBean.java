@@ -0,0 +1,49 @@
+package multithreadedstore.service;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ProcessorMetrics}. Latency maps are keyed by
+ * {@link multithreadedstore.model.OrderType} name.
+ */
+public interface ProcessorMetricsMXBean {
+
+    /** Returns the number of orders currently waiting for a worker. */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of orders currently waiting per order type name; empty unless the
+     * transport is a {@link LaneTransport}.
+     */
+    Map<String, Integer> getLaneDepths();
+
+    /** Returns the number of orders workers have applied, whatever the outcome. */
+    long getAcceptedOrders();
+
+    /** Returns the number of orders refused at intake because of overload. */
+    long getRejectedOrders();
+
+    /** Returns the number of orders per {@link multithreadedstore.model.OrderOutcome} name. */
+    Map<String, Long> getOrdersByOutcome();
+
+    /** Returns the time from intake until a worker took the order, per order type. */
+    Map<String, LatencyStats> getQueueLatency();
+
+    /** Returns the time from a worker taking the order until it committed, per order type. */
+    Map<String, LatencyStats> getServiceLatency();
+
+    /**
+     * Returns the time from when an order sent at a fixed rate was meant to be sent until it
+     * committed, per order type; empty histograms unless orders are sent at a fixed rate.
+     */
+    Map<String, LatencyStats> getResponseLatency();
+
+    /** Returns how many warehouse operations waited for, or retried after, a concurrent one. */
+    long getContentions();
+
+    /** Returns the total time workers waited for warehouse product locks, in nanoseconds. */
+    long getLockWaitNanos();
+
+    /** Returns every metric as human-readable text. */
+    String dump();
+}
@@ -0,0 +1,176 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, multi-consumer order transport on a preallocated ring buffer.
+ * Capacity is rounded up to a power of two (at least two) so a position maps to a slot with a mask.
+ *
+ * <p>Every slot carries a sequence number telling whose turn it is: a producer may fill the slot
+ * at position {@code p} when its sequence equals {@code p}, a consumer may empty it when its
+ * sequence equals {@code p + 1}. Producers and consumers claim positions with a CAS on the padded
+ * tail and head counters, so neither side ever locks and enqueueing allocates nothing.
+ * Threads that find the buffer full or empty wait according to the {@link WaitStrategy}.
+ */
+public class RingBufferTransport implements OrderTransport {
+
+    private final Order[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final PaddedSequence head = new PaddedSequence(0);
+    private final PaddedSequence tail = new PaddedSequence(0);
+
+    /**
+     * Creates an empty ring buffer.
+     *
+     * @param capacity     minimum number of orders it can hold; rounded up to a power of two
+     * @param waitStrategy how threads wait while the buffer is full or empty
+     */
+    public RingBufferTransport(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Order[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Returns the number of slots, a power of two.
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public void put(Order order) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(order)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            attempt = waitStrategy.idle(attempt);
+        }
+    }
+
+    @Override
+    public boolean offer(Order order, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(order)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            attempt = waitStrategy.idle(attempt);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(Order order) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.getAcquire(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer[slot] = order;
+                    sequences.setRelease(slot, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public Order take() throws InterruptedException {
+        int attempt = 0;
+        Order order;
+        while ((order = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            attempt = waitStrategy.idle(attempt);
+        }
+        return order;
+    }
+
+    @Override
+    public Order poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        Order order;
+        while ((order = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            attempt = waitStrategy.idle(attempt);
+        }
+        return order;
+    }
+
+    /**
+     * Dequeues the next order if one is available, without waiting.
+     *
+     * @return the next order, or null if the buffer is empty
+     */
+    public Order poll() {
+        while (true) {
+            long position = head.get();
+            int slot = (int) position & mask;
+            long difference = sequences.getAcquire(slot) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Order order = buffer[slot];
+                    buffer[slot] = null;
+                    sequences.setRelease(slot, position + buffer.length);
+                    return order;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Order> target, int maxOrders) {
+        int drained = 0;
+        Order order;
+        while (drained < maxOrders && (order = poll()) != null) {
+            target.add(order);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns the number of orders dequeued since the buffer was created.
+     */
+    long dequeued() {
+        return head.get();
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+}
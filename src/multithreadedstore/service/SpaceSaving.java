@@ -0,0 +1,259 @@
+package multithreadedstore.service;
+
+import java.util.Arrays;
+
+/**
+ * Space-Saving summary estimating the heaviest keys of a weighted stream in fixed memory.
+ * Keeps at most {@code capacity} counters in a min-heap. A key without a counter takes over the
+ * smallest one, inheriting its count as its error, so every estimate overestimates the true weight
+ * by at most its error, and the error never exceeds total weight / capacity. Any key whose true
+ * weight is above that bound is guaranteed to be tracked.
+ *
+ * <p>Summaries of disjoint streams can be combined with {@link #merge(SpaceSaving)}.
+ * Not thread-safe.
+ */
+class SpaceSaving {
+
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+
+    private final int[] tableKeys;
+    private final int[] tablePositions;
+    private final int tableMask;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param capacity number of counters; larger means tighter error bounds
+     */
+    SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.tableKeys = new int[tableSize];
+        this.tablePositions = new int[tableSize];
+        this.tableMask = tableSize - 1;
+        Arrays.fill(tableKeys, EMPTY);
+    }
+
+    /**
+     * Adds weight to a key.
+     *
+     * @param key    non-negative key
+     * @param weight weight to add
+     */
+    void offer(int key, long weight) {
+        int position = find(key);
+        if (position >= 0) {
+            counts[position] += weight;
+            siftDown(position);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = weight;
+            errors[size] = 0;
+            put(key, size);
+            siftUp(size++);
+        } else {
+            remove(keys[0]);
+            errors[0] = counts[0];
+            counts[0] += weight;
+            keys[0] = key;
+            put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Removes every counter.
+     */
+    void clear() {
+        size = 0;
+        Arrays.fill(tableKeys, EMPTY);
+    }
+
+    /**
+     * Returns the largest possible overestimate of any key's weight.
+     */
+    long maxError() {
+        return size < capacity ? 0 : counts[0];
+    }
+
+    /**
+     * Returns the up to {@code k} heaviest keys, heaviest first.
+     *
+     * @param k maximum number of keys
+     * @return rows of {@code {key, count, error}}
+     */
+    long[][] top(int k) {
+        Integer[] order = new Integer[size];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        long[][] top = new long[Math.min(k, size)][];
+        for (int i = 0; i < top.length; i++) {
+            int position = order[i];
+            top[i] = new long[] {keys[position], counts[position], errors[position]};
+        }
+        return top;
+    }
+
+    /**
+     * Returns an independent copy of this summary.
+     */
+    SpaceSaving copy() {
+        return new SpaceSaving(capacity).merge(this);
+    }
+
+    /**
+     * Combines this summary with one of a disjoint stream into a new summary of the same capacity.
+     * A key missing from one side is assumed to have that side's {@link #maxError()} weight there.
+     *
+     * @param other summary to merge with
+     * @return merged summary; neither input is modified
+     */
+    SpaceSaving merge(SpaceSaving other) {
+        long thisMissing = maxError();
+        long otherMissing = other.maxError();
+        int[] mergedKeys = new int[size + other.size];
+        long[] mergedCounts = new long[mergedKeys.length];
+        long[] mergedErrors = new long[mergedKeys.length];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int otherPosition = other.find(keys[i]);
+            mergedKeys[count] = keys[i];
+            mergedCounts[count] = counts[i] + (otherPosition >= 0 ? other.counts[otherPosition] : otherMissing);
+            mergedErrors[count] = errors[i] + (otherPosition >= 0 ? other.errors[otherPosition] : otherMissing);
+            count++;
+        }
+        for (int i = 0; i < other.size; i++) {
+            if (find(other.keys[i]) < 0) {
+                mergedKeys[count] = other.keys[i];
+                mergedCounts[count] = other.counts[i] + thisMissing;
+                mergedErrors[count] = other.errors[i] + thisMissing;
+                count++;
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Long.compare(mergedCounts[b], mergedCounts[a]));
+        SpaceSaving merged = new SpaceSaving(capacity);
+        for (int i = 0; i < Math.min(count, capacity); i++) {
+            int position = order[i];
+            merged.keys[i] = mergedKeys[position];
+            merged.counts[i] = mergedCounts[position];
+            merged.errors[i] = mergedErrors[position];
+            merged.put(mergedKeys[position], i);
+            merged.size++;
+        }
+        for (int i = merged.size / 2 - 1; i >= 0; i--) {
+            merged.siftDown(i);
+        }
+        return merged;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (counts[parent] <= counts[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int key = keys[a];
+        long count = counts[a];
+        long error = errors[a];
+        keys[a] = keys[b];
+        counts[a] = counts[b];
+        errors[a] = errors[b];
+        keys[b] = key;
+        counts[b] = count;
+        errors[b] = error;
+        put(keys[a], a);
+        put(keys[b], b);
+    }
+
+    /**
+     * Returns the heap position of a key, or -1 if it has no counter.
+     */
+    private int find(int key) {
+        for (int slot = hash(key); ; slot = slot + 1 & tableMask) {
+            if (tableKeys[slot] == key) {
+                return tablePositions[slot];
+            }
+            if (tableKeys[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Inserts or updates the heap position of a key in the open-addressing index.
+     */
+    private void put(int key, int position) {
+        int slot = hash(key);
+        while (tableKeys[slot] != EMPTY && tableKeys[slot] != key) {
+            slot = slot + 1 & tableMask;
+        }
+        tableKeys[slot] = key;
+        tablePositions[slot] = position;
+    }
+
+    /**
+     * Removes a key from the index, shifting back later entries of its probe run.
+     */
+    private void remove(int key) {
+        int slot = hash(key);
+        while (tableKeys[slot] != key) {
+            slot = slot + 1 & tableMask;
+        }
+        int hole = slot;
+        for (int next = hole + 1 & tableMask; tableKeys[next] != EMPTY; next = next + 1 & tableMask) {
+            int home = hash(tableKeys[next]);
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                tableKeys[hole] = tableKeys[next];
+                tablePositions[hole] = tablePositions[next];
+                hole = next;
+            }
+        }
+        tableKeys[hole] = EMPTY;
+    }
+
+    private int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & tableMask;
+    }
+}
@@ -0,0 +1,40 @@
+package multithreadedstore.service;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link RingBufferTransport} that is empty (consumers) or full (producers).
+ * Trades CPU burned while idle against how quickly the waiting thread notices progress.
+ */
+public enum WaitStrategy {
+
+    /** Spins on the CPU. Lowest latency; only use with a free core for every waiting thread. */
+    BUSY_SPIN,
+
+    /** Spins briefly, then yields the CPU to other runnable threads between checks. */
+    YIELD,
+
+    /** Spins, then yields, then parks for a growing interval capped at {@link #MAX_PARK_NANOS}. */
+    PARK;
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    /**
+     * Waits once after an unsuccessful attempt.
+     *
+     * @param attempt number of unsuccessful attempts so far, starting at 0
+     * @return the attempt count to pass on the next call
+     */
+    int idle(int attempt) {
+        if (this == BUSY_SPIN || attempt < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (this == YIELD || attempt < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1_000L << Math.min(attempt - YIELD_TRIES, 10)));
+        }
+        return attempt == Integer.MAX_VALUE ? attempt : attempt + 1;
+    }
+}
@@ -0,0 +1,254 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.HeavyHitter;
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.ProductRegistry;
+import multithreadedstore.model.WindowStats;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Analytics over sliding windows of recent time, such as the last second or the last minute,
+ * updated by {@link OrderProcessor} workers as each order commits.
+ *
+ * <p>Time is cut into buckets of a fixed width, kept in a ring. Each bucket holds striped
+ * {@link LongAdder} counters per outcome and for revenue, and striped {@link SpaceSaving} summaries
+ * of units sold per product. A bucket remembers which interval it counts; the first order of a new
+ * interval to land on a bucket still holding an old one clears it, so buckets are reused forever
+ * and memory does not grow with time or order volume. {@link #window(Duration)} adds up the
+ * buckets the window spans, so it costs O(buckets) whatever the order rate, and never looks at
+ * individual orders.
+ *
+ * <p>The bucket of the current interval is still filling, so a window always ends with a partial
+ * bucket and its rates are averages over the time actually covered. Like {@link LiveAnalytics},
+ * a window reads counters that may still be moving.
+ */
+public class WindowedAnalytics implements OrderListener {
+
+    private static final int DEFAULT_COUNTERS = 64;
+
+    private final long bucketNanos;
+    private final Bucket[] buckets;
+    private final int topK;
+    private final LongSupplier clock;
+    private final long origin;
+
+    /**
+     * Creates empty windowed analytics.
+     *
+     * @param bucketWidth length of the interval one bucket counts; the resolution of windows
+     * @param bucketCount number of buckets; the longest window is {@code bucketWidth * bucketCount}
+     * @param topK        number of best-selling products to report per window
+     */
+    public WindowedAnalytics(Duration bucketWidth, int bucketCount, int topK) {
+        this(bucketWidth, bucketCount, topK, System::nanoTime);
+    }
+
+    /**
+     * Creates empty windowed analytics reading time from a clock.
+     *
+     * @param clock source of {@link System#nanoTime()}-like timestamps
+     */
+    WindowedAnalytics(Duration bucketWidth, int bucketCount, int topK, LongSupplier clock) {
+        if (bucketWidth.isNegative() || bucketWidth.isZero()) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("Need at least one bucket");
+        }
+        if (topK < 1) {
+            throw new IllegalArgumentException("Need to report at least one product");
+        }
+        this.bucketNanos = bucketWidth.toNanos();
+        this.buckets = new Bucket[bucketCount];
+        this.topK = topK;
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        int stripes = Runtime.getRuntime().availableProcessors();
+        Arrays.setAll(buckets, i -> new Bucket(stripes, Math.max(DEFAULT_COUNTERS, topK)));
+    }
+
+    /**
+     * Returns windowed analytics with one-second buckets over the last minute, enough for
+     * per-second and per-minute figures.
+     *
+     * @param topK number of best-selling products to report per window
+     */
+    public static WindowedAnalytics lastMinute(int topK) {
+        return new WindowedAnalytics(Duration.ofSeconds(1), 60, topK);
+    }
+
+    @Override
+    public void onCommit(Order order, OrderOutcome outcome) {
+        Bucket bucket = bucketFor((clock.getAsLong() - origin) / bucketNanos);
+        if (bucket == null) {
+            return;
+        }
+        bucket.ordersByOutcome[outcome.ordinal()].increment();
+        if (outcome != OrderOutcome.PURCHASED && outcome != OrderOutcome.CHECKED_OUT) {
+            return;
+        }
+        long cents = 0;
+        for (int i = 0; i < order.size(); i++) {
+            cents += Math.round(order.product(i).price() * 100) * order.quantity(i);
+        }
+        bucket.revenueCents.add(cents);
+        bucket.recordUnits(order);
+    }
+
+    /**
+     * Summarizes the most recent stretch of time, ending now.
+     *
+     * @param length length of the window, at most bucket width times bucket count; rounded up to
+     *               whole buckets
+     * @return activity in the window; {@link WindowStats#window()} is the time actually covered,
+     *         which is shorter while the current bucket is filling or shortly after start
+     */
+    public WindowStats window(Duration length) {
+        long lengthNanos = length.toNanos();
+        if (lengthNanos <= 0 || lengthNanos > bucketNanos * buckets.length) {
+            throw new IllegalArgumentException("Window must be positive and at most "
+                    + Duration.ofNanos(bucketNanos * buckets.length));
+        }
+        long elapsed = clock.getAsLong() - origin;
+        long now = elapsed / bucketNanos;
+        long span = Math.min((lengthNanos + bucketNanos - 1) / bucketNanos, now + 1);
+
+        long[] orders = new long[OrderOutcome.values().length];
+        long revenueCents = 0;
+        SpaceSaving units = null;
+        for (long tick = now - span + 1; tick <= now; tick++) {
+            Bucket bucket = buckets[(int) (tick % buckets.length)];
+            if (bucket.epoch != tick) {
+                continue;
+            }
+            for (int outcome = 0; outcome < orders.length; outcome++) {
+                orders[outcome] += bucket.ordersByOutcome[outcome].sum();
+            }
+            revenueCents += bucket.revenueCents.sum();
+            units = bucket.mergeUnits(units);
+        }
+
+        List<HeavyHitter> topProducts = new ArrayList<>(topK);
+        if (units != null) {
+            for (long[] row : units.top(topK)) {
+                topProducts.add(new HeavyHitter(ProductRegistry.product((int) row[0]).name(), row[1], row[2]));
+            }
+        }
+        long covered = (span - 1) * bucketNanos + elapsed - now * bucketNanos;
+        return new WindowStats(Duration.ofNanos(Math.max(covered, 1)),
+                orders[OrderOutcome.PURCHASED.ordinal()] + orders[OrderOutcome.CHECKED_OUT.ordinal()],
+                revenueCents / 100.0,
+                orders[OrderOutcome.RESERVED.ordinal()],
+                orders[OrderOutcome.CANCELLED.ordinal()],
+                orders[OrderOutcome.REJECTED_OVERLOAD.ordinal()],
+                topProducts);
+    }
+
+    /**
+     * Returns the bucket counting an interval, clearing it first if it still counts an older one,
+     * or null if it already moved on to a newer interval because this order committed very late.
+     */
+    private Bucket bucketFor(long tick) {
+        Bucket bucket = buckets[(int) (tick % buckets.length)];
+        long epoch = bucket.epoch;
+        if (epoch == tick) {
+            return bucket;
+        }
+        if (epoch > tick) {
+            return null;
+        }
+        bucket.resetLock.lock();
+        try {
+            if (bucket.epoch < tick) {
+                bucket.clear();
+                bucket.epoch = tick;
+            }
+            return bucket.epoch == tick ? bucket : null;
+        } finally {
+            bucket.resetLock.unlock();
+        }
+    }
+
+    /**
+     * Counters of one interval. {@link #epoch} is published only after the counters were cleared,
+     * so an order that sees the current interval always counts towards it.
+     */
+    private static final class Bucket {
+
+        volatile long epoch = -1;
+        final ReentrantLock resetLock = new ReentrantLock();
+        final LongAdder[] ordersByOutcome = new LongAdder[OrderOutcome.values().length];
+        final LongAdder revenueCents = new LongAdder();
+        final SpaceSaving[] summaries;
+        final ReentrantLock[] summaryLocks;
+
+        Bucket(int stripes, int counters) {
+            Arrays.setAll(ordersByOutcome, i -> new LongAdder());
+            summaries = new SpaceSaving[stripes];
+            summaryLocks = new ReentrantLock[stripes];
+            Arrays.setAll(summaries, i -> new SpaceSaving(counters));
+            Arrays.setAll(summaryLocks, i -> new ReentrantLock());
+        }
+
+        /**
+         * Adds an order's units to the summary of a stripe chosen by thread, moving on to the next
+         * stripe if that one is busy and only waiting once every stripe was busy.
+         */
+        void recordUnits(Order order) {
+            int home = (int) (Thread.currentThread().threadId() % summaries.length);
+            int stripe = home;
+            while (!summaryLocks[stripe].tryLock()) {
+                stripe = (stripe + 1) % summaries.length;
+                if (stripe == home) {
+                    summaryLocks[stripe].lock();
+                    break;
+                }
+            }
+            try {
+                for (int i = 0; i < order.size(); i++) {
+                    summaries[stripe].offer(order.productId(i), order.quantity(i));
+                }
+            } finally {
+                summaryLocks[stripe].unlock();
+            }
+        }
+
+        /**
+         * Returns the stripe summaries merged into {@code merged}, or into a new summary if null.
+         */
+        SpaceSaving mergeUnits(SpaceSaving merged) {
+            for (int stripe = 0; stripe < summaries.length; stripe++) {
+                summaryLocks[stripe].lock();
+                try {
+                    merged = merged == null ? summaries[stripe].copy() : merged.merge(summaries[stripe]);
+                } finally {
+                    summaryLocks[stripe].unlock();
+                }
+            }
+            return merged;
+        }
+
+        void clear() {
+            for (LongAdder counter : ordersByOutcome) {
+                counter.reset();
+            }
+            revenueCents.reset();
+            for (int stripe = 0; stripe < summaries.length; stripe++) {
+                summaryLocks[stripe].lock();
+                try {
+                    summaries[stripe].clear();
+                } finally {
+                    summaryLocks[stripe].unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.OrderType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Shape of the orders an {@link OrderGenerator} produces.
+ *
+ * <p>Products are picked with Zipf-distributed popularity: the product at position {@code r} of
+ * the catalog (counting from 0) is picked with probability proportional to
+ * {@code 1 / (r + 1)^skew}, so a skew of 0 is uniform and a skew around 1 resembles real shops,
+ * where a few products take most of the orders. The number of items per order and the quantity
+ * per item follow geometric distributions with the given means, capped at a maximum. The order
+ * type is drawn from {@code mix}, a relative weight per {@link OrderType}.
+ *
+ * <p>Every order is derived from the seed and its number only, so the same profile generates the
+ * same orders on every run, whichever customer thread builds them.
+ *
+ * @param skew         Zipf exponent of product popularity, 0 for uniform
+ * @param meanItems    average number of distinct products per order, at least 1
+ * @param maxItems     largest number of products in one order
+ * @param meanQuantity average quantity per product, at least 1
+ * @param maxQuantity  largest quantity of one product
+ * @param mix          relative weight of every order type; missing types are never generated
+ * @param seed         seed the orders are derived from
+ */
+public record WorkloadProfile(double skew, double meanItems, int maxItems, double meanQuantity,
+                              int maxQuantity, Map<OrderType, Double> mix, long seed) {
+
+    private static final long DEFAULT_SEED = 0x5EED;
+
+    public WorkloadProfile {
+        if (skew < 0) {
+            throw new IllegalArgumentException("Skew cannot be negative");
+        }
+        if (meanItems < 1 || maxItems < meanItems) {
+            throw new IllegalArgumentException("Need 1 <= mean items <= max items");
+        }
+        if (meanQuantity < 1 || maxQuantity < meanQuantity) {
+            throw new IllegalArgumentException("Need 1 <= mean quantity <= max quantity");
+        }
+        Map<OrderType, Double> weights = new EnumMap<>(OrderType.class);
+        weights.putAll(mix);
+        double total = 0;
+        for (double weight : weights.values()) {
+            if (!(weight >= 0)) {
+                throw new IllegalArgumentException("Order type weights cannot be negative");
+            }
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Need a positive weight for at least one order type");
+        }
+        mix = Collections.unmodifiableMap(weights);
+    }
+
+    /**
+     * Returns a profile of single-unit, single-product orders over uniformly picked products:
+     * 60% purchases, 20% reservations, 10% checkouts and 10% cancellations.
+     */
+    public static WorkloadProfile uniform() {
+        Map<OrderType, Double> mix = new EnumMap<>(OrderType.class);
+        mix.put(OrderType.PURCHASE, 0.6);
+        mix.put(OrderType.RESERVATION, 0.2);
+        mix.put(OrderType.CHECKOUT, 0.1);
+        mix.put(OrderType.CANCELLATION, 0.1);
+        return new WorkloadProfile(0, 1, 1, 1, 1, mix, DEFAULT_SEED);
+    }
+
+    /**
+     * Returns a copy with another Zipf exponent of product popularity.
+     *
+     * @param skew Zipf exponent, 0 for uniform
+     */
+    public WorkloadProfile withSkew(double skew) {
+        return new WorkloadProfile(skew, meanItems, maxItems, meanQuantity, maxQuantity, mix, seed);
+    }
+
+    /**
+     * Returns a copy with another distribution of the number of products per order.
+     *
+     * @param mean average number of products, at least 1
+     * @param max  largest number of products
+     */
+    public WorkloadProfile withItems(double mean, int max) {
+        return new WorkloadProfile(skew, mean, max, meanQuantity, maxQuantity, mix, seed);
+    }
+
+    /**
+     * Returns a copy with another distribution of the quantity per product.
+     *
+     * @param mean average quantity, at least 1
+     * @param max  largest quantity
+     */
+    public WorkloadProfile withQuantity(double mean, int max) {
+        return new WorkloadProfile(skew, meanItems, maxItems, mean, max, mix, seed);
+    }
+
+    /**
+     * Returns a copy with another order type mix.
+     *
+     * @param mix relative weight of every order type
+     */
+    public WorkloadProfile withMix(Map<OrderType, Double> mix) {
+        return new WorkloadProfile(skew, meanItems, maxItems, meanQuantity, maxQuantity, mix, seed);
+    }
+
+    /**
+     * Returns a copy generating another reproducible sequence of orders.
+     *
+     * @param seed seed the orders are derived from
+     */
+    public WorkloadProfile withSeed(long seed) {
+        return new WorkloadProfile(skew, meanItems, maxItems, meanQuantity, maxQuantity, mix, seed);
+    }
+}
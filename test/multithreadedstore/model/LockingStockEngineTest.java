@@ -0,0 +1,51 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class LockingStockEngineTest {
+
+    private static final int THREADS = 4;
+    private static final int ORDERS = 5_000;
+
+    /**
+     * Threads ordering the same two products with their items listed in opposite orders never
+     * deadlock, and every unit is either still in stock or sold by exactly one order.
+     */
+    @Test
+    void oppositeItemOrdersNeitherDeadlockNorOversell() throws Exception {
+        Product first = new Product("Locked first", 1);
+        Product second = new Product("Locked second", 1);
+        int stock = THREADS * ORDERS / 2;
+        LockingStockEngine engine = new LockingStockEngine(List.of(first, second), stock);
+        LongAdder sold = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean reversed = t % 2 == 1;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < ORDERS; i++) {
+                    Order order = new Order();
+                    order.add(reversed ? second : first, 1);
+                    order.add(reversed ? first : second, 1);
+                    if (engine.process(order)) {
+                        sold.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join(30_000);
+            assertFalse(thread.isAlive(), "deadlocked");
+        }
+
+        assertEquals(stock, sold.sum());
+        assertEquals(0, engine.stock(first));
+        assertEquals(0, engine.stock(second));
+    }
+}
@@ -0,0 +1,116 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedStockTableTest {
+
+    private static final int THREADS = 4;
+    private static final int ORDERS = 2_000;
+
+    /**
+     * Threads reserving, checking out and buying through counters in a mapped file conserve every
+     * unit, and the counters read back the same after the file is mapped again.
+     */
+    @Test
+    void concurrentUpdatesAreConservedAndSurviveReopening(@TempDir Path directory) throws Exception {
+        Product first = new Product("Mapped first", 1);
+        Product second = new Product("Mapped second", 1);
+        int initialStock = THREADS * ORDERS;
+        Warehouse warehouse = Warehouse.mapped(List.of(first, second), initialStock, directory);
+        LongAdder purchased = new LongAdder();
+        LongAdder checkedOut = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean buying = t % 2 == 0;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < ORDERS; i++) {
+                    if (buying) {
+                        Order purchase = new Order();
+                        purchase.add(first, 1);
+                        purchase.add(second, 1);
+                        if (warehouse.process(purchase)) {
+                            purchased.increment();
+                        }
+                    } else {
+                        Order reservation = new ReservationOrder();
+                        reservation.add(first, 1);
+                        reservation.add(second, 1);
+                        warehouse.reserveProduct(reservation);
+                        Order checkout = new ReservationCheckoutOrder();
+                        checkout.add(first, 1);
+                        checkout.add(second, 1);
+                        if (warehouse.checkoutReservation(checkout)) {
+                            checkedOut.increment();
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<Availability> expected = List.of(
+                new Availability(first, (int) (initialStock - purchased.sum() - checkedOut.sum()), 0),
+                new Availability(second, (int) (initialStock - purchased.sum() - checkedOut.sum()), 0));
+        assertEquals(expected, warehouse.availability());
+        warehouse.close();
+
+        Warehouse reopened = Warehouse.mapped(directory);
+        assertEquals(expected, reopened.availability());
+        reopened.close();
+    }
+
+    /**
+     * Reading every product of a mapped warehouse goes through its table slots and registers none
+     * of the products, so the heap does not grow with the catalog.
+     */
+    @Test
+    void availabilityDoesNotRegisterProducts(@TempDir Path directory) throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            products.add(new Product("Mapped unregistered " + i, i));
+        }
+        Warehouse.mapped(products, 7, directory).close();
+        Warehouse warehouse = Warehouse.mapped(directory);
+
+        int registered = ProductRegistry.size();
+        List<Availability> availability = warehouse.availability();
+        assertEquals(registered, ProductRegistry.size());
+        assertEquals(1_000, availability.size());
+        assertEquals(new Availability(products.get(999), 7, 0), availability.get(999));
+        warehouse.close();
+    }
+
+    /**
+     * Reservations on a mapped warehouse expire back to stock.
+     */
+    @Test
+    void expiredReservationReturnsToStock(@TempDir Path directory) throws Exception {
+        Product product = new Product("Mapped expired", 1);
+        Warehouse warehouse = Warehouse.mapped(List.of(product), 10, directory);
+        warehouse.expireReservations(null, Duration.ofMillis(5));
+        try {
+            Order reservation = new ReservationOrder(Duration.ofMillis(20));
+            reservation.add(product, 4);
+            assertEquals(OrderOutcome.RESERVED, warehouse.apply(reservation));
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (warehouse.getReserved(product) != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(new Availability(product, 10, 0), warehouse.availability(product));
+        } finally {
+            warehouse.close();
+        }
+    }
+}
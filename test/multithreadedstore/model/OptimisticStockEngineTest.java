@@ -0,0 +1,285 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptimisticStockEngineTest {
+
+    private static final long ONE_IN_STOCK = 1L << 32;
+
+    /**
+     * A multi-product order that keeps losing the race for its last product, far more often than
+     * any fixed retry budget, still commits once the rival lets go instead of being refused as
+     * short of stock.
+     */
+    @Test
+    void lostRacesAreRetriedUntilTheOrderCommits() {
+        Product first = new Product("Raced first", 1);
+        Product second = new Product("Raced second", 1);
+        RivalTable table = new RivalTable(new HeapStockTable(List.of(first, second), 1), first, second, 100);
+        OptimisticStockEngine engine = new OptimisticStockEngine(table, Set.of());
+
+        assertTrue(engine.process(order(first, second, 1)));
+        assertEquals(0, table.racesLeft);
+        assertEquals(0, table.counter(table.slotOf(ProductRegistry.idOf(first))) >>> 32);
+        assertEquals(0, table.counter(table.slotOf(ProductRegistry.idOf(second))) >>> 32);
+        assertEquals(100, engine.contentions());
+    }
+
+    /**
+     * An order is still refused, untouched, when validation finds a product really short.
+     */
+    @Test
+    void realShortageIsRefused() {
+        Product first = new Product("Short first", 1);
+        Product second = new Product("Short second", 1);
+        OptimisticStockEngine engine = new OptimisticStockEngine(List.of(first, second), 1);
+
+        assertFalse(engine.process(order(first, second, 2)));
+        assertEquals(0, engine.contentions());
+    }
+
+    /**
+     * Concurrent single-unit purchases of a hot product sell exactly its stock, never more, however
+     * the units are spread over the sub-buckets.
+     */
+    @Test
+    void hotProductIsNeverOversold() throws Exception {
+        Product hot = new Product("Hot oversold", 1);
+        OptimisticStockEngine engine = new OptimisticStockEngine(List.of(hot), 1_000, Set.of(hot));
+        LongAdder sold = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 400; i++) {
+                    Order order = new Order();
+                    order.add(hot, 1);
+                    if (engine.process(order)) {
+                        sold.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1_000, sold.sum());
+        assertEquals(0, engine.stock(hot));
+    }
+
+    /**
+     * An order for a hot product's whole stock succeeds from one thread, whose own sub-bucket only
+     * holds part of it, by rebalancing; one unit more is refused without losing any.
+     */
+    @Test
+    void hotProductRebalancesToFillAnOrderForAllOfItsStock() {
+        Product hot = new Product("Hot rebalanced", 1);
+        OptimisticStockEngine engine = new OptimisticStockEngine(List.of(hot), 100, Set.of(hot));
+        Order tooMany = new Order();
+        tooMany.add(hot, 101);
+        Order all = new Order();
+        all.add(hot, 100);
+
+        assertFalse(engine.process(tooMany));
+        assertEquals(100, engine.stock(hot));
+        assertTrue(engine.reserve(all));
+        assertEquals(0, engine.stock(hot));
+        assertEquals(100, engine.reserved(hot));
+        assertTrue(engine.cancel(all));
+        assertTrue(engine.process(all));
+        assertEquals(0, engine.stock(hot));
+    }
+
+    /**
+     * An order validated while another order holds a claim it later gives back is refused, although
+     * no order ever took the units: validation reads claims of orders still in progress.
+     */
+    @Test
+    void claimLaterRolledBackCanCauseARefusal() {
+        Product shared = new Product("Window shared", 1);
+        Product gone = new Product("Window gone", 1);
+        Product other = new Product("Window other", 1);
+        WindowTable table = new WindowTable(new HeapStockTable(List.of(shared, gone, other), 1), shared, gone);
+        OptimisticStockEngine engine = new OptimisticStockEngine(table, Set.of());
+        table.probe = () -> table.probeRefused = !engine.process(order(shared, other, 1));
+
+        assertFalse(engine.process(order(shared, gone, 1)));
+        assertTrue(table.probeRefused);
+        assertEquals(1, engine.stock(shared));
+        assertEquals(1, engine.stock(other));
+    }
+
+    private static Order order(Product first, Product second, int secondQuantity) {
+        Order order = new Order();
+        order.add(first, 1);
+        order.add(second, secondQuantity);
+        return order;
+    }
+
+    /**
+     * Counters where a rival order takes the only unit of the second product as soon as the first
+     * product's unit is claimed, and hands it back once that claim is given back, a set number of
+     * times: every attempt validates fine and then loses the race for the second product.
+     */
+    private static final class RivalTable implements StockTable {
+
+        private final StockTable delegate;
+        private final int first;
+        private final int second;
+        private int racesLeft;
+        private boolean rivalHolds;
+
+        RivalTable(StockTable delegate, Product first, Product second, int races) {
+            this.delegate = delegate;
+            this.first = delegate.slotOf(ProductRegistry.idOf(first));
+            this.second = delegate.slotOf(ProductRegistry.idOf(second));
+            this.racesLeft = races;
+        }
+
+        @Override
+        public boolean compareAndSetCounter(int slot, long expected, long next) {
+            boolean set = delegate.compareAndSetCounter(slot, expected, next);
+            if (set && slot == first && next < expected && racesLeft > 0) {
+                delegate.addAndGetCounter(second, -ONE_IN_STOCK);
+                rivalHolds = true;
+                racesLeft--;
+            }
+            return set;
+        }
+
+        @Override
+        public long addAndGetCounter(int slot, long delta) {
+            long counter = delegate.addAndGetCounter(slot, delta);
+            if (slot == first && delta > 0 && rivalHolds) {
+                delegate.addAndGetCounter(second, ONE_IN_STOCK);
+                rivalHolds = false;
+            }
+            return counter;
+        }
+
+        @Override
+        public int slots() {
+            return delegate.slots();
+        }
+
+        @Override
+        public Product product(int slot) {
+            return delegate.product(slot);
+        }
+
+        @Override
+        public int slotOf(int productId) {
+            return delegate.slotOf(productId);
+        }
+
+        @Override
+        public long counter(int slot) {
+            return delegate.counter(slot);
+        }
+
+        @Override
+        public void setCounter(int slot, long counter) {
+            delegate.setCounter(slot, counter);
+        }
+
+        @Override
+        public int maxReserved(int slot) {
+            return delegate.maxReserved(slot);
+        }
+
+        @Override
+        public void raiseMaxReserved(int slot, int reserved) {
+            delegate.raiseMaxReserved(slot, reserved);
+        }
+
+        @Override
+        public void setMaxReserved(int slot, int maxReserved) {
+            delegate.setMaxReserved(slot, maxReserved);
+        }
+    }
+
+    /**
+     * Counters where, as soon as an order claims the shared product's unit, the unit of a second
+     * product is sold elsewhere and a probe order runs once, while that claim is still held.
+     */
+    private static final class WindowTable implements StockTable {
+
+        private final StockTable delegate;
+        private final int shared;
+        private final int gone;
+        private Runnable probe;
+        private boolean probeRefused;
+
+        WindowTable(StockTable delegate, Product shared, Product gone) {
+            this.delegate = delegate;
+            this.shared = delegate.slotOf(ProductRegistry.idOf(shared));
+            this.gone = delegate.slotOf(ProductRegistry.idOf(gone));
+        }
+
+        @Override
+        public boolean compareAndSetCounter(int slot, long expected, long next) {
+            boolean set = delegate.compareAndSetCounter(slot, expected, next);
+            if (set && slot == shared && next < expected && probe != null) {
+                delegate.setCounter(gone, 0);
+                Runnable once = probe;
+                probe = null;
+                once.run();
+            }
+            return set;
+        }
+
+        @Override
+        public long addAndGetCounter(int slot, long delta) {
+            return delegate.addAndGetCounter(slot, delta);
+        }
+
+        @Override
+        public int slots() {
+            return delegate.slots();
+        }
+
+        @Override
+        public Product product(int slot) {
+            return delegate.product(slot);
+        }
+
+        @Override
+        public int slotOf(int productId) {
+            return delegate.slotOf(productId);
+        }
+
+        @Override
+        public long counter(int slot) {
+            return delegate.counter(slot);
+        }
+
+        @Override
+        public void setCounter(int slot, long counter) {
+            delegate.setCounter(slot, counter);
+        }
+
+        @Override
+        public int maxReserved(int slot) {
+            return delegate.maxReserved(slot);
+        }
+
+        @Override
+        public void raiseMaxReserved(int slot, int reserved) {
+            delegate.raiseMaxReserved(slot, reserved);
+        }
+
+        @Override
+        public void setMaxReserved(int slot, int maxReserved) {
+            delegate.setMaxReserved(slot, maxReserved);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReservationExpiryTest {
+
+    private static final Duration LONG_TTL = Duration.ofHours(1);
+
+    /**
+     * A checkout that commits between a reservation being applied and its holds being confirmed is
+     * counted against those holds, so they never expire units that are already gone.
+     */
+    @Test
+    void checkoutBeforeConfirmationIsCountedAgainstTheHolds() {
+        Product product = new Product("Held early", 1);
+        Warehouse warehouse = new Warehouse(List.of(product), StockEngineType.LOCKING, 10);
+        ReservationExpiry expiry = new ReservationExpiry(warehouse, new Product[]{product}, null, Duration.ofMillis(10));
+        try {
+            Order reservation = new ReservationOrder(LONG_TTL);
+            reservation.add(product, 4);
+
+            ReservationExpiry.Hold[] holds = expiry.hold(reservation);
+            assertNotNull(holds);
+            assertTrue(warehouse.reserveProduct(reservation));
+            Order checkout = new ReservationCheckoutOrder();
+            checkout.add(product, 3);
+            assertTrue(warehouse.checkoutReservation(checkout));
+            expiry.consume(checkout);
+            expiry.confirm(holds);
+
+            assertEquals(1, holds[0].remaining);
+        } finally {
+            expiry.close();
+        }
+    }
+
+    /**
+     * Withdrawn holds of a reservation that was not applied are not charged for later checkouts.
+     */
+    @Test
+    void withdrawnHoldsAreSkipped() {
+        Product product = new Product("Held withdrawn", 1);
+        Warehouse warehouse = new Warehouse(List.of(product), StockEngineType.LOCKING, 10);
+        ReservationExpiry expiry = new ReservationExpiry(warehouse, new Product[]{product}, null, Duration.ofMillis(10));
+        try {
+            Order older = new ReservationOrder(LONG_TTL);
+            older.add(product, 2);
+            ReservationExpiry.Hold[] olderHolds = expiry.hold(older);
+            Order failed = new ReservationOrder(LONG_TTL);
+            failed.add(product, 5);
+            ReservationExpiry.Hold[] failedHolds = expiry.hold(failed);
+            Order newer = new ReservationOrder(LONG_TTL);
+            newer.add(product, 3);
+            ReservationExpiry.Hold[] newerHolds = expiry.hold(newer);
+            expiry.confirm(olderHolds);
+            expiry.withdraw(failedHolds);
+            expiry.confirm(newerHolds);
+
+            Order checkout = new ReservationCheckoutOrder();
+            checkout.add(product, 4);
+            expiry.consume(checkout);
+
+            assertEquals(0, olderHolds[0].remaining);
+            assertEquals(0, failedHolds[0].remaining);
+            assertEquals(1, newerHolds[0].remaining);
+        } finally {
+            expiry.close();
+        }
+    }
+
+    /**
+     * A release of more units than are still reserved releases what is left instead of nothing.
+     */
+    @Test
+    void releaseFallsBackToWhatIsStillReserved() {
+        Product product = new Product("Released partly", 1);
+        Warehouse warehouse = new Warehouse(List.of(product), StockEngineType.OPTIMISTIC, 10);
+        Order reservation = new ReservationOrder();
+        reservation.add(product, 5);
+        assertTrue(warehouse.reserveProduct(reservation));
+        Order checkout = new ReservationCheckoutOrder();
+        checkout.add(product, 3);
+        assertTrue(warehouse.checkoutReservation(checkout));
+
+        Order expired = new ReservationCancellationOrder();
+        expired.add(product, 5);
+        warehouse.releaseExpired(List.of(expired));
+
+        assertEquals(new Availability(product, 7, 0), warehouse.availability(product));
+    }
+
+    /**
+     * Units of a reservation that is neither checked out nor cancelled go back to stock once its
+     * time to live has passed.
+     */
+    @Test
+    void expiredReservationReturnsToStock() throws Exception {
+        Product product = new Product("Expired", 1);
+        Warehouse warehouse = new Warehouse(List.of(product), StockEngineType.LOCKING, 10);
+        warehouse.expireReservations(null, Duration.ofMillis(5));
+        try {
+            Order reservation = new ReservationOrder(Duration.ofMillis(20));
+            reservation.add(product, 4);
+            assertEquals(OrderOutcome.RESERVED, warehouse.apply(reservation));
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (warehouse.getReserved(product) != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(new Availability(product, 10, 0), warehouse.availability(product));
+        } finally {
+            warehouse.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    /** Ticks one slot of each level spans: 1, 64, 4096 and 262144. */
+    private static final long[] LEVEL_SPANS = {1, 64, 64 * 64, 64 * 64 * 64};
+
+    /** Ticks the whole wheel spans. */
+    private static final long WHEEL_SPAN = 64L * 64 * 64 * 64;
+
+    /**
+     * Timeouts on every level, on both sides of every level boundary and beyond the top level's
+     * span, cascade down and fire exactly at their deadline tick, wherever the wheel started.
+     */
+    @Test
+    void timeoutsCascadeDownAndFireAtTheirDeadline() {
+        for (long start : new long[]{0, 1, 63, 4095, 262_143, 1_000_003}) {
+            TimingWheel wheel = new TimingWheel(start);
+            List<Recorded> timeouts = new ArrayList<>();
+            for (long span : LEVEL_SPANS) {
+                for (long offset : new long[]{span - 1, span, span + 1, 2 * span + 7, 63 * span, 64 * span - 1}) {
+                    timeouts.add(new Recorded(start + offset));
+                }
+            }
+            timeouts.add(new Recorded(start + WHEEL_SPAN));
+            timeouts.add(new Recorded(start + 2 * WHEEL_SPAN + 5));
+            for (Recorded timeout : timeouts) {
+                assertTrue(wheel.add(timeout));
+            }
+
+            long last = start + 2 * WHEEL_SPAN + 5;
+            for (long tick = start; tick <= last; tick++) {
+                long now = tick;
+                wheel.advance(tick, timeout -> ((Recorded) timeout).firedAt = now);
+            }
+            for (Recorded timeout : timeouts) {
+                assertEquals(timeout.deadline, timeout.firedAt, "started at " + start);
+            }
+        }
+    }
+
+    /**
+     * A timeout added while the wheel is part way through a slot of a higher level still fires on
+     * time, also when its slot index wraps around to the one the wheel is in.
+     */
+    @Test
+    void timeoutsAddedMidWayFireOnTime() {
+        TimingWheel wheel = new TimingWheel(0);
+        List<Recorded> timeouts = new ArrayList<>();
+        for (long tick = 0; tick <= 3 * LEVEL_SPANS[2] + 300_000; tick++) {
+            if (tick % 97 == 0 && tick < 3 * LEVEL_SPANS[2]) {
+                for (long delta : new long[]{0, 1, 63, 64, 4095, 4096, 300_000}) {
+                    Recorded timeout = new Recorded(tick + delta);
+                    assertTrue(wheel.add(timeout));
+                    timeouts.add(timeout);
+                }
+            }
+            long now = tick;
+            wheel.advance(tick, timeout -> ((Recorded) timeout).firedAt = now);
+        }
+        for (Recorded timeout : timeouts) {
+            assertEquals(timeout.deadline, timeout.firedAt);
+        }
+    }
+
+    /**
+     * A deadline that was already processed is refused rather than lost.
+     */
+    @Test
+    void pastDeadlineIsRefused() {
+        TimingWheel wheel = new TimingWheel(10);
+        wheel.advance(20, timeout -> { });
+        assertFalse(wheel.add(new Recorded(20)));
+        assertTrue(wheel.add(new Recorded(21)));
+    }
+
+    private static final class Recorded extends TimingWheel.Timeout {
+        long firedAt = -1;
+
+        Recorded(long deadline) {
+            super(deadline);
+        }
+    }
+}
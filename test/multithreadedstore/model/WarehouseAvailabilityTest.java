@@ -0,0 +1,58 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WarehouseAvailabilityTest {
+
+    private static final int BATCHES = 20_000;
+    private static final int BATCH_SIZE = 4;
+
+    /**
+     * Every order reserves one unit of both products, so a consistent view always shows them equal.
+     */
+    @ParameterizedTest
+    @EnumSource(StockEngineType.class)
+    void snapshotsNeverShowABatchedOrderHalfApplied(StockEngineType engine) throws Exception {
+        Product first = new Product("Snapshot first " + engine, 1);
+        Product second = new Product("Snapshot second " + engine, 2);
+        Warehouse warehouse = new Warehouse(List.of(first, second), engine, 1_000_000);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> torn = new AtomicReference<>();
+
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (!done.get() && torn.get() == null) {
+                List<Availability> view = warehouse.availability(List.of(first, second));
+                if (view.get(0).stock() != view.get(1).stock() || view.get(0).reserved() != view.get(1).reserved()) {
+                    torn.set(view.toString());
+                }
+            }
+        });
+
+        OrderOutcome[] outcomes = new OrderOutcome[BATCH_SIZE];
+        for (int batch = 0; batch < BATCHES && torn.get() == null; batch++) {
+            List<Order> orders = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Order reservation = new ReservationOrder();
+                reservation.add(first, 1);
+                reservation.add(second, 1);
+                orders.add(reservation);
+            }
+            warehouse.applyBatch(orders, outcomes);
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(torn.get(), "torn snapshot");
+        assertEquals(1_000_000 - BATCHES * BATCH_SIZE, warehouse.availability(first).stock());
+        assertEquals(BATCHES * BATCH_SIZE, warehouse.availability(second).reserved());
+    }
+}
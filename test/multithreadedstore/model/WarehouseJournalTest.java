@@ -0,0 +1,275 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WarehouseJournalTest {
+
+    private static final int THREADS = 4;
+    private static final int OPERATIONS = 500;
+
+    /**
+     * Half the threads reserve, half cancel what the others reserved, on one and on two products,
+     * so cancellations keep taking units other threads added. The journal of the warehouse left
+     * open, as if the process died, replays to the same stock without ever going negative.
+     */
+    @ParameterizedTest
+    @EnumSource(StockEngineType.class)
+    void replayAfterCrashRebuildsConcurrentlyAppliedOperations(StockEngineType engine, @TempDir Path directory)
+            throws Exception {
+        Product first = new Product("Journal first " + engine, 1);
+        Product second = new Product("Journal second " + engine, 2);
+        List<Product> products = List.of(first, second);
+        Warehouse crashed = Warehouse.open(products, engine, directory);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean reserving = t % 2 == 0;
+            Random random = new Random(t);
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int n = 0; n < OPERATIONS; n++) {
+                    Order order = reserving ? new ReservationOrder() : new ReservationCancellationOrder();
+                    order.add(first, 1);
+                    if (random.nextBoolean()) {
+                        order.add(second, 1);
+                    }
+                    if (reserving) {
+                        crashed.reserveProduct(order);
+                    } else {
+                        crashed.cancelReservation(order);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Warehouse recovered = Warehouse.open(products, engine, directory);
+        assertEquals(crashed.availability(), recovered.availability());
+        recovered.close();
+    }
+
+    /**
+     * A record torn by a crash in the middle of a flush is dropped, and the journal goes on after
+     * the last intact record.
+     */
+    @Test
+    void tornTailIsDroppedOnRecovery(@TempDir Path directory) throws Exception {
+        Product product = new Product("Journal torn", 1);
+        Warehouse warehouse = Warehouse.open(List.of(product), StockEngineType.LOCKING, directory);
+        Order purchase = new Order();
+        purchase.add(product, 3);
+        assertTrue(warehouse.process(purchase));
+        warehouse.close();
+        Files.write(directory.resolve("journal-0.log"), new byte[]{12, 0, 0, 0, 1, 2},
+                StandardOpenOption.APPEND);
+
+        Warehouse recovered = Warehouse.open(List.of(product), StockEngineType.LOCKING, directory);
+        assertEquals(7, recovered.getStock(product));
+        assertTrue(recovered.process(purchase));
+        recovered.close();
+
+        Warehouse again = Warehouse.open(List.of(product), StockEngineType.LOCKING, directory);
+        assertEquals(4, again.getStock(product));
+        again.close();
+    }
+
+    /**
+     * An intact record taking more than the replayed state holds means journal and checkpoint do
+     * not match; recovery refuses to build negative stock from it.
+     */
+    @Test
+    void replayRejectsRecordsDrivingStockNegative(@TempDir Path directory) throws Exception {
+        Product product = new Product("Journal negative", 1);
+        Product[] catalog = {product};
+        WarehouseJournal journal = WarehouseJournal.recover(directory, catalog,
+                StockEngineType.LOCKING.create(List.of(catalog), 10));
+        Order checkout = new ReservationCheckoutOrder();
+        checkout.add(product, 1);
+        journal.append(WarehouseJournal.CHECKOUT, checkout);
+        journal.close();
+
+        IOException failure = assertThrows(IOException.class,
+                () -> Warehouse.open(List.of(product), StockEngineType.LOCKING, directory));
+        assertTrue(failure.getMessage().contains("takes more than was in stock"), failure.getMessage());
+    }
+
+    /**
+     * The catalog fingerprint in the journal header depends only on the names and prices of the
+     * products, so journals stay readable across JDKs whatever {@code Product.hashCode()} does.
+     */
+    @Test
+    void catalogFingerprintIsStable(@TempDir Path directory) throws Exception {
+        List<Product> products = List.of(new Product("Fingerprint first", 1.5), new Product("Fingerprint second", 20));
+        Warehouse warehouse = Warehouse.open(products, StockEngineType.LOCKING, directory);
+        warehouse.close();
+
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("journal-0.log")));
+        assertEquals(75306744484L, header.getLong(8));
+    }
+
+    /**
+     * While the leader of a group commit is inside {@code force}, other threads still append: the
+     * lock is released for the whole write and fsync.
+     */
+    @Test
+    void appendCompletesWhileLeaderForces(@TempDir Path directory) throws Exception {
+        Product product = new Product("Journal forcing", 1);
+        Product[] catalog = {product};
+        CountDownLatch forcing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WarehouseJournal journal = WarehouseJournal.recover(directory, catalog,
+                StockEngineType.LOCKING.create(List.of(catalog), 10), channel -> new BlockingForce(channel, forcing, release));
+        Order purchase = new Order();
+        purchase.add(product, 1);
+        journal.append(WarehouseJournal.PROCESS, purchase);
+        Thread leader = Thread.ofPlatform().start(journal::awaitDurable);
+        assertTrue(forcing.await(10, TimeUnit.SECONDS));
+
+        Thread appender = Thread.ofPlatform().start(() -> journal.append(WarehouseJournal.PROCESS, purchase));
+        appender.join(TimeUnit.SECONDS.toMillis(10));
+        boolean appended = !appender.isAlive();
+        release.countDown();
+        leader.join();
+        appender.join();
+        assertTrue(appended, "append waited for the leader's fsync");
+
+        journal.close();
+        Warehouse recovered = Warehouse.open(List.of(product), StockEngineType.LOCKING, directory);
+        assertEquals(8, recovered.getStock(product));
+        recovered.close();
+    }
+
+    /**
+     * Journal channel whose first {@code force} waits until released.
+     */
+    private static final class BlockingForce extends FileChannel {
+
+        private final FileChannel delegate;
+        private final CountDownLatch forcing;
+        private final CountDownLatch release;
+
+        BlockingForce(FileChannel delegate, CountDownLatch forcing, CountDownLatch release) {
+            this.delegate = delegate;
+            this.forcing = forcing;
+            this.release = release;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            forcing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            delegate.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WarehouseRouterTest {
+
+    /**
+     * A split reservation interrupted after the first warehouse settled its part loses no units:
+     * the settled part replays as one reservation and the part only taken is back in stock.
+     */
+    @ParameterizedTest
+    @EnumSource(StockEngineType.class)
+    void crashBetweenSplitPartsLosesNoUnits(StockEngineType engine, @TempDir Path directory) throws Exception {
+        Product product = new Product("Split crash " + engine, 1);
+        List<Product> products = List.of(product);
+        Warehouse first = Warehouse.open(products, engine, directory.resolve("first"));
+        Warehouse second = Warehouse.open(products, engine, directory.resolve("second"));
+        Order firstPart = reservation(product, 10);
+        Order secondPart = reservation(product, 5);
+
+        assertTrue(first.take(firstPart, false));
+        assertTrue(second.take(secondPart, false));
+        first.settle(firstPart, OrderType.RESERVATION);
+
+        Warehouse firstRecovered = Warehouse.open(products, engine, directory.resolve("first"));
+        Warehouse secondRecovered = Warehouse.open(products, engine, directory.resolve("second"));
+        assertEquals(new Availability(product, 0, 10), firstRecovered.availability(product));
+        assertEquals(new Availability(product, 10, 0), secondRecovered.availability(product));
+        firstRecovered.close();
+        secondRecovered.close();
+    }
+
+    /**
+     * A split reservation routed over durable warehouses replays to the same stock and reserved stock.
+     */
+    @ParameterizedTest
+    @EnumSource(StockEngineType.class)
+    void splitReservationReplaysAsReserved(StockEngineType engine, @TempDir Path directory) throws Exception {
+        Product product = new Product("Split replay " + engine, 1);
+        List<Product> products = List.of(product);
+        WarehouseRouter router = new WarehouseRouter(List.of(
+                Warehouse.open(products, engine, directory.resolve("first")),
+                Warehouse.open(products, engine, directory.resolve("second"))));
+
+        assertEquals(OrderOutcome.RESERVED, router.apply(reservation(product, 15)));
+        assertEquals(5, router.getStock(product));
+        assertEquals(15, router.getReserved(product));
+        router.close();
+
+        WarehouseRouter recovered = new WarehouseRouter(List.of(
+                Warehouse.open(products, engine, directory.resolve("first")),
+                Warehouse.open(products, engine, directory.resolve("second"))));
+        assertEquals(5, recovered.getStock(product));
+        assertEquals(15, recovered.getReserved(product));
+        recovered.close();
+    }
+
+    /**
+     * Maxima that warehouses reached at different times are not added up.
+     */
+    @Test
+    void maxReservedIsNotSummedOverWarehouses() {
+        Product product = new Product("Split maximum", 1);
+        Warehouse first = new Warehouse(List.of(product), StockEngineType.LOCKING, 10);
+        Warehouse second = new Warehouse(List.of(product), StockEngineType.LOCKING, 10);
+        WarehouseRouter router = new WarehouseRouter(List.of(first, second));
+
+        assertTrue(first.reserveProduct(reservation(product, 8)));
+        Order cancellation = new ReservationCancellationOrder();
+        cancellation.add(product, 8);
+        assertTrue(first.cancelReservation(cancellation));
+        assertTrue(second.reserveProduct(reservation(product, 6)));
+
+        assertEquals(Map.of(product, 8), router.getMaxReservedByProduct());
+        assertEquals(List.of(Map.of(product, 8), Map.of(product, 6)), router.getMaxReservedByWarehouse());
+    }
+
+    /**
+     * An order that keeps losing the race for the units it was routed to, far more often than any
+     * fixed retry budget, is routed again until it is applied instead of being refused as a shortage.
+     */
+    @Test
+    void lostRacesAreRetriedUntilTheOrderIsApplied() {
+        Product product = new Product("Split raced", 1);
+        RacedEngine engine = new RacedEngine(List.of(product), 100);
+        WarehouseRouter router = new WarehouseRouter(List.of(new Warehouse(List.of(product), engine)));
+
+        assertEquals(OrderOutcome.RESERVED, router.apply(reservation(product, 4)));
+        assertEquals(0, engine.racesLeft);
+        assertEquals(6, router.getStock(product));
+        assertEquals(4, router.getReserved(product));
+    }
+
+    /**
+     * Engine whose first reservations are refused as if a rival held the units for a moment.
+     */
+    private static final class RacedEngine extends LockingStockEngine {
+
+        int racesLeft;
+
+        RacedEngine(List<Product> products, int races) {
+            super(products, 10);
+            this.racesLeft = races;
+        }
+
+        @Override
+        public boolean reserve(Order reservation) {
+            if (racesLeft > 0) {
+                racesLeft--;
+                return false;
+            }
+            return super.reserve(reservation);
+        }
+    }
+
+    private static Order reservation(Product product, int quantity) {
+        Order reservation = new ReservationOrder();
+        reservation.add(product, quantity);
+        return reservation;
+    }
+}
@@ -0,0 +1,49 @@
+package multithreadedstore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class WriteActivityTest {
+
+    @Test
+    void readerWaitsForTheOutermostOfNestedMarks() throws Exception {
+        WriteActivity activity = new WriteActivity();
+        CountDownLatch inner = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread writer = Thread.ofPlatform().start(() -> {
+            activity.begin();
+            activity.begin();
+            activity.end();
+            inner.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            activity.end();
+        });
+        inner.await();
+
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(activity::awaitWritesInProgress);
+        Thread.sleep(100);
+        assertFalse(reader.isDone(), "reader returned while the outer write was still in progress");
+
+        finish.countDown();
+        reader.get(5, TimeUnit.SECONDS);
+        writer.join();
+    }
+
+    @Test
+    void readerDoesNotWaitForIdleWriters() {
+        WriteActivity activity = new WriteActivity();
+        activity.begin();
+        activity.end();
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), activity::awaitWritesInProgress);
+    }
+}
@@ -0,0 +1,129 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderType;
+import multithreadedstore.model.ReservationCancellationOrder;
+import multithreadedstore.model.ReservationCheckoutOrder;
+import multithreadedstore.model.ReservationOrder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LaneTransportTest {
+
+    private static final int LANE_CAPACITY = 8192;
+    private static final int CONSUMERS = 4;
+    private static final int CYCLES = 800;
+
+    /**
+     * While every lane holds orders, consumers polling at once take exactly the weighted share of
+     * every lane: no two of them ever share a turn.
+     */
+    @Test
+    void concurrentConsumersTakeExactlyTheWeightedShares() throws Exception {
+        LaneTransport lanes = new LaneTransport(LANE_CAPACITY, DispatchPolicy.WEIGHTED_FAIR, WaitStrategy.PARK);
+        fill(lanes, LANE_CAPACITY);
+        int totalWeight = LaneTransport.defaultWeights().values().stream().mapToInt(Integer::intValue).sum();
+        int pollsPerConsumer = CYCLES * totalWeight / CONSUMERS;
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> consumers = new ArrayList<>();
+        for (int c = 0; c < CONSUMERS; c++) {
+            consumers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < pollsPerConsumer; i++) {
+                    assertNotNull(lanes.poll());
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+
+        for (OrderType type : OrderType.values()) {
+            assertEquals((long) CYCLES * LaneTransport.defaultWeights().get(type), lanes.dispatched(type), type.name());
+        }
+    }
+
+    /**
+     * Under strict priority a lane holding orders is served at least once every
+     * {@code starvationLimit} times the number of lanes, however busy the heavier lanes are.
+     */
+    @Test
+    void strictPriorityServesEveryLaneWithinTheStarvationBound() {
+        int starvationLimit = 5;
+        LaneTransport lanes = new LaneTransport(LANE_CAPACITY, DispatchPolicy.STRICT_PRIORITY,
+                LaneTransport.defaultWeights(), starvationLimit, WaitStrategy.PARK);
+        fill(lanes, LANE_CAPACITY);
+        int bound = starvationLimit * OrderType.values().length;
+
+        int[] lastServed = new int[OrderType.values().length];
+        for (int poll = 1; poll <= 4000; poll++) {
+            lastServed[lanes.poll().type().ordinal()] = poll;
+            for (OrderType type : OrderType.values()) {
+                assertTrue(poll - lastServed[type.ordinal()] < bound, type + " starved at poll " + poll);
+            }
+        }
+    }
+
+    /**
+     * A pending poison pill is not counted as a waiting order, and is only handed out once every
+     * lane is empty.
+     */
+    @Test
+    void poisonIsNotCountedAndComesLast() throws Exception {
+        LaneTransport lanes = new LaneTransport(4, DispatchPolicy.WEIGHTED_FAIR, WaitStrategy.PARK);
+        lanes.put(Order.POISON);
+        assertEquals(0, lanes.size());
+        lanes.put(new ReservationOrder());
+        assertEquals(1, lanes.size());
+
+        assertEquals(OrderType.RESERVATION, lanes.poll().type());
+        assertSame(Order.POISON, lanes.poll());
+        assertEquals(null, lanes.poll());
+    }
+
+    /**
+     * Under {@link AdmissionPolicy#SHED_BY_TYPE} every type's share is of its own lane: a full
+     * checkout lane does not shed reservations, and reservations stop at a quarter of their lane.
+     */
+    @Test
+    void shedByTypeSharesOutEachLane() throws Exception {
+        LaneTransport lanes = new LaneTransport(16, DispatchPolicy.WEIGHTED_FAIR, WaitStrategy.PARK);
+        OrderIntake intake = new OrderIntake(lanes, lanes.capacity(), AdmissionPolicy.SHED_BY_TYPE, Duration.ZERO);
+        for (int i = 0; i < 16; i++) {
+            assertTrue(intake.submit(new ReservationCheckoutOrder()));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(intake.submit(new ReservationOrder()));
+        }
+        assertFalse(intake.submit(new ReservationOrder()));
+        assertEquals(4, lanes.depth(OrderType.RESERVATION));
+        assertEquals(1, intake.rejected(OrderType.RESERVATION));
+    }
+
+    private static void fill(LaneTransport lanes, int perLane) {
+        for (int i = 0; i < perLane; i++) {
+            assertTrue(lanes.offer(new Order()));
+            assertTrue(lanes.offer(new ReservationOrder()));
+            assertTrue(lanes.offer(new ReservationCancellationOrder()));
+            assertTrue(lanes.offer(new ReservationCheckoutOrder()));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.HeavyHitter;
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.Report;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveAnalyticsTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 2_000;
+
+    /**
+     * Orders committed from several workers at once are all counted: once the workers are done a
+     * report holds exactly their orders, revenue and units.
+     */
+    @Test
+    void concurrentCommitsAreCountedExactly() throws Exception {
+        Product bestseller = new Product("Live bestseller", 2.5);
+        Product runnerUp = new Product("Live runner-up", 4);
+        Product third = new Product("Live third", 1);
+        LiveAnalytics analytics = new LiveAnalytics(List.of(bestseller, runnerUp, third));
+
+        commitConcurrently(analytics, bestseller, runnerUp, third);
+
+        Report report = analytics.snapshot(Map.of());
+        assertEquals(THREADS * ROUNDS * 2L, report.totalOrders());
+        assertEquals(THREADS * ROUNDS * (3 * 2.5 + 2 * 4 + 1), report.totalProfit(), 1e-6);
+        assertEquals(THREADS * ROUNDS, report.totalReservations());
+        assertEquals(THREADS * ROUNDS, report.rejectedOrders());
+        assertEquals(List.of(
+                new HeavyHitter(bestseller.name(), THREADS * ROUNDS * 3L, 0),
+                new HeavyHitter(runnerUp.name(), THREADS * ROUNDS * 2L, 0),
+                new HeavyHitter(third.name(), THREADS * ROUNDS, 0)), report.topProducts());
+    }
+
+    /**
+     * Striped Space-Saving summaries updated from several workers at once still rank the products
+     * correctly, and every estimate bounds the true units sold from both sides.
+     */
+    @Test
+    void approximateTopProductsBoundTheTrueCounts() throws Exception {
+        Product bestseller = new Product("Approximate bestseller", 2.5);
+        Product runnerUp = new Product("Approximate runner-up", 4);
+        Product third = new Product("Approximate third", 1);
+        LiveAnalytics analytics = LiveAnalytics.approximate(3, 8);
+
+        commitConcurrently(analytics, bestseller, runnerUp, third);
+
+        List<HeavyHitter> top = analytics.snapshot(Map.of()).topProducts();
+        assertEquals(List.of(bestseller.name(), runnerUp.name(), third.name()),
+                top.stream().map(HeavyHitter::product).toList());
+        long[] sold = {THREADS * ROUNDS * 3L, THREADS * ROUNDS * 2L, THREADS * ROUNDS};
+        for (int i = 0; i < sold.length; i++) {
+            assertTrue(top.get(i).units() >= sold[i], top.get(i).toString());
+            assertTrue(top.get(i).units() - top.get(i).maxError() <= sold[i], top.get(i).toString());
+        }
+    }
+
+    /**
+     * Commits one round per thread: a purchase of three bestsellers, a checkout of two runners-up
+     * and one third product, a reservation, which sells nothing, and a refused order.
+     */
+    private static void commitConcurrently(LiveAnalytics analytics, Product bestseller, Product runnerUp, Product third)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < ROUNDS; i++) {
+                    Order purchase = new Order();
+                    purchase.add(bestseller, 3);
+                    analytics.onCommit(purchase, OrderOutcome.PURCHASED);
+                    Order checkout = new Order();
+                    checkout.add(runnerUp, 2);
+                    checkout.add(third, 1);
+                    analytics.onCommit(checkout, OrderOutcome.CHECKED_OUT);
+                    analytics.onCommit(purchase, OrderOutcome.RESERVED);
+                    analytics.onCommit(purchase, OrderOutcome.REJECTED_OVERLOAD);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
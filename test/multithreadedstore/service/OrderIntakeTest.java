@@ -0,0 +1,61 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderIntakeTest {
+
+    private final List<Throwable> reported = new CopyOnWriteArrayList<>();
+    private Thread.UncaughtExceptionHandler previousHandler;
+
+    @BeforeEach
+    void captureReports() {
+        previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, failure) -> reported.add(failure));
+    }
+
+    @AfterEach
+    void restoreHandler() {
+        Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+    }
+
+    /**
+     * A listener that throws on a refusal is reported; the other listeners and the submitter still
+     * learn the order was refused, and the submitting thread does not see the failure.
+     */
+    @Test
+    void failingListenerDoesNotHideARefusal() throws Exception {
+        RingBufferTransport transport = new RingBufferTransport(2, WaitStrategy.PARK);
+        OrderIntake intake = new OrderIntake(transport, 2, AdmissionPolicy.REJECT_FAST, Duration.ZERO);
+        RuntimeException broken = new IllegalStateException("listener broke");
+        List<OrderOutcome> seen = new CopyOnWriteArrayList<>();
+        intake.addListener((order, outcome) -> {
+            throw broken;
+        });
+        intake.addListener((order, outcome) -> seen.add(outcome));
+        assertTrue(intake.submit(new Order()));
+        assertTrue(intake.submit(new Order()));
+
+        Order refused = new Order();
+        CompletableFuture<OrderOutcome> outcome = refused.outcome();
+        assertFalse(intake.submit(refused));
+        assertEquals(OrderOutcome.REJECTED_OVERLOAD, intake.submitAsync(new Order()).get(5, TimeUnit.SECONDS));
+
+        assertEquals(OrderOutcome.REJECTED_OVERLOAD, outcome.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(OrderOutcome.REJECTED_OVERLOAD, OrderOutcome.REJECTED_OVERLOAD), seen);
+        assertEquals(List.of(broken, broken), reported);
+    }
+}
@@ -0,0 +1,98 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.Report;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderLogTest {
+
+    private static final int THREADS = 4;
+
+    /**
+     * Orders appended from several threads at once, including orders without items, all show up
+     * in the report once and only once, each under an order id of its own.
+     */
+    @Test
+    void reportCountsEveryOrderAppendedConcurrently() throws Exception {
+        Product bestseller = new Product("Logged bestseller", 3.25);
+        Product runnerUp = new Product("Logged runner-up", 1.50);
+        OrderLog log = new OrderLog();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 50; i++) {
+                    log.onCommit(order(bestseller, 2), OrderOutcome.PURCHASED);
+                    if (i < 30) {
+                        log.onCommit(order(runnerUp, 1), OrderOutcome.CHECKED_OUT);
+                    }
+                    if (i < 10) {
+                        log.onCommit(new Order(), OrderOutcome.INVALID);
+                    }
+                    if (i < 5) {
+                        log.onCommit(new Order(), OrderOutcome.REJECTED_OVERLOAD);
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Report report = Analytics.generateReport(log, Map.of());
+        assertEquals(THREADS * 80, report.totalOrders());
+        assertEquals(THREADS * (50 * 2 * 3.25 + 30 * 1.50), report.totalProfit(), 1e-9);
+        assertEquals(List.of(bestseller.name(), runnerUp.name()), report.top3Products());
+        assertEquals(THREADS * 5, report.rejectedOrders());
+        assertEquals(THREADS * 10, Analytics.countOrders(log, OrderOutcome.INVALID));
+        assertEquals(THREADS * 95, log.rows());
+
+        Set<Long> orderIds = new HashSet<>();
+        for (OrderLog.Chunk chunk : log.chunks()) {
+            for (int row = 0; row < chunk.size(); row++) {
+                orderIds.add(chunk.orderIds[row]);
+            }
+        }
+        assertEquals(THREADS * 95, orderIds.size());
+    }
+
+    /**
+     * A thread that appends a single order costs a small chunk, not a full-size one.
+     */
+    @Test
+    void threadAppendingOnceGetsASmallChunk() throws Exception {
+        OrderLog log = new OrderLog();
+        Thread thread = Thread.ofPlatform().start(
+                () -> log.onCommit(order(new Product("Logged once", 1), 1), OrderOutcome.PURCHASED));
+        thread.join();
+
+        List<OrderLog.Chunk> chunks = log.chunks();
+        assertEquals(1, chunks.size());
+        assertEquals(OrderLog.FIRST_CHUNK_ROWS, chunks.get(0).capacity());
+        assertEquals(1, chunks.get(0).size());
+    }
+
+    private static Order order(Product product, int quantity) {
+        Order order = new Order();
+        order.add(product, quantity);
+        return order;
+    }
+}
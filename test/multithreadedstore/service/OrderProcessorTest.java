@@ -0,0 +1,233 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.StockEngineType;
+import multithreadedstore.model.Warehouse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderProcessorTest {
+
+    private final List<Throwable> reported = new CopyOnWriteArrayList<>();
+    private Thread.UncaughtExceptionHandler previousHandler;
+
+    @BeforeEach
+    void captureReports() {
+        previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, failure) -> reported.add(failure));
+    }
+
+    @AfterEach
+    void restoreHandler() {
+        Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+    }
+
+    /**
+     * A poison pill taken long before the last order arrives must not make workers that find the
+     * transport empty for a moment leave before {@link OrderProcessor#awaitProcessing()}.
+     */
+    @Test
+    void poisonPillDoesNotStartTheDrain() throws Exception {
+        Product product = new Product("Poisoned", 1);
+        RingBufferTransport queue = new RingBufferTransport(16, WaitStrategy.PARK);
+        OrderProcessor processor = new OrderProcessor(new Warehouse(List.of(product), StockEngineType.LOCKING, 10),
+                queue, null, null, null, 2);
+        processor.startWorkers(2);
+
+        queue.put(Order.POISON);
+        Thread.sleep(100);
+        assertEquals(2, processor.workerCount());
+        Order late = purchase(product);
+        queue.put(late);
+
+        assertEquals(OrderOutcome.PURCHASED, late.outcome().get(5, TimeUnit.SECONDS));
+        processor.awaitProcessing();
+        assertEquals(0, processor.workerCount());
+    }
+
+    /**
+     * A listener that throws is reported, the order still completes, and other listeners still see it.
+     */
+    @Test
+    void failingListenerIsReportedAndOrdersStillComplete() throws Exception {
+        Product product = new Product("Listened", 1);
+        RingBufferTransport queue = new RingBufferTransport(16, WaitStrategy.PARK);
+        OrderProcessor processor = new OrderProcessor(new Warehouse(List.of(product), StockEngineType.LOCKING, 10),
+                queue, null, null, null, 1);
+        RuntimeException broken = new IllegalStateException("listener broke");
+        List<OrderOutcome> seen = new CopyOnWriteArrayList<>();
+        processor.addListener((order, outcome) -> {
+            throw broken;
+        });
+        processor.addListener((order, outcome) -> seen.add(outcome));
+        processor.startWorkers(1);
+
+        Order order = purchase(product);
+        queue.put(order);
+        assertEquals(OrderOutcome.PURCHASED, order.outcome().get(5, TimeUnit.SECONDS));
+        processor.awaitProcessing();
+
+        assertEquals(List.of(OrderOutcome.PURCHASED), seen);
+        assertEquals(List.of(broken), reported);
+    }
+
+    /**
+     * An order whose application throws fails its future, is reported, and the worker goes on
+     * with the next order and still leaves the running count when drained.
+     */
+    @Test
+    void failingApplyFailsTheOrderAndTheWorkerCarriesOn() throws Exception {
+        Product product = new Product("Failing", 1);
+        RuntimeException broken = new IllegalStateException("apply broke");
+        Order poisoned = purchase(product);
+        Warehouse warehouse = new Warehouse(List.of(product), StockEngineType.LOCKING, 10) {
+            @Override
+            public OrderOutcome apply(Order order) {
+                if (order == poisoned) {
+                    throw broken;
+                }
+                return super.apply(order);
+            }
+        };
+        RingBufferTransport queue = new RingBufferTransport(16, WaitStrategy.PARK);
+        OrderProcessor processor = new OrderProcessor(warehouse, queue, null, null, null, 1);
+        processor.startWorkers(1);
+
+        Order next = purchase(product);
+        queue.put(poisoned);
+        queue.put(next);
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> poisoned.outcome().get(5, TimeUnit.SECONDS));
+        assertSame(broken, failure.getCause());
+        assertEquals(OrderOutcome.PURCHASED, next.outcome().get(5, TimeUnit.SECONDS));
+        processor.awaitProcessing();
+        assertEquals(0, processor.workerCount());
+        assertEquals(List.of(broken), reported);
+    }
+
+    /**
+     * Draining waits for a scaling round in progress before it stops the pool, so a worker that
+     * round starts is never rejected.
+     */
+    @Test
+    void drainWaitsForScalingInProgress() throws Exception {
+        Product product = new Product("Scaled", 1);
+        CountDownLatch scaling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OrderTransport queue = new ScalerBlockingTransport(new LinkedBlockingQueue<>(), scaling, release);
+        OrderProcessor processor = new OrderProcessor(new Warehouse(List.of(product), StockEngineType.LOCKING, 10),
+                queue, 1, 2, 1, ExecutionMode.PLATFORM, Duration.ZERO);
+        processor.startWorkers(1);
+        assertTrue(scaling.await(10, TimeUnit.SECONDS));
+
+        Thread drain = Thread.ofPlatform().start(() -> {
+            try {
+                processor.awaitProcessing();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        drain.join(TimeUnit.SECONDS.toMillis(2));
+        boolean waited = drain.isAlive();
+        release.countDown();
+        drain.join();
+
+        assertTrue(waited, "drain stopped the pool while the scaler was running");
+        assertEquals(0, processor.workerCount());
+        assertEquals(List.of(), reported);
+    }
+
+    /**
+     * Transport whose first size query from the scaler reports a backlog only once released,
+     * ignoring the interrupt that stops the scaler.
+     */
+    private static final class ScalerBlockingTransport implements OrderTransport {
+
+        private final BlockingQueue<Order> queue;
+        private final CountDownLatch scaling;
+        private final CountDownLatch release;
+
+        ScalerBlockingTransport(BlockingQueue<Order> queue, CountDownLatch scaling, CountDownLatch release) {
+            this.queue = queue;
+            this.scaling = scaling;
+            this.release = release;
+        }
+
+        @Override
+        public int size() {
+            if (!Thread.currentThread().getName().startsWith("worker-scaler") || scaling.getCount() == 0) {
+                return queue.size();
+            }
+            scaling.countDown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void put(Order order) throws InterruptedException {
+            queue.put(order);
+        }
+
+        @Override
+        public boolean offer(Order order) {
+            return queue.offer(order);
+        }
+
+        @Override
+        public boolean offer(Order order, long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.offer(order, timeout, unit);
+        }
+
+        @Override
+        public Order take() throws InterruptedException {
+            return queue.take();
+        }
+
+        @Override
+        public Order poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Order> target, int maxOrders) {
+            return queue.drainTo(target, maxOrders);
+        }
+    }
+
+    private static Order purchase(Product product) {
+        Order order = new Order();
+        order.add(product, 1);
+        order.outcome();
+        return order;
+    }
+}
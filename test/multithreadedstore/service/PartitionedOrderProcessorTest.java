@@ -0,0 +1,169 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import multithreadedstore.model.OrderOutcome;
+import multithreadedstore.model.OrderType;
+import multithreadedstore.model.Product;
+import multithreadedstore.model.ReservationCancellationOrder;
+import multithreadedstore.model.ReservationCheckoutOrder;
+import multithreadedstore.model.ReservationOrder;
+import multithreadedstore.model.StockEngineType;
+import multithreadedstore.model.Warehouse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedOrderProcessorTest {
+
+    private static final int PRODUCTS = 12;
+    private static final int STOCK = 1_000_000;
+    private static final int ORDERS = 4_000;
+
+    /**
+     * Items of an order to build afresh for every processor, so each one completes its own futures.
+     */
+    private record Spec(OrderType type, int[] products, int[] quantities) {
+
+        Order build(List<Product> catalog) {
+            Order order = switch (type) {
+                case PURCHASE -> new Order();
+                case RESERVATION -> new ReservationOrder();
+                case CANCELLATION -> new ReservationCancellationOrder();
+                case CHECKOUT -> new ReservationCheckoutOrder();
+            };
+            for (int i = 0; i < products.length; i++) {
+                order.add(catalog.get(products[i]), quantities[i]);
+            }
+            return order;
+        }
+    }
+
+    /**
+     * Purchases and reservations first, then cancellations and checkouts of at most what was
+     * reserved, with ample stock: every order commits as asked whatever the interleaving, so both
+     * processors must end with the same stock and the same outcomes.
+     */
+    @Test
+    void partitionedResultsMatchTheSharedProcessor() throws Exception {
+        List<Product> catalog = IntStream.range(0, PRODUCTS)
+                .mapToObj(i -> new Product("Partitioned " + i, i + 1))
+                .toList();
+        Random random = new Random(42);
+        List<Spec> first = new ArrayList<>();
+        int[] reserved = new int[PRODUCTS];
+        for (int n = 0; n < ORDERS; n++) {
+            Spec spec = randomSpec(random, random.nextBoolean() ? OrderType.PURCHASE : OrderType.RESERVATION, null);
+            first.add(spec);
+            if (spec.type() == OrderType.RESERVATION) {
+                for (int i = 0; i < spec.products().length; i++) {
+                    reserved[spec.products()[i]] += spec.quantities()[i];
+                }
+            }
+        }
+        List<Spec> second = new ArrayList<>();
+        for (int n = 0; n < ORDERS; n++) {
+            Spec spec = randomSpec(random, random.nextBoolean() ? OrderType.CANCELLATION : OrderType.CHECKOUT, reserved);
+            if (spec != null) {
+                second.add(spec);
+            }
+        }
+
+        PartitionedOrderProcessor partitioned = new PartitionedOrderProcessor(catalog, STOCK, 4, 64, ExecutionMode.PLATFORM);
+        partitioned.start();
+        List<OrderOutcome> partitionedOutcomes = run(partitioned.intake(), catalog, first, second);
+        partitioned.awaitProcessing();
+
+        Warehouse warehouse = new Warehouse(catalog, StockEngineType.LOCKING, STOCK);
+        RingBufferTransport queue = new RingBufferTransport(256, WaitStrategy.PARK);
+        OrderProcessor shared = new OrderProcessor(warehouse, queue, null, null, null, 2, 4, ExecutionMode.PLATFORM);
+        shared.startWorkers(2);
+        List<OrderOutcome> sharedOutcomes = run(queue, catalog, first, second);
+        shared.awaitProcessing();
+
+        assertEquals(sharedOutcomes, partitionedOutcomes);
+        assertTrue(partitionedOutcomes.stream().allMatch(OrderOutcome::isApplied), "every order should commit as asked");
+        for (Product product : catalog) {
+            assertEquals(warehouse.getStock(product), partitioned.getStock(product), product.name());
+            assertEquals(warehouse.getReserved(product), partitioned.getReserved(product), product.name());
+        }
+    }
+
+    /**
+     * A reservation that one of its products cannot cover falls back to a purchase, which falls
+     * short as well; whatever parts were taken go back.
+     */
+    @Test
+    void failedSplitOrderLeavesStockUntouched() throws Exception {
+        List<Product> catalog = IntStream.range(0, 8)
+                .mapToObj(i -> new Product("Short " + i, i + 1))
+                .toList();
+        PartitionedOrderProcessor processor = new PartitionedOrderProcessor(catalog, 5, 2, 4, ExecutionMode.PLATFORM);
+        processor.start();
+        Order reservation = new ReservationOrder();
+        for (Product product : catalog) {
+            reservation.add(product, product == catalog.get(7) ? 6 : 1);
+        }
+        processor.intake().put(reservation);
+
+        assertEquals(OrderOutcome.INSUFFICIENT_STOCK, reservation.outcome().get(10, TimeUnit.SECONDS));
+        processor.awaitProcessing();
+        for (Product product : catalog) {
+            assertEquals(5, processor.getStock(product));
+            assertEquals(0, processor.getReserved(product));
+        }
+    }
+
+    /**
+     * Submits the first orders, waits for their outcomes, then submits the second ones and
+     * returns every outcome in submission order.
+     */
+    private static List<OrderOutcome> run(OrderSink sink, List<Product> catalog, List<Spec> first, List<Spec> second)
+            throws Exception {
+        List<OrderOutcome> outcomes = new ArrayList<>();
+        for (List<Spec> phase : List.of(first, second)) {
+            List<CompletableFuture<OrderOutcome>> futures = new ArrayList<>();
+            for (Spec spec : phase) {
+                Order order = spec.build(catalog);
+                futures.add(order.outcome());
+                sink.put(order);
+            }
+            for (CompletableFuture<OrderOutcome> future : futures) {
+                outcomes.add(future.get(30, TimeUnit.SECONDS));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Returns an order of one to three distinct products; with a budget, only of quantities still
+     * left in it, which are taken out, or null if the budget ran out for the products drawn.
+     */
+    private static Spec randomSpec(Random random, OrderType type, int[] budget) {
+        int items = 1 + random.nextInt(3);
+        int[] products = random.ints(0, PRODUCTS).distinct().limit(items).toArray();
+        int[] quantities = new int[items];
+        for (int i = 0; i < items; i++) {
+            quantities[i] = 1 + random.nextInt(3);
+            if (budget != null) {
+                quantities[i] = Math.min(quantities[i], budget[products[i]]);
+                if (quantities[i] == 0) {
+                    return null;
+                }
+            }
+        }
+        if (budget != null) {
+            for (int i = 0; i < items; i++) {
+                budget[products[i]] -= quantities[i];
+            }
+        }
+        return new Spec(type, products, quantities);
+    }
+}
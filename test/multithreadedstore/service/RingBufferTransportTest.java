@@ -0,0 +1,149 @@
+package multithreadedstore.service;
+
+import multithreadedstore.model.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTransportTest {
+
+    private static final int PRODUCERS = 3;
+    private static final int CONSUMERS = 3;
+    private static final int ORDERS_PER_PRODUCER = 5_000;
+
+    /**
+     * Producers and consumers racing over a buffer far smaller than the traffic, so it wraps and
+     * fills up constantly, hand over every order exactly once. Busy spinning is left out: with
+     * more threads than cores it only measures the scheduler.
+     */
+    @ParameterizedTest
+    @EnumSource(value = WaitStrategy.class, names = {"YIELD", "PARK"})
+    void everyOrderIsDeliveredExactlyOnce(WaitStrategy waitStrategy) throws Exception {
+        RingBufferTransport transport = new RingBufferTransport(8, waitStrategy);
+        List<Order[]> produced = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            Order[] orders = new Order[ORDERS_PER_PRODUCER];
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = new Order();
+            }
+            produced.add(orders);
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (Order order : orders) {
+                        transport.put(order);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        ConcurrentLinkedQueue<Order> consumed = new ConcurrentLinkedQueue<>();
+        for (int c = 0; c < CONSUMERS; c++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int i = 0; i < PRODUCERS * ORDERS_PER_PRODUCER / CONSUMERS; i++) {
+                        consumed.add(transport.take());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<Order, Integer> seen = new IdentityHashMap<>();
+        for (Order order : consumed) {
+            seen.merge(order, 1, Integer::sum);
+        }
+        assertEquals(PRODUCERS * ORDERS_PER_PRODUCER, seen.size());
+        for (Order[] orders : produced) {
+            for (Order order : orders) {
+                assertEquals(1, seen.get(order));
+            }
+        }
+        assertEquals(0, transport.size());
+        assertEquals(PRODUCERS * ORDERS_PER_PRODUCER, transport.dequeued());
+    }
+
+    /**
+     * A single consumer sees every producer's orders in the order that producer enqueued them.
+     */
+    @Test
+    void singleConsumerSeesEachProducerInOrder() throws Exception {
+        RingBufferTransport transport = new RingBufferTransport(4, WaitStrategy.YIELD);
+        List<Order[]> produced = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            Order[] orders = new Order[ORDERS_PER_PRODUCER];
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = new Order();
+            }
+            produced.add(orders);
+            producers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (Order order : orders) {
+                        transport.put(order);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        Map<Order, Integer> producerOf = new IdentityHashMap<>();
+        Map<Order, Integer> indexOf = new IdentityHashMap<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            for (int i = 0; i < ORDERS_PER_PRODUCER; i++) {
+                producerOf.put(produced.get(p)[i], p);
+                indexOf.put(produced.get(p)[i], i);
+            }
+        }
+        int[] next = new int[PRODUCERS];
+        for (int n = 0; n < PRODUCERS * ORDERS_PER_PRODUCER; n++) {
+            Order order = transport.take();
+            int producer = producerOf.get(order);
+            assertEquals(next[producer]++, indexOf.get(order));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    /**
+     * A full buffer refuses offers and an empty one returns nothing, without waiting.
+     */
+    @Test
+    void fullAndEmptyBuffersDoNotWait() {
+        RingBufferTransport transport = new RingBufferTransport(3, WaitStrategy.PARK);
+        assertEquals(4, transport.capacity());
+        Order first = new Order();
+        assertTrue(transport.offer(first));
+        for (int i = 1; i < 4; i++) {
+            assertTrue(transport.offer(new Order()));
+        }
+        assertFalse(transport.offer(new Order()));
+        assertEquals(4, transport.size());
+
+        assertSame(first, transport.poll());
+        for (int i = 1; i < 4; i++) {
+            transport.poll();
+        }
+        assertNull(transport.poll());
+        assertEquals(0, transport.size());
+    }
+}